@@ -1,23 +1,41 @@
 package com.mattforni.games.othello;
 
-import static com.mattforni.games.othello.gui.square.Square.SIZE;
 import static java.lang.String.format;
 
 import java.awt.Point;
+import java.awt.Window;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
+import javax.swing.SwingUtilities;
 import javax.swing.Timer;
 
+import com.mattforni.games.othello.board.Bitboard;
+import com.mattforni.games.othello.board.Mailbox;
 import com.mattforni.games.othello.gui.Gameboard;
 import com.mattforni.games.othello.gui.DisplayPanel;
 import com.mattforni.games.othello.gui.square.Square;
+import com.mattforni.games.othello.players.ComputerPlayer;
 import com.mattforni.games.othello.players.Player;
 import com.mattforni.games.othello.players.Player.Side;
+import com.mattforni.games.othello.players.ai.BookStrategy;
+import com.mattforni.games.othello.players.ai.HintSearch;
+import com.mattforni.games.othello.players.ai.Negamax;
+import com.mattforni.games.othello.players.ai.Strategy;
+import com.mattforni.games.othello.players.ai.Strategy.Move;
+import com.mattforni.games.othello.players.ai.TimedNegamax;
+import com.mattforni.games.othello.records.GameRecord;
+import com.mattforni.games.othello.records.GameRecordWriter;
 
 /**
  * The referee is responsible for tracking and managing the actual gameplay
@@ -26,18 +44,59 @@ import com.mattforni.games.othello.players.Player.Side;
  * timer is executed (see {@link TurnHandler}). The entirety of the logic that
  * controls game flow resides in this file.
  *
+ * Computer players do their thinking on a dedicated search thread so that the
+ * gui stays responsive (see {@link Search}). The chosen move is posted back to
+ * the event thread where it is applied and the next turn begins. A search in
+ * flight may be abandoned at any time with {@link #cancelSearch()}. The size of
+ * the board may be changed between games with {@link #setBoardSize(int)}.
+ *
+ * While a human player thinks, a computer opponent ponders its replies on the
+ * same thread (see {@link Ponder}). Pondering is interrupted as soon as the
+ * human moves, and the search for the reply then starts right after it.
+ *
+ * When hints are turned on with {@link #setHints(boolean)}, every move of a
+ * human player is scored by a {@link HintSearch} on a thread of its own (see
+ * {@link Hint}) and the best of them are ranked on the board, refined after
+ * each depth the search completes. The hints are only ever computed from a
+ * snapshot of the board, and the search is stopped as soon as the human moves,
+ * so they never keep the human waiting.
+ *
+ * When the {@link #RECORD_PROPERTY} property names a file, every turn taken
+ * is added to a {@link GameRecord} as the turn passes in {@link #nextTurn()},
+ * and each game which is played to the end is added to that file.
+ *
  * @author Matthew Fornaciari <mattforni@gmail.com>
  */
 
 @SuppressWarnings("serial")
 public class Referee extends Timer {
+    // The file which finished games are added to may be given when launching the game
+    public static final String RECORD_PROPERTY = "othello.records";
+    // Hints may be shown from the start of the game
+    public static final String HINTS_PROPERTY = "othello.hints";
+
     private final static String STATUS_FORMAT = "%s's turn";
+    private final static String REPORT_FORMAT = "%s (%s)";
+    private final static String STATISTICS_FORMAT = "%s: %s";
 
     private final Gameboard gameboard;
     private final DisplayPanel topPanel;
     private final Map<Side, Player> players;
+    private final ExecutorService searcher;
+    private final ExecutorService hinter;
+    private final GameRecordWriter records;
 
     private Side current;
+    private Future<?> search;
+    private Future<?> ponder;
+    private Future<?> hint;
+    private int generation;
+    private int hintGeneration;
+    private boolean hints;
+    private HintSearch hintSearch;
+    private String report;
+    private GameRecord record;
+    private Square recorded;
 
     public Referee(final Gameboard gameboard, final DisplayPanel topPanel) {
         super(250, null);
@@ -45,15 +104,38 @@ public class Referee extends Timer {
         this.gameboard = gameboard;
         this.topPanel = topPanel;
         this.players = new HashMap<Side, Player>();
+        this.searcher = Executors.newSingleThreadExecutor(new SearchThreadFactory("othello-search"));
+        this.hinter = Executors.newSingleThreadExecutor(new SearchThreadFactory("othello-hints"));
+        this.hints = Boolean.getBoolean(HINTS_PROPERTY);
+        this.records = openRecords();
         new ClickListener(this);
 
         this.addActionListener(new TurnHandler(this));
     }
 
+    /**
+     * Abandons the search of the current computer player, if there is one, so
+     * that its move is never applied.
+     */
+    public final void cancelSearch() {
+        generation++;
+        stopPondering();
+        stopHints();
+        if (search != null) {
+            search.cancel(true);
+            search = null;
+        }
+    }
+
     public final int count(final Side side) {
         return gameboard.count(side);
     }
 
+    /**
+     * Returns the number of rows and columns of the playable area.
+     */
+    public final int getBoardSize() { return gameboard.numRows()-2; }
+
     public final Player getCurrent() { return players.get(current); }
 
     public final Gameboard getGameboard() { return gameboard; }
@@ -62,12 +144,63 @@ public class Referee extends Timer {
         return players.get(current);
     }
 
+    public final boolean isShowingHints() { return hints; }
+
     public final void reset() {
+        cancelSearch();
+        report = null;
+        // A game which is abandoned part of the way through is not recorded
+        record = null;
+        recorded = null;
+        topPanel.setStatistics("");
         current = Side.WHITE;
         gameboard.newGame();
         updatePieces();
     }
 
+    /**
+     * Abandons the current game and starts a new one on a board with the given
+     * number of rows and columns, resizing the window around it.
+     *
+     * @throws IllegalArgumentException if the size is not even and positive
+     */
+    public final void setBoardSize(final int size) throws IllegalArgumentException {
+        // If the size is not even and positive an exception is thrown
+        if (size < 2 || size % 2 != 0) {
+            throw new IllegalArgumentException("The board size must be even and positive");
+        }
+
+        stop();
+        cancelSearch();
+        gameboard.hideMoves();
+        gameboard.setBoardSize(size+2, size+2);
+        reset();
+
+        final Window window = SwingUtilities.getWindowAncestor(gameboard);
+        if (window != null) {
+            gameboard.revalidate();
+            window.pack();
+        }
+        gameboard.repaint();
+    }
+
+    /**
+     * Turns the hints for human players on or off, taking effect straight
+     * away if a human is deciding on a move.
+     */
+    public final void setHints(final boolean hints) {
+        this.hints = hints;
+        stopHints();
+        gameboard.hideHints();
+
+        // If a human is waiting to move the hints start on the current position
+        final Player player = getCurrent();
+        if (hints && player != null && player.isHuman() && !isRunning() &&
+                player.hasMoves(gameboard)) {
+            hint(player);
+        }
+    }
+
     public final void setPlayer(final Player player) {
         // If the player is null there is nothing to do
         if (player == null) { return; }
@@ -81,6 +214,7 @@ public class Referee extends Timer {
     }
 
     public final void nextTurn() {
+        record(current);
         if (current == Side.WHITE) {
             current = Side.BLACK;
         } else if (current == Side.BLACK) {
@@ -90,6 +224,23 @@ public class Referee extends Timer {
     }
 
     /* Private methods */
+    private void applyMove(final int generation, final Player player, final Move move) {
+        // If the search was cancelled in the meantime its move is discarded
+        if (generation != this.generation) { return; }
+        search = null;
+
+        if (!move.isPass()) {
+            player.makeMove(gameboard, gameboard.get(move.getRow(), move.getColumn()));
+        }
+        // Anything the player has to say about its move is shown until the next one
+        report = player.getReport() == null ? null : player.getSide() + " " + player.getReport();
+        if (player.getStatistics() != null) {
+            topPanel.setStatistics(format(STATISTICS_FORMAT, player.getSide(), player.getStatistics()));
+        }
+        updatePieces();
+        nextTurn();
+    }
+
     private Player getOpponent(final Side side) {
         if (side == Side.WHITE) {
             return players.get(Side.BLACK);
@@ -99,6 +250,119 @@ public class Referee extends Timer {
         return null;
     }
 
+    private String getStatus(final Player player) {
+        final String status = format(STATUS_FORMAT, player.getSide());
+        return report == null ? status : format(REPORT_FORMAT, status, report);
+    }
+
+    /**
+     * Translates a {@link Move} found on the given {@link Mailbox} into a
+     * {@link Move} of the corresponding square of the {@link Gameboard}.
+     */
+    private Move locate(final Mailbox mailbox, final Move move) {
+        if (move.isPass()) { return move; }
+        final int position = move.getPosition();
+        return new Move(gameboard.get(mailbox.row(position), mailbox.column(position)), move.getValue());
+    }
+
+    /**
+     * Starts scoring the moves of the given human player, if hints are on,
+     * showing them on the board as the search deepens.
+     */
+    private void hint(final Player human) {
+        // If hints are off or there is no bitboard there is nothing to search
+        if (!hints || !gameboard.hasBitboard()) { return; }
+        stopHints();
+        hint = hinter.submit(new Hint(hintGeneration, human.getSide(),
+                new Bitboard(gameboard.getBitboard())));
+    }
+
+    /**
+     * Shows the moves scored by a {@link HintSearch} on the board, unless the
+     * position they were scored for has been left since.
+     */
+    private void showHints(final int generation, final int[] moves, final int[] scores,
+            final int ranked) {
+        if (generation != hintGeneration) { return; }
+        for (int index = 0; index < moves.length; index++) {
+            gameboard.showHint(Bitboard.row(moves[index])+1, Bitboard.column(moves[index])+1,
+                    describe(scores[index], index < ranked), index < ranked ? index+1 : 0);
+        }
+    }
+
+    /**
+     * Lets the opponent of the given human player, if it is a computer,
+     * ponder its replies while the human thinks.
+     */
+    private void ponder(final Player human) {
+        final Player opponent = getOpponent(human.getSide());
+        // If there is no computer opponent or no bitboard there is nothing to ponder
+        if (opponent == null || opponent.isHuman() || !gameboard.hasBitboard()) { return; }
+        stopPondering();
+        ponder = searcher.submit(new Ponder(opponent, new Bitboard(gameboard.getBitboard())));
+    }
+
+    /**
+     * Adds the turn the given {@link Side} has just taken to the record of the
+     * game, which is the last move made on the board or a pass if no move has
+     * been made since the previous turn.
+     */
+    private void record(final Side side) {
+        // If games are not being recorded there is nothing to do
+        if (records == null || side == null) { return; }
+        if (record == null) { record = new GameRecord(getBoardSize()); }
+
+        final Square move = gameboard.getLastMove();
+        if (move == null || move == recorded) {
+            record.addMove(GameRecord.PASS);
+        } else {
+            record.addMove(record.square(move.getRow()-1, move.getColumn()-1));
+            recorded = move;
+        }
+    }
+
+    /**
+     * Adds the game which has just finished to the file of records.
+     */
+    private void saveRecord() {
+        // If the game was not recorded there is nothing to save
+        if (record == null) { return; }
+        for (final Side side : Side.values()) { record.setPlayer(side, name(players.get(side))); }
+        record.setPieces(count(Side.WHITE), count(Side.BLACK));
+        try {
+            records.write(record);
+            records.flush();
+        } catch (final IOException e) {
+            System.err.println("Unable to record the game: " + e.getMessage());
+        }
+        record = null;
+    }
+
+    private void stopHints() {
+        hintGeneration++;
+        if (hint != null) {
+            hint.cancel(true);
+            hint = null;
+        }
+    }
+
+    private void stopPondering() {
+        if (ponder != null) {
+            ponder.cancel(true);
+            ponder = null;
+        }
+    }
+
+    private void think(final Player player) {
+        final Search search;
+        if (gameboard.hasBitboard()) {
+            search = new Search(++generation, player, new Bitboard(gameboard.getBitboard()), null);
+        } else {
+            search = new Search(++generation, player, null, new Mailbox(gameboard.getMailbox()));
+        }
+        this.search = searcher.submit(search);
+    }
+
     private void updateCurrent() {
         if (current == null) { current = Side.WHITE; }
     }
@@ -107,6 +371,56 @@ public class Referee extends Timer {
         topPanel.setPieces(count(Side.WHITE), count(Side.BLACK));
     }
 
+    /* Private static methods */
+    /**
+     * Returns the hint shown for a move with the given score, which is the
+     * result by a number of pieces once it is known, and which is marked as
+     * the most the move could score when it is not exact.
+     */
+    private static String describe(final int score, final boolean exact) {
+        final String value;
+        if (score >= HintSearch.WIN) {
+            value = format("W+%d", score - HintSearch.WIN);
+        } else if (score <= -HintSearch.WIN) {
+            value = format("L%d", score + HintSearch.WIN);
+        } else {
+            value = Integer.toString(score);
+        }
+        return exact ? value : "\u2264" + value;
+    }
+    /**
+     * Returns the name of the given player in a record, written as the players
+     * of the {@link com.mattforni.games.othello.tools.EngineServer EngineServer}
+     * are whenever the strategy of a computer player allows.
+     */
+    private static String name(final Player player) {
+        if (player == null) { return ""; }
+        if (player.isHuman()) { return "human"; }
+        if (!(player instanceof ComputerPlayer)) { return "computer"; }
+
+        Strategy strategy = ((ComputerPlayer) player).getStrategy();
+        if (strategy instanceof BookStrategy) { strategy = ((BookStrategy) strategy).getStrategy(); }
+        if (strategy instanceof TimedNegamax) { return "timed:" + ((TimedNegamax) strategy).getMillis(); }
+        if (strategy instanceof Negamax) { return "level:" + ((Negamax) strategy).getDepth(); }
+        return strategy.getClass().getSimpleName().toLowerCase();
+    }
+
+    /**
+     * Returns the writer of the file named by the {@link #RECORD_PROPERTY}
+     * property, or null if games are not to be recorded.
+     */
+    private static GameRecordWriter openRecords() {
+        final String path = System.getProperty(RECORD_PROPERTY);
+        if (path == null) { return null; }
+        try {
+            return GameRecordWriter.append(new File(path));
+        } catch (final IOException e) {
+            // If the file cannot be opened recording is turned off and the game goes on
+            System.err.println("Unable to record games: " + e.getMessage());
+            return null;
+        }
+    }
+
     /* Private classes */
     /**
      * The {@link ClickListener} defines how users may interact with the gameboard.
@@ -128,9 +442,15 @@ public class Referee extends Timer {
             if (current == null || !current.isHuman()) { return; }
 
             final Point point = e.getPoint();
-            final Square square = gameboard.get(point.y/SIZE, point.x/SIZE);
+            final int size = gameboard.getSquareSize();
+            final Square square = gameboard.get(point.y/size, point.x/size);
 
+            // If the click missed the board there is nothing to do
+            if (square == null) { return; }
             if (referee.getCurrent().attemptMove(gameboard, square)) {
+                stopHints();
+                stopPondering();
+                report = null;
                 referee.nextTurn();
             }
         }
@@ -151,14 +471,17 @@ public class Referee extends Timer {
             final Player current = getCurrent();
             if (current.hasMoves(gameboard)) {
                 // Update the status display
-                topPanel.setStatus(format(STATUS_FORMAT, current.getSide()));
+                topPanel.setStatus(getStatus(current));
                 if (current.isHuman()) {
                     current.showMoves(gameboard);
                     referee.stop();
+                    hint(current);
+                    ponder(current);
                 } else {
+                    // Pause the turns while the computer thinks off of the event thread
                     gameboard.hideMoves();
-                    current.makeMove(gameboard);
-                    nextTurn();
+                    referee.stop();
+                    think(current);
                 }
                 updatePieces();
             } else {
@@ -168,6 +491,7 @@ public class Referee extends Timer {
                 if (!opponent.hasMoves(gameboard)) {
                     topPanel.setStatus("Game Over");
                     referee.stop();
+                    saveRecord();
                     return;
                 }
 
@@ -176,4 +500,110 @@ public class Referee extends Timer {
             }
         }
     }
+
+    /**
+     * The {@link Search} finds the move of a computer player on a snapshot of
+     * the board and posts it back to the event thread to be applied. The
+     * snapshot is a {@link Bitboard} for the standard board and a
+     * {@link Mailbox} for any other size. The generation identifies the turn so
+     * that stale results can be discarded.
+     */
+    private class Search implements Runnable {
+        private final int generation;
+        private final Player player;
+        private final Bitboard snapshot;
+        private final Mailbox mailbox;
+
+        public Search(final int generation, final Player player, final Bitboard snapshot,
+                final Mailbox mailbox) {
+            this.generation = generation;
+            this.player = player;
+            this.snapshot = snapshot;
+            this.mailbox = mailbox;
+        }
+
+        @Override
+        public final void run() {
+            final Move move = snapshot != null ? player.getBestMove(snapshot) : player.getBestMove(mailbox);
+
+            // If the search was cancelled there is nothing to report
+            if (move == null || Thread.currentThread().isInterrupted()) { return; }
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    applyMove(generation, player, mailbox == null ? move : locate(mailbox, move));
+                }
+            });
+        }
+    }
+
+    /**
+     * The {@link Hint} scores the moves of a human player on a snapshot of the
+     * board and posts each refinement back to the event thread to be shown.
+     * The {@link HintSearch} is only ever used on the thread which runs the
+     * hints, one search at a time, and is created there when first needed.
+     */
+    private class Hint implements Runnable {
+        private final int generation;
+        private final Side side;
+        private final Bitboard snapshot;
+
+        public Hint(final int generation, final Side side, final Bitboard snapshot) {
+            this.generation = generation;
+            this.side = side;
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public final void run() {
+            if (hintSearch == null) { hintSearch = new HintSearch(); }
+            hintSearch.search(snapshot, side, new HintSearch.Listener() {
+                @Override
+                public void update(final int depth, final int[] moves, final int[] scores,
+                        final int ranked) {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() { showHints(generation, moves, scores, ranked); }
+                    });
+                }
+            });
+        }
+    }
+
+    /**
+     * The {@link Ponder} lets a computer player think ahead on a snapshot of
+     * the board while its human opponent decides on a move. Since it runs on
+     * the search thread the search for the reply waits until it has stopped.
+     */
+    private static class Ponder implements Runnable {
+        private final Player player;
+        private final Bitboard snapshot;
+
+        public Ponder(final Player player, final Bitboard snapshot) {
+            this.player = player;
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public final void run() { player.ponder(snapshot); }
+    }
+
+    /**
+     * The {@link SearchThreadFactory} names the threads which search and marks
+     * them as daemons so that they never keep the application alive.
+     */
+    private static class SearchThreadFactory implements ThreadFactory {
+        private final String name;
+
+        public SearchThreadFactory(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public final Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
@@ -0,0 +1,272 @@
+package com.mattforni.games.othello.board;
+
+import com.mattforni.games.othello.players.Player.Side;
+
+/**
+ * {@link Bitboard} is a headless representation of the standard eight by eight
+ * playable area which the AI uses instead of the square objects held by the
+ * gameboard. The board is stored as two 64-bit occupancy masks, one
+ * per {@link Side}, where bit <code>row*8 + column</code> corresponds to the
+ * playable square at that (zero based) row and column. Legal move generation,
+ * flip computation and piece counts are all done with bit operations. A
+ * {@link Zobrist} hash of the pieces is maintained incrementally as pieces are
+ * placed and flipped.
+ *
+ * Moves are made in place and each records what it flipped on a primitive undo
+ * stack, so {@link #unmakeMove()} can take it back without any allocation. This
+ * lets a search walk a single board rather than copying it for every position.
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public class Bitboard {
+    public static final int SIZE = 8;
+    public static final int SQUARES = SIZE*SIZE;
+
+    // The shift and wrap mask for each of the eight directions
+    private static final int[] SHIFTS = { 1, -1, 8, -8, 9, -9, 7, -7 };
+    // Each undo entry holds the flipped pieces, the previous hash and the move
+    private static final int UNDO_ENTRY = 3;
+    private static final int SIDE_SHIFT = 6;
+
+    private static final long[] MASKS = {
+        0xFEFEFEFEFEFEFEFEL, 0x7F7F7F7F7F7F7F7FL, 0xFFFFFFFFFFFFFFFFL, 0xFFFFFFFFFFFFFFFFL,
+        0xFEFEFEFEFEFEFEFEL, 0x7F7F7F7F7F7F7F7FL, 0x7F7F7F7F7F7F7F7FL, 0xFEFEFEFEFEFEFEFEL
+    };
+
+    private long black;
+    private long white;
+    private long hash;
+    private long[] undo;
+    private int top;
+
+    public Bitboard() {
+        newGame();
+    }
+
+    public Bitboard(final long black, final long white) throws IllegalArgumentException {
+        // If any square is occupied by both sides an exception is thrown
+        if ((black & white) != 0) {
+            throw new IllegalArgumentException("A square may only hold one piece");
+        }
+        this.black = black;
+        this.white = white;
+        this.hash = Zobrist.hash(black, white);
+    }
+
+    public Bitboard(final Bitboard bitboard) {
+        this.black = bitboard.black;
+        this.white = bitboard.white;
+        this.hash = bitboard.hash;
+    }
+
+    public final void clear() {
+        black = 0;
+        white = 0;
+        hash = 0;
+        top = 0;
+    }
+
+    public final int count(final Side side) { return Long.bitCount(get(side)); }
+
+    public final int countEmpty() { return Long.bitCount(getEmpty()); }
+
+    public final long get(final Side side) { return side == Side.BLACK ? black : white; }
+
+    public final long getEmpty() { return ~(black | white); }
+
+    public final long getFlips(final Side side, final int square) {
+        return flips(get(side), get(side.getOpponent()), square);
+    }
+
+    /**
+     * Returns the hash of the pieces on the board, independent of whose move it is.
+     */
+    public final long getHash() { return hash; }
+
+    /**
+     * Returns the hash of the position with the given {@link Side} to move.
+     */
+    public final long getHash(final Side side) { return hash ^ Zobrist.toMove(side); }
+
+    public final long getMoves(final Side side) {
+        return moves(get(side), get(side.getOpponent()));
+    }
+
+    public final Side getSide(final int square) {
+        final long bit = 1L << square;
+        if ((black & bit) != 0) { return Side.BLACK; }
+        if ((white & bit) != 0) { return Side.WHITE; }
+        return null;
+    }
+
+    public final boolean hasMoves(final Side side) { return getMoves(side) != 0; }
+
+    public final boolean isGameOver() {
+        return !hasMoves(Side.WHITE) && !hasMoves(Side.BLACK);
+    }
+
+    public final boolean isValidMove(final Side side, final int square) {
+        return (getMoves(side) & (1L << square)) != 0;
+    }
+
+    /**
+     * Returns the number of moves which may currently be taken back with
+     * {@link #unmakeMove()}.
+     */
+    public final int getUndoDepth() { return top / UNDO_ENTRY; }
+
+    /**
+     * Places a piece for the given {@link Side} on the given square and flips
+     * all of the pieces it sandwiches. The square is assumed to be a valid move.
+     * The move is recorded so that it may be taken back by {@link #unmakeMove()}.
+     *
+     * @return the mask of the pieces which were flipped
+     */
+    public final long makeMove(final Side side, final int square) {
+        final long flipped = getFlips(side, square);
+        final long placed = flipped | (1L << square);
+
+        // A board can never hold more moves than it has squares
+        if (undo == null) { undo = new long[UNDO_ENTRY*SQUARES]; }
+        undo[top] = flipped;
+        undo[top+1] = hash;
+        undo[top+2] = square | (side == Side.BLACK ? 1 << SIDE_SHIFT : 0);
+        top += UNDO_ENTRY;
+
+        if (side == Side.BLACK) {
+            black |= placed;
+            white &= ~flipped;
+        } else {
+            white |= placed;
+            black &= ~flipped;
+        }
+        hash ^= Zobrist.piece(side, square) ^ Zobrist.flips(flipped);
+        return flipped;
+    }
+
+    public final void newGame() {
+        final int half = SIZE / 2;
+        clear();
+        setPiece(Side.BLACK, square(half-1, half-1));
+        setPiece(Side.BLACK, square(half, half));
+        setPiece(Side.WHITE, square(half, half-1));
+        setPiece(Side.WHITE, square(half-1, half));
+    }
+
+    /**
+     * Places a piece without flipping any others. Since the pieces placed this
+     * way cannot be taken back the undo stack is cleared.
+     */
+    public final void setPiece(final Side side, final int square) {
+        final long bit = 1L << square;
+        top = 0;
+        if (((black | white) & bit) == 0) {
+            hash ^= Zobrist.piece(side, square);
+        } else if ((get(side) & bit) == 0) {
+            hash ^= Zobrist.flip(square);
+        }
+        if (side == Side.BLACK) {
+            black |= bit;
+            white &= ~bit;
+        } else {
+            white |= bit;
+            black &= ~bit;
+        }
+    }
+
+    /**
+     * Takes back the last move made by {@link #makeMove(Side, int)}, restoring
+     * the pieces it flipped.
+     *
+     * @throws IllegalStateException if there is no move to take back
+     */
+    public final void unmakeMove() throws IllegalStateException {
+        // If there is no move to take back an exception is thrown
+        if (top == 0) { throw new IllegalStateException("There is no move to take back"); }
+
+        top -= UNDO_ENTRY;
+        final long flipped = undo[top];
+        final long placed = flipped | (1L << (undo[top+2] & (SQUARES-1)));
+        if ((undo[top+2] >>> SIDE_SHIFT) != 0) {
+            black &= ~placed;
+            white |= flipped;
+        } else {
+            white &= ~placed;
+            black |= flipped;
+        }
+        hash = undo[top+1];
+    }
+
+    /* Public static methods */
+    public static int column(final int square) { return square % SIZE; }
+
+    /**
+     * Computes the mask of opponent pieces that would be flipped if the player
+     * were to place a piece on the given square.
+     */
+    public static long flips(final long player, final long opponent, final int square) {
+        final long bit = 1L << square;
+        long flipped = 0;
+        for (int direction = 0; direction < SHIFTS.length; direction++) {
+            final int shift = SHIFTS[direction];
+            final long mask = MASKS[direction];
+
+            // Walk the run of opponent pieces in this direction
+            long run = 0;
+            long next = shift(bit, shift) & mask;
+            while ((next & opponent) != 0) {
+                run |= next;
+                next = shift(next, shift) & mask;
+            }
+
+            // If the run is capped by one of the player's pieces it is flipped
+            if ((next & player) != 0) { flipped |= run; }
+        }
+        return flipped;
+    }
+
+    /**
+     * Computes the mask of all empty squares on which the player may legally
+     * place a piece, filling each direction in parallel.
+     */
+    public static long moves(final long player, final long opponent) {
+        final long empty = ~(player | opponent);
+        long moves = 0;
+        for (int direction = 0; direction < SHIFTS.length; direction++) {
+            final int shift = SHIFTS[direction];
+            final long mask = MASKS[direction];
+            final long targets = opponent & mask;
+
+            // A run can contain at most six opponent pieces
+            long run = shift(player, shift) & targets;
+            run |= shift(run, shift) & targets;
+            run |= shift(run, shift) & targets;
+            run |= shift(run, shift) & targets;
+            run |= shift(run, shift) & targets;
+            run |= shift(run, shift) & targets;
+            moves |= shift(run, shift) & mask & empty;
+        }
+        return moves;
+    }
+
+    /**
+     * Returns the squares next to any of the given squares, in any direction.
+     */
+    public static long neighbours(final long bits) {
+        long neighbours = 0;
+        for (int direction = 0; direction < SHIFTS.length; direction++) {
+            neighbours |= shift(bits, SHIFTS[direction]) & MASKS[direction];
+        }
+        return neighbours;
+    }
+
+    public static int row(final int square) { return square / SIZE; }
+
+    public static int square(final int row, final int column) { return row*SIZE + column; }
+
+    /* Private static methods */
+    private static long shift(final long bits, final int shift) {
+        return shift > 0 ? bits << shift : bits >>> -shift;
+    }
+}
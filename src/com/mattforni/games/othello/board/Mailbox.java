@@ -0,0 +1,333 @@
+package com.mattforni.games.othello.board;
+
+import java.util.Arrays;
+
+import com.mattforni.games.othello.players.Player.Side;
+
+/**
+ * {@link Mailbox} is a headless representation of a board of any even size,
+ * which the AI uses when the playable area is too large for a {@link Bitboard}.
+ * The board is stored as a packed array of bytes, one per square, which is
+ * surrounded by a ring of border squares so that a line of pieces can be
+ * followed in any direction without checking whether it has left the board.
+ * Squares are numbered <code>row*width + column</code> in the coordinates of
+ * the gameboard, where the border is row and column zero, so a square maps
+ * directly onto the gameboard square at the same row and column.
+ *
+ * The step to the next square in each of the eight directions is worked out
+ * once for the size of the board. The number of pieces next to every square is
+ * kept as pieces are placed, along with a list of the empty squares which touch
+ * at least one piece, so looking for moves only follows the lines of those few
+ * squares however large the board is.
+ *
+ * Like the {@link Bitboard}, moves are made in place and each records what it
+ * flipped on a primitive undo stack, so {@link #unmakeMove()} can take it back
+ * without any allocation.
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public class Mailbox {
+    public static final byte EMPTY = 0;
+    public static final byte BLACK = 1;
+    public static final byte WHITE = 2;
+    public static final byte BORDER = 3;
+
+    private final int size;
+    private final int width;
+    private final int[] directions;
+    private final byte[] cells;
+    private final byte[] neighbours;
+    private final int[] frontier;
+    private final int[] positions;
+
+    private int black;
+    private int white;
+    private int frontierSize;
+    private int[] undo;
+    private int top;
+
+    public Mailbox(final int size) throws IllegalArgumentException {
+        // If the board cannot hold the starting pieces in its centre an exception is thrown
+        if (size < 2 || size % 2 != 0) {
+            throw new IllegalArgumentException("The board size must be even and positive");
+        }
+
+        this.size = size;
+        this.width = size+2;
+        this.directions = new int[] { 1, -1, width, -width, width+1, -width-1, width-1, -width+1 };
+        this.cells = new byte[width*width];
+        this.neighbours = new byte[width*width];
+        this.frontier = new int[width*width];
+        this.positions = new int[width*width];
+        newGame();
+    }
+
+    public Mailbox(final Mailbox mailbox) {
+        this.size = mailbox.size;
+        this.width = mailbox.width;
+        this.directions = mailbox.directions;
+        this.cells = mailbox.cells.clone();
+        this.neighbours = mailbox.neighbours.clone();
+        this.frontier = mailbox.frontier.clone();
+        this.positions = mailbox.positions.clone();
+        this.frontierSize = mailbox.frontierSize;
+        this.black = mailbox.black;
+        this.white = mailbox.white;
+    }
+
+    public final void clear() {
+        Arrays.fill(cells, EMPTY);
+        Arrays.fill(neighbours, (byte) 0);
+        Arrays.fill(positions, -1);
+        frontierSize = 0;
+        for (int index = 0; index < width; index++) {
+            cells[square(0, index)] = BORDER;
+            cells[square(width-1, index)] = BORDER;
+            cells[square(index, 0)] = BORDER;
+            cells[square(index, width-1)] = BORDER;
+        }
+        black = 0;
+        white = 0;
+        top = 0;
+    }
+
+    public final int column(final int square) { return square % width; }
+
+    public final int count(final Side side) { return side == Side.BLACK ? black : white; }
+
+    public final int countEmpty() { return size*size - black - white; }
+
+    /**
+     * Returns the square flipped at the given index by the last move made,
+     * where the index is below the count returned by {@link #makeMove(Side, int)}.
+     */
+    public final int getFlipped(final int index) {
+        return undo[top - 2 - undo[top-2] + index];
+    }
+
+    /**
+     * Fills the given array with the squares which are currently a valid move
+     * for the given {@link Side} and returns how many there are. The array
+     * must be able to hold every square of the board.
+     */
+    public final int getMoves(final Side side, final int[] moves) {
+        final byte player = cell(side);
+        int count = 0;
+        for (int index = 0; index < frontierSize; index++) {
+            if (isMove(player, frontier[index])) { moves[count++] = frontier[index]; }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the {@link Side} with a piece on the given square, or null if
+     * it is empty or part of the border.
+     */
+    public final Side getSide(final int square) {
+        switch (cells[square]) {
+            case BLACK:
+                return Side.BLACK;
+            case WHITE:
+                return Side.WHITE;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of rows and columns of the playable area.
+     */
+    public final int getSize() { return size; }
+
+    /**
+     * Returns the number of squares of the board including the border, which
+     * is the size of an array able to hold every move.
+     */
+    public final int getSquares() { return cells.length; }
+
+    public final boolean hasMoves(final Side side) {
+        final byte player = cell(side);
+        for (int index = 0; index < frontierSize; index++) {
+            if (isMove(player, frontier[index])) { return true; }
+        }
+        return false;
+    }
+
+    public final boolean isGameOver() {
+        return !hasMoves(Side.WHITE) && !hasMoves(Side.BLACK);
+    }
+
+    public final boolean isValidMove(final Side side, final int square) {
+        if (square < 0 || square >= cells.length) { return false; }
+        return positions[square] >= 0 && isMove(cell(side), square);
+    }
+
+    /**
+     * Places a piece for the given {@link Side} on the given square and flips
+     * all of the pieces it sandwiches. The square is assumed to be a valid move.
+     * The move is recorded so that it may be taken back by {@link #unmakeMove()}
+     * and the squares it flipped may be read with {@link #getFlipped(int)}.
+     *
+     * @return the number of pieces which were flipped
+     */
+    public final int makeMove(final Side side, final int square) {
+        final byte player = cell(side);
+        final byte opponent = (byte) (BLACK + WHITE - player);
+
+        // A move flips at most every square along its lines besides its own
+        if (undo == null) { undo = new int[64]; }
+        if (top + 8*size + 2 > undo.length) { undo = Arrays.copyOf(undo, 2*undo.length + 8*size); }
+
+        int flipped = 0;
+        for (final int direction : directions) {
+            int next = square + direction;
+            while (cells[next] == opponent) { next += direction; }
+            if (cells[next] != player) { continue; }
+            for (next -= direction; next != square; next -= direction) {
+                cells[next] = player;
+                undo[top++] = next;
+                flipped++;
+            }
+        }
+        undo[top++] = flipped;
+        undo[top++] = square;
+
+        place(player, square);
+        if (player == BLACK) {
+            black += flipped;
+            white -= flipped;
+        } else {
+            white += flipped;
+            black -= flipped;
+        }
+        return flipped;
+    }
+
+    public final void newGame() {
+        final int half = width / 2;
+        clear();
+        setPiece(Side.BLACK, square(half-1, half-1));
+        setPiece(Side.BLACK, square(half, half));
+        setPiece(Side.WHITE, square(half, half-1));
+        setPiece(Side.WHITE, square(half-1, half));
+    }
+
+    public final int row(final int square) { return square / width; }
+
+    /**
+     * Places a piece without flipping any others. Since the pieces placed this
+     * way cannot be taken back the undo stack is cleared.
+     */
+    public final void setPiece(final Side side, final int square) {
+        final byte previous = cells[square];
+        // If the square is part of the border there is nothing to place
+        if (previous == BORDER) { return; }
+
+        top = 0;
+        if (previous == EMPTY) {
+            place(cell(side), square);
+        } else if (previous != cell(side)) {
+            cells[square] = cell(side);
+            if (side == Side.BLACK) {
+                black++;
+                white--;
+            } else {
+                white++;
+                black--;
+            }
+        }
+    }
+
+    /**
+     * Returns the square at the given row and column of the gameboard.
+     */
+    public final int square(final int row, final int column) { return row*width + column; }
+
+    /**
+     * Takes back the last move made by {@link #makeMove(Side, int)}, restoring
+     * the pieces it flipped.
+     *
+     * @throws IllegalStateException if there is no move to take back
+     */
+    public final void unmakeMove() throws IllegalStateException {
+        // If there is no move to take back an exception is thrown
+        if (top == 0) { throw new IllegalStateException("There is no move to take back"); }
+
+        final int square = undo[--top];
+        final int flipped = undo[--top];
+        final byte player = cells[square];
+        final byte opponent = (byte) (BLACK + WHITE - player);
+        for (int index = 0; index < flipped; index++) { cells[undo[--top]] = opponent; }
+
+        cells[square] = EMPTY;
+        for (final int direction : directions) {
+            final int neighbour = square + direction;
+            if (--neighbours[neighbour] == 0 && cells[neighbour] == EMPTY) { leave(neighbour); }
+        }
+        if (neighbours[square] != 0) { join(square); }
+        if (player == BLACK) {
+            black -= flipped + 1;
+            white += flipped;
+        } else {
+            white -= flipped + 1;
+            black += flipped;
+        }
+    }
+
+    /* Private methods */
+    /**
+     * Adds the given empty square to the squares which touch a piece.
+     */
+    private void join(final int square) {
+        positions[square] = frontierSize;
+        frontier[frontierSize++] = square;
+    }
+
+    /**
+     * Removes the given square from the squares which touch a piece by moving
+     * the last of them into its place.
+     */
+    private void leave(final int square) {
+        final int position = positions[square];
+        final int last = frontier[--frontierSize];
+        frontier[position] = last;
+        positions[last] = position;
+        positions[square] = -1;
+    }
+
+    /**
+     * Returns whether a piece of the given player on the given empty square
+     * would sandwich at least one piece of the opponent.
+     */
+    private boolean isMove(final byte player, final int square) {
+        final byte opponent = (byte) (BLACK + WHITE - player);
+        for (final int direction : directions) {
+            int next = square + direction;
+            if (cells[next] != opponent) { continue; }
+            do { next += direction; } while (cells[next] == opponent);
+            if (cells[next] == player) { return true; }
+        }
+        return false;
+    }
+
+    /**
+     * Puts a piece of the given player on the given empty square, counting it
+     * as a neighbour of the squares around it.
+     */
+    private void place(final byte player, final int square) {
+        cells[square] = player;
+        if (positions[square] >= 0) { leave(square); }
+        for (final int direction : directions) {
+            final int neighbour = square + direction;
+            if (neighbours[neighbour]++ == 0 && cells[neighbour] == EMPTY) { join(neighbour); }
+        }
+        if (player == BLACK) {
+            black++;
+        } else {
+            white++;
+        }
+    }
+
+    /* Private static methods */
+    private static byte cell(final Side side) { return side == Side.BLACK ? BLACK : WHITE; }
+}
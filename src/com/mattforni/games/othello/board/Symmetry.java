@@ -0,0 +1,97 @@
+package com.mattforni.games.othello.board;
+
+/**
+ * {@link Symmetry} enumerates the eight ways the board may be turned or
+ * reflected onto itself, all of which leave the game unchanged. Each may be
+ * applied to a single square or to a whole mask of a {@link Bitboard}, the
+ * latter with a few delta swaps rather than square by square.
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public enum Symmetry {
+    IDENTITY, FLIP_COLUMNS, FLIP_ROWS, ROTATE_HALF,
+    TRANSPOSE, ANTI_TRANSPOSE, ROTATE_LEFT, ROTATE_RIGHT;
+
+    private static final int LAST = Bitboard.SIZE - 1;
+
+    /**
+     * Returns the mask of the squares the given squares are carried onto.
+     */
+    public final long apply(final long bits) {
+        switch (this) {
+            case FLIP_COLUMNS:
+                return flipColumns(bits);
+            case FLIP_ROWS:
+                return Long.reverseBytes(bits);
+            case ROTATE_HALF:
+                return Long.reverse(bits);
+            case TRANSPOSE:
+                return transpose(bits);
+            case ANTI_TRANSPOSE:
+                return Long.reverse(transpose(bits));
+            case ROTATE_LEFT:
+                return Long.reverseBytes(transpose(bits));
+            case ROTATE_RIGHT:
+                return flipColumns(transpose(bits));
+            default:
+                return bits;
+        }
+    }
+
+    /**
+     * Returns the square the given square is carried onto.
+     */
+    public final int apply(final int square) {
+        final int row = Bitboard.row(square);
+        final int column = Bitboard.column(square);
+        switch (this) {
+            case FLIP_COLUMNS:
+                return Bitboard.square(row, LAST-column);
+            case FLIP_ROWS:
+                return Bitboard.square(LAST-row, column);
+            case ROTATE_HALF:
+                return Bitboard.square(LAST-row, LAST-column);
+            case TRANSPOSE:
+                return Bitboard.square(column, row);
+            case ANTI_TRANSPOSE:
+                return Bitboard.square(LAST-column, LAST-row);
+            case ROTATE_LEFT:
+                return Bitboard.square(LAST-column, row);
+            case ROTATE_RIGHT:
+                return Bitboard.square(column, LAST-row);
+            default:
+                return square;
+        }
+    }
+
+    /**
+     * Returns the symmetry which carries every square back to where it was.
+     */
+    public final Symmetry inverse() {
+        switch (this) {
+            case ROTATE_LEFT:
+                return ROTATE_RIGHT;
+            case ROTATE_RIGHT:
+                return ROTATE_LEFT;
+            default:
+                return this;
+        }
+    }
+
+    /* Private static methods */
+    private static long flipColumns(long bits) {
+        bits = ((bits >>> 1) & 0x5555555555555555L) | ((bits & 0x5555555555555555L) << 1);
+        bits = ((bits >>> 2) & 0x3333333333333333L) | ((bits & 0x3333333333333333L) << 2);
+        return ((bits >>> 4) & 0x0F0F0F0F0F0F0F0FL) | ((bits & 0x0F0F0F0F0F0F0F0FL) << 4);
+    }
+
+    private static long transpose(long bits) {
+        long swap = 0x0F0F0F0F00000000L & (bits ^ (bits << 28));
+        bits ^= swap ^ (swap >>> 28);
+        swap = 0x3333000033330000L & (bits ^ (bits << 14));
+        bits ^= swap ^ (swap >>> 14);
+        swap = 0x5500550055005500L & (bits ^ (bits << 7));
+        return bits ^ swap ^ (swap >>> 7);
+    }
+}
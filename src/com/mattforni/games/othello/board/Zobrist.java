@@ -0,0 +1,73 @@
+package com.mattforni.games.othello.board;
+
+import java.util.Random;
+
+import com.mattforni.games.othello.players.Player.Side;
+
+/**
+ * {@link Zobrist} holds the random keys used to hash {@link Bitboard} positions.
+ * Every (side, square) pair is assigned a 64-bit key and the hash of a position
+ * is the exclusive or of the keys of all of its pieces, which allows the hash to
+ * be updated incrementally as pieces are placed and flipped. The keys are drawn
+ * from a fixed seed so hashes are stable between runs.
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public final class Zobrist {
+    private static final long SEED = 0x5DEECE66DL;
+
+    private static final long[] BLACK = new long[Bitboard.SQUARES];
+    private static final long[] WHITE = new long[Bitboard.SQUARES];
+    private static final long[] FLIP = new long[Bitboard.SQUARES];
+    private static final long BLACK_TO_MOVE;
+
+    static {
+        final Random random = new Random(SEED);
+        for (int square = 0; square < Bitboard.SQUARES; square++) {
+            BLACK[square] = random.nextLong();
+            WHITE[square] = random.nextLong();
+            FLIP[square] = BLACK[square] ^ WHITE[square];
+        }
+        BLACK_TO_MOVE = random.nextLong();
+    }
+
+    private Zobrist() {}
+
+    /**
+     * Returns the key which toggles the given square between the two sides.
+     */
+    public static long flip(final int square) { return FLIP[square]; }
+
+    /**
+     * Returns the key of all the given squares being flipped.
+     */
+    public static long flips(long squares) {
+        long key = 0;
+        while (squares != 0) {
+            key ^= FLIP[Long.numberOfTrailingZeros(squares)];
+            squares &= squares - 1;
+        }
+        return key;
+    }
+
+    public static long hash(final long black, final long white) {
+        return pieces(BLACK, black) ^ pieces(WHITE, white);
+    }
+
+    public static long piece(final Side side, final int square) {
+        return side == Side.BLACK ? BLACK[square] : WHITE[square];
+    }
+
+    public static long toMove(final Side side) { return side == Side.BLACK ? BLACK_TO_MOVE : 0; }
+
+    /* Private static methods */
+    private static long pieces(final long[] keys, long squares) {
+        long key = 0;
+        while (squares != 0) {
+            key ^= keys[Long.numberOfTrailingZeros(squares)];
+            squares &= squares - 1;
+        }
+        return key;
+    }
+}
@@ -0,0 +1,175 @@
+package com.mattforni.games.othello.gui;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+import com.mattforni.games.othello.gui.square.Square;
+
+/**
+ * {@link BoardPainter} draws a {@link Gameboard} from the state of its
+ * {@link Square}s, so that the squares themselves hold no shapes. The grid of
+ * empty squares and borders never changes, so it is drawn once into an image
+ * which is then copied onto the board, and only the highlighted squares and
+ * the pieces which fall within the region being repainted are drawn over it,
+ * all with the same two shapes. The squares are drawn at the size the board
+ * asks for, with the pieces inset in proportion.
+ *
+ * The hint of a square is written across its middle, and the best moves are
+ * shaded from {@link #BEST} for the first towards the usual highlight, with
+ * their rank in the corner, so that they stand out in order at a glance.
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+final class BoardPainter {
+    static final Color BORDER = Color.BLACK;
+    static final Color OUTLINE = Color.BLACK;
+    static final Color REGULAR = new Color(0, 225, 0);
+    static final Color HIGHLIGHTED = new Color(51, 255, 51);
+    static final Color BEST = new Color(255, 215, 0);
+    static final Color HINT = Color.BLACK;
+    static final Color BOUND = new Color(0, 100, 0);
+    // The rank from which the best moves are shaded like any other move
+    static final int SHADES = 4;
+
+    private static final Color[] RANKED = shades();
+
+    private final int rows;
+    private final int columns;
+    private final int size;
+    private final Rectangle2D.Double cell;
+    private final Ellipse2D.Double piece;
+    private final Font hintFont;
+    private final Font rankFont;
+
+    private BufferedImage grid;
+
+    BoardPainter(final int rows, final int columns, final int size) {
+        final int indent = Math.max(1, size * Square.INDENT / Square.SIZE);
+        this.rows = rows;
+        this.columns = columns;
+        this.size = size;
+        this.cell = new Rectangle2D.Double(0, 0, size, size);
+        this.piece = new Ellipse2D.Double(0, 0, size-2*indent, size-2*indent);
+        this.hintFont = new Font(Font.SANS_SERIF, Font.BOLD, Math.max(8, size*3/10));
+        this.rankFont = new Font(Font.SANS_SERIF, Font.PLAIN, Math.max(7, size/5));
+    }
+
+    /**
+     * Draws the part of the given board which lies within the clip of the
+     * given brush.
+     */
+    void paint(final Graphics2D brush, final Gameboard gameboard) {
+        final Rectangle clip = brush.getClipBounds() != null ? brush.getClipBounds() :
+            new Rectangle(0, 0, columns*size, rows*size);
+        brush.drawImage(getGrid(), 0, 0, null);
+
+        final int firstRow = Math.max(0, clip.y / size);
+        final int lastRow = Math.min(rows-1, (clip.y + clip.height - 1) / size);
+        final int firstColumn = Math.max(0, clip.x / size);
+        final int lastColumn = Math.min(columns-1, (clip.x + clip.width - 1) / size);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                final Square square = gameboard.get(row, column);
+                if (square.isHighlighted()) {
+                    final int rank = square.getHintRank();
+                    paintCell(brush, row, column,
+                            rank > 0 && rank < SHADES ? RANKED[rank] : HIGHLIGHTED);
+                }
+            }
+        }
+
+        // Only the pieces are smoothed so that the lines of the grid stay sharp
+        brush.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                final Square square = gameboard.get(row, column);
+                if (square.hasPiece()) {
+                    piece.x = column*size + (size - piece.width) / 2;
+                    piece.y = row*size + (size - piece.height) / 2;
+                    brush.setColor(square.getSide().color);
+                    brush.fill(piece);
+                    brush.setColor(OUTLINE);
+                    brush.draw(piece);
+                } else if (square.getHintText() != null) {
+                    paintHint(brush, square);
+                }
+            }
+        }
+    }
+
+    /* Private methods */
+    /**
+     * Returns the image of the empty board, which is only drawn the first
+     * time it is needed.
+     */
+    private BufferedImage getGrid() {
+        if (grid == null) {
+            grid = new BufferedImage(columns*size, rows*size, BufferedImage.TYPE_INT_RGB);
+            final Graphics2D brush = grid.createGraphics();
+            try {
+                for (int row = 0; row < rows; row++) {
+                    for (int column = 0; column < columns; column++) {
+                        final boolean border = row == 0 || row == rows-1 || column == 0 || column == columns-1;
+                        paintCell(brush, row, column, border ? BORDER : REGULAR);
+                    }
+                }
+            } finally {
+                brush.dispose();
+            }
+        }
+        return grid;
+    }
+
+    private void paintHint(final Graphics2D brush, final Square square) {
+        final int x = square.getColumn()*size;
+        final int y = square.getRow()*size;
+        final int rank = square.getHintRank();
+
+        brush.setFont(hintFont);
+        brush.setColor(rank > 0 ? HINT : BOUND);
+        FontMetrics metrics = brush.getFontMetrics();
+        final String text = square.getHintText();
+        brush.drawString(text, x + (size - metrics.stringWidth(text)) / 2,
+                y + (size - metrics.getHeight()) / 2 + metrics.getAscent());
+
+        if (rank > 0) {
+            brush.setFont(rankFont);
+            metrics = brush.getFontMetrics();
+            brush.drawString(Integer.toString(rank), x + 3, y + 2 + metrics.getAscent());
+        }
+    }
+
+    private void paintCell(final Graphics2D brush, final int row, final int column, final Color color) {
+        cell.x = column*size;
+        cell.y = row*size;
+        brush.setColor(color);
+        brush.fill(cell);
+        brush.setColor(OUTLINE);
+        brush.draw(cell);
+    }
+
+    /* Private static methods */
+    /**
+     * Returns the colours of the squares of the best moves by their rank,
+     * fading from {@link #BEST} towards {@link #HIGHLIGHTED}.
+     */
+    private static Color[] shades() {
+        final Color[] shades = new Color[SHADES];
+        for (int rank = 1; rank < SHADES; rank++) {
+            final float weight = (float) (rank - 1) / (SHADES - 1);
+            shades[rank] = new Color(
+                    Math.round(BEST.getRed() + weight*(HIGHLIGHTED.getRed() - BEST.getRed())),
+                    Math.round(BEST.getGreen() + weight*(HIGHLIGHTED.getGreen() - BEST.getGreen())),
+                    Math.round(BEST.getBlue() + weight*(HIGHLIGHTED.getBlue() - BEST.getBlue())));
+        }
+        return shades;
+    }
+}
@@ -3,6 +3,7 @@ package com.mattforni.games.othello.gui;
 import static java.lang.String.format;
 import static javax.swing.SwingConstants.CENTER;
 
+import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.GridLayout;
@@ -13,6 +14,7 @@ import java.util.Map;
 
 import javax.swing.ButtonGroup;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JRadioButton;
@@ -22,11 +24,15 @@ import com.mattforni.games.othello.players.ComputerPlayer;
 import com.mattforni.games.othello.players.HumanPlayer;
 import com.mattforni.games.othello.players.Player;
 import com.mattforni.games.othello.players.Player.Side;
+import com.mattforni.games.othello.players.ai.BookStrategy;
+import com.mattforni.games.othello.players.ai.TimedNegamax;
 
 /**
  * The {@link ControlPanel} contains all of the controls for Othello which
- * include player selection and buttons to start a new game, apply the selected
- * settings and quit the application.
+ * include board size and player selection and buttons to start a new game,
+ * apply the selected settings and quit the application. A new board size only
+ * takes effect when the settings are applied, which starts a new game, while
+ * hints for human players are turned on and off straight away.
  *
  * @author Matthew Fornaciari <mattforni@gmail.com>
  */
@@ -34,14 +40,20 @@ import com.mattforni.games.othello.players.Player.Side;
 @SuppressWarnings("serial")
 public class ControlPanel extends JPanel {
     private static final String COMPUTER_FORMAT = "Computer, Level %d";
-    private static final Dimension DIMENSION = new Dimension(300, 150);
-    private static final int NUM_COMPUTERS = 3;
+    private static final String TIMED_FORMAT = "Computer, %d ms";
+    private static final String SIZE_FORMAT = "%dx%d";
+    private static final Dimension DIMENSION = new Dimension(300, 390);
+    private static final int NUM_COMPUTERS = 6;
+    private static final long[] THINK_TIMES = { 250, 1000, 5000 };
+    private static final int[] BOARD_SIZES = { 8, 16, 24, 32 };
 
     private final Referee referee;
     private final Map<Side, Player> players;
 
+    private int boardSize;
+
     public ControlPanel(final Referee referee){
-        super(new GridLayout(0, 1));
+        super(new BorderLayout());
 
         this.setBackground(Color.WHITE);
         this.setSize(DIMENSION);
@@ -50,9 +62,14 @@ public class ControlPanel extends JPanel {
 
         this.referee = referee;
         this.players = new HashMap<Side, Player>();
+        this.boardSize = referee.getBoardSize();
 
-        this.add(playerSelection());
-        this.add(buttons());
+        final JPanel options = new JPanel(new GridLayout(2, 1));
+        options.add(sizeSelection());
+        options.add(hintSelection());
+        this.add(options, BorderLayout.NORTH);
+        this.add(playerSelection(), BorderLayout.CENTER);
+        this.add(buttons(), BorderLayout.SOUTH);
         updatePlayers();
     }
 
@@ -66,8 +83,19 @@ public class ControlPanel extends JPanel {
         return buttons;
     }
 
+    private JPanel hintSelection() {
+        final JPanel hintSelection = new JPanel(new GridLayout(1, 2));
+        hintSelection.setBackground(Color.WHITE);
+        hintSelection.add(new JLabel("Hints", CENTER));
+
+        final HintButton button = new HintButton();
+        button.setBackground(Color.WHITE);
+        hintSelection.add(button);
+        return hintSelection;
+    }
+
     private JPanel playerSelection() {
-        final JPanel playerSelection = new JPanel(new GridLayout(5, 2));
+        final JPanel playerSelection = new JPanel(new GridLayout(NUM_COMPUTERS+THINK_TIMES.length+2, 2));
         playerSelection.setBackground(Color.WHITE);
 
         final Map<Side, ButtonGroup> groups = new HashMap<Side, ButtonGroup>();
@@ -104,9 +132,40 @@ public class ControlPanel extends JPanel {
             }
         }
 
+        // Create timed computer buttons, which think for a fixed time per move
+        for (int number = 0; number < THINK_TIMES.length; number++) {
+            for (final Side side : Side.values()) {
+                final String name = format(TIMED_FORMAT, THINK_TIMES[number]);
+                final Player computer = new ComputerPlayer(
+                        BookStrategy.wrap(new TimedNegamax(THINK_TIMES[number])), side);
+
+                final PlayerButton button = new PlayerButton(name, computer);
+                if ((NUM_COMPUTERS + number) % 2 != 0) { button.setBackground(Color.WHITE); }
+                groups.get(side).add(button);
+                playerSelection.add(button);
+            }
+        }
+
         return playerSelection;
     }
 
+    private JPanel sizeSelection() {
+        final JPanel sizeSelection = new JPanel(new GridLayout(1, BOARD_SIZES.length+1));
+        sizeSelection.setBackground(Color.WHITE);
+        sizeSelection.add(new JLabel("Board", CENTER));
+
+        final ButtonGroup group = new ButtonGroup();
+        for (final int size : BOARD_SIZES) {
+            final SizeButton button = new SizeButton(size);
+            button.setBackground(Color.WHITE);
+            button.setSelected(size == boardSize);
+            group.add(button);
+            sizeSelection.add(button);
+        }
+
+        return sizeSelection;
+    }
+
     private void updatePlayers() {
         final Player black = players.get(Side.BLACK);
         final Player white = players.get(Side.WHITE);
@@ -128,12 +187,30 @@ public class ControlPanel extends JPanel {
         private class PlayerListener implements ActionListener {
             public final void actionPerformed(final ActionEvent e) {
                 if (referee.isRunning()) { referee.stop(); }
+                referee.cancelSearch();
+                if (boardSize != referee.getBoardSize()) { referee.setBoardSize(boardSize); }
                 updatePlayers();
                 referee.start();
             }
         }
     }
 
+    /**
+     * {@link HintButton} turns the hints for human players on and off.
+     */
+    private class HintButton extends JCheckBox {
+        public HintButton() {
+            super("Rank the best moves", referee.isShowingHints());
+            this.addActionListener(new HintListener());
+        }
+
+        private class HintListener implements ActionListener {
+            public final void actionPerformed(final ActionEvent e) {
+                referee.setHints(isSelected());
+            }
+        }
+    }
+
     /**
      * {@link PlayerButton} is a radio button representation of a {@link Player}.
      */
@@ -153,6 +230,25 @@ public class ControlPanel extends JPanel {
         }
     }
 
+    /**
+     * {@link SizeButton} is a radio button representation of a board size.
+     */
+    private class SizeButton extends JRadioButton {
+        private final int size;
+
+        public SizeButton(final int size) {
+            super(format(SIZE_FORMAT, size, size), false);
+            this.size = size;
+            this.addActionListener(new SizeListener());
+        }
+
+        private class SizeListener implements ActionListener {
+            public final void actionPerformed(final ActionEvent e) {
+                boardSize = size;
+            }
+        }
+    }
+
     /**
      * {@link QuitButton} simply exits the application when pressed.
      */
@@ -13,39 +13,60 @@ import javax.swing.JPanel;
 /**
  * The {@link DisplayPanel} contains all of the display components for Othello
  * which include a status bar indicating whose turn it is and how many pieces
- * each player has at present.
+ * each player has at present. When the {@link #STATISTICS_PROPERTY} property
+ * is set a further line shows how the last computer move was searched.
  *
  * @author Matthew Fornaciari <mattforni@gmail.com>
  */
 
 @SuppressWarnings("serial")
 public class DisplayPanel extends JPanel {
+    // The search statistics may be shown when launching the game
+    public static final String STATISTICS_PROPERTY = "othello.search.statistics";
+
     private static final Dimension DIMENSION = new Dimension(300, 50);
+    private static final Dimension STATISTICS_DIMENSION = new Dimension(300, 75);
     private static final String PIECES_FORMAT = "White: %d Black: %d";
     private static final String STATUS = "Select Players, then press 'Apply Settings'";
 
     private final JLabel pieces;
     private final JLabel status;
+    private final JLabel statistics;
 
     public DisplayPanel() {
-        super(new GridLayout(2, 1));
+        this(Boolean.getBoolean(STATISTICS_PROPERTY));
+    }
+
+    public DisplayPanel(final boolean showStatistics) {
+        super(new GridLayout(showStatistics ? 3 : 2, 1));
 
         this.status = new JLabel(STATUS, CENTER);
         this.pieces = new JLabel(format(PIECES_FORMAT, 2, 2), CENTER);
+        this.statistics = showStatistics ? new JLabel("", CENTER) : null;
 
+        final Dimension dimension = showStatistics ? STATISTICS_DIMENSION : DIMENSION;
         this.setBackground(Color.white);
-        this.setSize(DIMENSION);
-        this.setPreferredSize(DIMENSION);
+        this.setSize(dimension);
+        this.setPreferredSize(dimension);
         this.setVisible(true);
 
         this.add(status);
         this.add(pieces);
+        if (statistics != null) { this.add(statistics); }
     }
 
     public final void setPieces(final int white, final int black) {
         pieces.setText(format(PIECES_FORMAT, white, black));
     }
 
+    /**
+     * Shows the given description of the last search, if the statistics line
+     * is shown at all.
+     */
+    public final void setStatistics(final String string) {
+        if (statistics != null) { statistics.setText(string); }
+    }
+
     public final void setStatus(final String string) {
         status.setText(string);
     }
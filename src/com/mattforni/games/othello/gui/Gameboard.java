@@ -5,11 +5,20 @@ import static com.mattforni.games.othello.gui.square.Square.SIZE;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
+import com.mattforni.games.othello.board.Bitboard;
+import com.mattforni.games.othello.board.Mailbox;
 import com.mattforni.games.othello.gui.square.BorderSquare;
 import com.mattforni.games.othello.gui.square.PlayableSquare;
 import com.mattforni.games.othello.gui.square.Square;
@@ -24,6 +33,33 @@ import com.mattforni.games.othello.players.Player.Side;
  * array of {@link Square} objects should display themselves. This class is the
  * bread and butter of the logic behind Othello.
  *
+ * When the playable area is the standard eight by eight grid the board also
+ * keeps a {@link Bitboard} in sync with its squares, which is what the AI
+ * searches over. Boards of any other size keep a {@link Mailbox} instead, which
+ * also decides which squares are valid moves and which pieces a move flips.
+ * The size of the board may be changed between games, and the squares shrink
+ * as the board grows so that it stays about the same size on screen.
+ *
+ * The board also keeps track of the legal moves of each {@link Side}, the
+ * frontier of empty squares next to a piece and the number of pieces of each
+ * {@link Side} as pieces are placed and flipped, so none of them require a scan
+ * of the board. On the standard board the counts and moves are read from the
+ * {@link Bitboard}, and the moves of each side are generated from it once each
+ * time the pieces have changed. On other boards a changed piece means only the
+ * empty squares which can see it along a line of pieces may have changed
+ * whether they are a valid move, and only those are checked again the next
+ * time the moves are asked for.
+ *
+ * The board is drawn by a single {@link BoardPainter}. Only the squares which
+ * change are repainted, and the requests made while handling one event are
+ * merged into a single repaint, which is skipped altogether when the board is
+ * not on screen.
+ *
+ * While the moves of a side are shown each of them may also be given a hint
+ * with {@link #showHint(int, int, String, int)}, which stays on the square
+ * until the moves are hidden or the hints are taken down with
+ * {@link #hideHints()}.
+ *
  * @author Matthew Fornaciari <mattforni@gmail.com>
  */
 
@@ -31,11 +67,25 @@ import com.mattforni.games.othello.players.Player.Side;
 public class Gameboard extends JPanel {
     private static final int DEFAULT_ROWS = 10;
     private static final int DEFAULT_COLUMNS = 10;
+    // The largest board is drawn with squares no bigger than fit in this many pixels
+    private static final int PIXELS = 640;
 
-    private final int rows;
-    private final int columns;
     private final List<Square> moves;
-    private final Square[][] squares;
+    private final Map<Side, Set<Square>> legal;
+    private final Map<Side, Integer> counts;
+    private final Set<Square> frontier;
+    private final Set<Square> dirty;
+
+    private int rows;
+    private int columns;
+    private int squareSize;
+    private Bitboard bitboard;
+    private Mailbox mailbox;
+    private Square[][] squares;
+    private BoardPainter painter;
+    private Rectangle damage;
+    private boolean stale;
+    private Square lastMove;
 
     public Gameboard() throws IllegalArgumentException {
         this(DEFAULT_ROWS, DEFAULT_COLUMNS);
@@ -44,25 +94,13 @@ public class Gameboard extends JPanel {
     public Gameboard(final int rows, final int columns) throws IllegalArgumentException {
         super();
 
-        // If either board dimension is not even an exception is thrown
-        if (rows % 2 != 0 || columns % 2 != 0) {
-            throw new IllegalArgumentException("Board dimensions must be even");
-        }
-
-        // If the dimensions are not equal an exception is thrown
-        if (rows != columns) {
-            throw new IllegalArgumentException("The gameboard must be square");
-        }
-
-        this.rows = rows;
-        this.columns = columns;
-
         this.moves = new ArrayList<Square>();
-        this.squares = new Square[rows][columns];
-        newGame();
-
-        this.setSize(new Dimension(rows*SIZE, columns*SIZE));
-        this.setPreferredSize(new Dimension(rows*SIZE, columns*SIZE));
+        this.legal = new EnumMap<Side, Set<Square>>(Side.class);
+        this.counts = new EnumMap<Side, Integer>(Side.class);
+        this.frontier = new HashSet<Square>();
+        this.dirty = new HashSet<Square>();
+        for (final Side side : Side.values()) { legal.put(side, new HashSet<Square>()); }
+        setBoardSize(rows, columns);
         this.setVisible(true);
     }
 
@@ -73,20 +111,15 @@ public class Gameboard extends JPanel {
             for (int column = 0; column < columns; column++) {
                 final Square square = gameboard.get(row, column);
                 if (square.hasPiece()) {
-                    squares[row][column].setPiece(square.getSide());
+                    setPiece(square.getSide(), row, column);
                 }
             }
         }
     }
 
     public final int count(final Side side) {
-        int count = 0;
-        for (int row = 0; row < rows; row++) {
-            for (int column = 0; column < columns; column++) {
-                if (squares[row][column].getSide() == side) { count++; }
-            }
-        }
-        return count;
+        if (bitboard != null) { return bitboard.count(side); }
+        return counts.get(side);
     }
 
     public final Square get(final int row, final int column) {
@@ -95,53 +128,135 @@ public class Gameboard extends JPanel {
         return squares[row][column];
     }
 
+    /**
+     * Returns the live {@link Bitboard} backing this board, or null if the
+     * playable area is not the standard eight by eight grid. Callers that wish
+     * to explore hypothetical moves should work on a copy.
+     */
+    public final Bitboard getBitboard() { return bitboard; }
+
+    /**
+     * Returns the empty squares which are next to at least one piece.
+     */
+    public final Set<Square> getFrontier() { return Collections.unmodifiableSet(frontier); }
+
+    /**
+     * Returns the square of the last move made on this board, or null if no
+     * move has been made since the game began.
+     */
+    public final Square getLastMove() { return lastMove; }
+
+    /**
+     * Returns the squares which are currently a valid move for the given {@link Side}.
+     */
+    public final Set<Square> getMoves(final Side side) {
+        refresh();
+        return Collections.unmodifiableSet(legal.get(side));
+    }
+
+    /**
+     * Returns the live {@link Mailbox} backing this board, or null if the
+     * playable area is the standard eight by eight grid and has a
+     * {@link Bitboard} instead. Callers that wish to explore hypothetical moves
+     * should work on a copy.
+     */
+    public final Mailbox getMailbox() { return mailbox; }
+
+    /**
+     * Returns the width and height in pixels of each square as drawn.
+     */
+    public final int getSquareSize() { return squareSize; }
+
+    public final boolean hasBitboard() { return bitboard != null; }
+
+    public final boolean hasMailbox() { return mailbox != null; }
+
+    /**
+     * Takes the hints down from every move which is shown, leaving the moves
+     * themselves highlighted.
+     */
+    public final void hideHints() {
+        for (final Square square : moves) {
+            if (square.getHintText() != null) { square.setHint(null, 0); }
+        }
+    }
+
     public final void hideMoves() {
         if (moves.isEmpty()) { return; }
         for (final Square square : moves) { square.unhighlight(); }
-        this.repaint();
+        moves.clear();
+    }
+
+    public final boolean isValidMove(final Side side, final int row, final int column) {
+        final Square square = get(row, column);
+        if (square == null || square.isBorder()) { return false; }
+        if (bitboard != null) { return bitboard.isValidMove(side, toSquare(row, column)); }
+        refresh();
+        return legal.get(side).contains(square);
     }
 
     public final boolean makeMove(final Side side, final int row, final int column) {
         final Square square = get(row, column);
         if (square == null || square.isBorder()) { return false; }
-        square.setPiece(side);
-        square.flip(side);
-        this.repaint();
+        lastMove = square;
+        if (bitboard != null) {
+            // Apply the move to the bitboard and mirror the flips on the squares
+            long flipped = bitboard.makeMove(side, toSquare(row, column));
+            place(side, row, column);
+            while (flipped != 0) {
+                final int flip = Long.numberOfTrailingZeros(flipped);
+                place(side, Bitboard.row(flip)+1, Bitboard.column(flip)+1);
+                flipped &= flipped - 1;
+            }
+        } else {
+            // Apply the move to the mailbox, whose squares are those of the board
+            final int flipped = mailbox.makeMove(side, mailbox.square(row, column));
+            place(side, row, column);
+            for (int index = 0; index < flipped; index++) {
+                final int flip = mailbox.getFlipped(index);
+                place(side, mailbox.row(flip), mailbox.column(flip));
+            }
+        }
         return true;
     }
 
     public final void newGame() {
         final int half = rows / 2;
+        if (bitboard != null) { bitboard.newGame(); }
+        if (mailbox != null) { mailbox.newGame(); }
+        lastMove = null;
+        moves.clear();
+        frontier.clear();
+        dirty.clear();
+        stale = false;
+        for (final Side side : Side.values()) {
+            legal.get(side).clear();
+            counts.put(side, 0);
+        }
         for (int row = 0; row < rows; row++) {
             for (int column = 0; column < columns; column++) {
                 if (isBorder(row, column)) {
                     squares[row][column] = new BorderSquare(this, row, column);
                 } else {
                    squares[row][column] = new PlayableSquare(this, row, column);
-                   if ((column == half-1 && row == half-1) ||
-                           (column == half && row == half)) {
-                       squares[row][column].setPiece(Side.BLACK);
-                   }
-                   if((column == half-1 && row == half) ||
-                           (column == half && row == half-1)) {
-                       squares[row][column].setPiece(Side.WHITE);
-                    }
                 }
             }
         }
+
+        // The starting pieces are placed once every square exists
+        place(Side.BLACK, half-1, half-1);
+        place(Side.BLACK, half, half);
+        place(Side.WHITE, half, half-1);
+        place(Side.WHITE, half-1, half);
         this.repaint();
     }
 
     public final int numColumns() { return columns; }
 
     public final int numMoves(final Player player){
-        int moves = 0;
-        for (int row = 0; row < rows; row++) {
-            for (int column = 0; column < columns; column++) {
-                if(squares[row][column].isValidMove(player.getSide())) { moves++; }
-            }
-        }
-        return moves;
+        if (bitboard != null) { return Long.bitCount(bitboard.getMoves(player.getSide())); }
+        refresh();
+        return legal.get(player.getSide()).size();
     }
 
     public final int numRows() { return rows; }
@@ -149,29 +264,196 @@ public class Gameboard extends JPanel {
     @Override
     public void paintComponent(Graphics g){
         super.paintComponent(g);
-        final Graphics2D brush = (Graphics2D) g;
-        for(int row = 0; row < rows; row++) {
-            for(int col = 0; col < columns; col++) {
-                squares[row][col].paint(brush);
+        if (painter == null) { painter = new BoardPainter(rows, columns, squareSize); }
+        painter.paint((Graphics2D) g, this);
+    }
+
+    /**
+     * Asks for the given square to be drawn again. Requests are merged until
+     * the event being handled is over and then repainted together, and are
+     * ignored while the board is not on screen.
+     */
+    public final void repaintSquare(final int row, final int column) {
+        if (!isShowing()) { return; }
+        final Rectangle bounds = new Rectangle(column*squareSize, row*squareSize, squareSize, squareSize);
+        if (damage != null) {
+            damage.add(bounds);
+            return;
+        }
+        damage = bounds;
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                repaint(damage);
+                damage = null;
             }
+        });
+    }
+
+    /**
+     * Changes the number of rows and columns of the board, including its
+     * border, and starts a new game on it.
+     *
+     * @throws IllegalArgumentException if the board would not be square or
+     * its dimensions are not even
+     */
+    public final void setBoardSize(final int rows, final int columns)
+            throws IllegalArgumentException {
+        // If either board dimension is not even an exception is thrown
+        if (rows % 2 != 0 || columns % 2 != 0) {
+            throw new IllegalArgumentException("Board dimensions must be even");
+        }
+
+        // If the dimensions are not equal an exception is thrown
+        if (rows != columns) {
+            throw new IllegalArgumentException("The gameboard must be square");
+        }
+
+        // If there is no room for the starting pieces inside the border an exception is thrown
+        if (rows < 4) {
+            throw new IllegalArgumentException("The gameboard must have at least four rows");
         }
+
+        this.rows = rows;
+        this.columns = columns;
+        this.squareSize = Math.min(SIZE, PIXELS / rows);
+        this.bitboard = rows == Bitboard.SIZE+2 ? new Bitboard() : null;
+        this.mailbox = bitboard == null ? new Mailbox(rows-2) : null;
+        this.squares = new Square[rows][columns];
+        this.painter = null;
+        newGame();
+
+        this.setSize(new Dimension(rows*squareSize, columns*squareSize));
+        this.setPreferredSize(new Dimension(rows*squareSize, columns*squareSize));
+    }
+
+    /**
+     * Places a piece for the given {@link Side} on the given square without
+     * flipping anything, replacing any piece already there.
+     */
+    public final void setPiece(final Side side, final int row, final int column) {
+        final Square square = get(row, column);
+        if (square == null || square.isBorder()) { return; }
+        place(side, row, column);
+        if (bitboard != null) { bitboard.setPiece(side, toSquare(row, column)); }
+        if (mailbox != null) { mailbox.setPiece(side, mailbox.square(row, column)); }
+    }
+
+    /**
+     * Shows the given hint on the given square, replacing any hint it already
+     * has, as long as the square is one of the moves being shown.
+     *
+     * @param rank the rank of the move among the best moves starting at one,
+     * or zero if it is not one of them
+     */
+    public final void showHint(final int row, final int column, final String text, final int rank) {
+        final Square square = get(row, column);
+        if (square == null || !square.isHighlighted()) { return; }
+        square.setHint(text, rank);
     }
 
     public final void showMoves(final Player player) {
-        for (int row = 0; row < rows; row++) {
-            for (int column = 0; column < columns; column++) {
-                final Square square = squares[row][column];
-                if(square.isValidMove(player.getSide())) {
-                    square.highlight();
-                    moves.add(square);
-                }
-            }
+        hideMoves();
+        refresh();
+        for (final Square square : legal.get(player.getSide())) {
+            square.highlight();
+            moves.add(square);
         }
-        this.repaint();
     }
 
     /* Private methods */
     private boolean isBorder(final int row, final int column) {
         return row == 0 || row == rows-1 || column == 0 || column == columns-1;
     }
+
+    private boolean isMove(final Side side, final Square square) {
+        if (mailbox == null) { return square.isValidMove(side); }
+        return mailbox.isValidMove(side, mailbox.square(square.getRow(), square.getColumn()));
+    }
+
+    /**
+     * Places a piece on the given square and updates the frontier. Without a
+     * {@link Bitboard} the counts are updated too, and every square whose
+     * moves may have changed is marked as dirty.
+     */
+    private void place(final Side side, final int row, final int column) {
+        final Square square = squares[row][column];
+        final Side previous = square.getSide();
+        if (previous == side) { return; }
+
+        square.setPiece(side);
+        repaintSquare(row, column);
+        if (previous == null) {
+            // The square leaves the frontier and its empty neighbours join it
+            frontier.remove(square);
+            for (int r = row-1; r <= row+1; r++) {
+                for (int c = column-1; c <= column+1; c++) {
+                    final Square neighbour = squares[r][c];
+                    if (!neighbour.isBorder() && !neighbour.hasPiece()) { frontier.add(neighbour); }
+                }
+            }
+        }
+
+        // The bitboard keeps its own counts and gives all of the moves at once
+        if (bitboard != null) {
+            stale = true;
+            return;
+        }
+
+        counts.put(side, counts.get(side)+1);
+        if (previous != null) { counts.put(previous, counts.get(previous)-1); }
+
+        // Only the first empty square along each line of pieces can see this one
+        dirty.add(square);
+        for (int rowDirection = -1; rowDirection <= 1; rowDirection++) {
+            for (int columnDirection = -1; columnDirection <= 1; columnDirection++) {
+                if (rowDirection == 0 && columnDirection == 0) { continue; }
+                Square next = squares[row+rowDirection][column+columnDirection];
+                for (int distance = 2; next.hasPiece(); distance++) {
+                    next = squares[row+distance*rowDirection][column+distance*columnDirection];
+                }
+                if (!next.isBorder()) { dirty.add(next); }
+            }
+        }
+    }
+
+    /**
+     * Brings the moves of each side up to date, from the moves generated by
+     * the {@link Bitboard} if there is one and otherwise by checking again
+     * whether each dirty square is a valid move for either side.
+     */
+    private void refresh() {
+        if (bitboard != null) {
+            if (!stale) { return; }
+            for (final Side side : Side.values()) {
+                final Set<Square> moves = legal.get(side);
+                moves.clear();
+                long mask = bitboard.getMoves(side);
+                while (mask != 0) {
+                    final int move = Long.numberOfTrailingZeros(mask);
+                    moves.add(squares[Bitboard.row(move)+1][Bitboard.column(move)+1]);
+                    mask &= mask - 1;
+                }
+            }
+            stale = false;
+            return;
+        }
+
+        if (dirty.isEmpty()) { return; }
+        for (final Square square : dirty) {
+            for (final Side side : Side.values()) {
+                if (isMove(side, square)) {
+                    legal.get(side).add(square);
+                } else {
+                    legal.get(side).remove(square);
+                }
+            }
+        }
+        dirty.clear();
+    }
+
+    private int toSquare(final int row, final int column) {
+        // The bitboard only covers the playable area inside the border
+        return Bitboard.square(row-1, column-1);
+    }
 }
@@ -1,7 +1,5 @@
 package com.mattforni.games.othello.gui.square;
 
-import java.awt.Color;
-
 import com.mattforni.games.othello.gui.Gameboard;
 
 
@@ -16,6 +14,5 @@ import com.mattforni.games.othello.gui.Gameboard;
 public class BorderSquare extends Square {
     public BorderSquare(final Gameboard gameboard, final int row, final int column) {
         super(gameboard, row, column);
-        square.setFillColor(Color.black);
     }
 }
@@ -1,11 +1,7 @@
 package com.mattforni.games.othello.gui.square;
 
-import java.awt.Color;
-import java.awt.Graphics2D;
-
 import com.mattforni.games.othello.gui.Gameboard;
 import com.mattforni.games.othello.players.Player.Side;
-import com.mattforni.graphics.shape.Ellipse;
 
 /**
  * {@link PlayableSquare} is an intelligent subclass of {@link Square} which
@@ -13,37 +9,43 @@ import com.mattforni.graphics.shape.Ellipse;
  * contain a piece and are able to determine whether or not they are a valid move
  * for a given {@link Side}. When the {@link #flip(Side)} method is called this
  * object will evaluate the {@link Gameboard} and will flip all necessary
- * {@link Square} instances.
+ * {@link Square} instances, which it does through the {@link Gameboard} so that
+ * the board can keep its moves and counts up to date.
  *
  * @author Matthew Fornaciari <mattforni@gmail.com>
  */
 
 public class PlayableSquare extends Square {
-    private final static Color HIGHLIGHTED = new Color(51, 255, 51);
-    private final static Color REGULAR = new Color(0, 225, 0);
-
-    private final Ellipse piece;
-
     private Side side;
+    private boolean highlighted;
+    private String hintText;
+    private int hintRank;
 
     public PlayableSquare(final Gameboard gameboard, final int row, final int col) {
         super(gameboard, row, col);
-        square.setFillColor(REGULAR);
-        piece = createPiece();
     }
 
+    @Override
+    public final int getHintRank() { return hintRank; }
+
+    @Override
+    public final String getHintText() { return hintText; }
+
     @Override
     public final Side getSide () { return side; }
 
     @Override
     public final boolean hasPiece() { return side != null; }
 
-    public void setPiece(final Side side) {
-        this.side = side;
-        piece.setFillColor(side.color);
-        piece.setVisible(true);
+    @Override
+    public final void setHint(final String text, final int rank) {
+        hintText = text;
+        hintRank = text == null ? 0 : rank;
+        gameboard.repaintSquare(row, column);
     }
 
+    public void setPiece(final Side side) { this.side = side; }
+
     @Override
     public final boolean isBorder() { return false; }
 
@@ -68,8 +70,8 @@ public class PlayableSquare extends Square {
 
     @Override
     public final void flip(final Side side) {
-        // Flip the current square 
-        setPiece(side);
+        // Flip the current square through the gameboard so that it can keep track
+        gameboard.setPiece(side, row, column);
 
         // Check each diagonal for a 'sandwhich' and flip if necessary
         for(int row = this.row-1; row <= this.row+1; row++) {
@@ -86,26 +88,23 @@ public class PlayableSquare extends Square {
     }
 
     @Override
-    public final void highlight() { square.setFillColor(HIGHLIGHTED); }
-
-    @Override
-    public final void paint(final Graphics2D brush){
-        super.paint(brush);
-        piece.paint(brush);
+    public final void highlight() {
+        highlighted = true;
+        gameboard.repaintSquare(row, column);
     }
 
     @Override
-    public final void unhighlight() { square.setFillColor(REGULAR); }
+    public final boolean isHighlighted() { return highlighted; }
 
-    /* Private methods */
-    private Ellipse createPiece() {
-        final Ellipse piece = new Ellipse(gameboard,
-                column*SIZE+INDENT, row*SIZE+INDENT,
-                SIZE-2*INDENT, SIZE-2*INDENT);
-        piece.setVisible(false);
-        return piece;
+    @Override
+    public final void unhighlight() {
+        highlighted = false;
+        hintText = null;
+        hintRank = 0;
+        gameboard.repaintSquare(row, column);
     }
 
+    /* Private methods */
     private void flip(final Side side, int nextRow, int nextColumn) {
         final int rowDirection = nextRow - this.row;
         final int columnDirection = nextColumn - this.column;
@@ -113,7 +112,7 @@ public class PlayableSquare extends Square {
         // Flip all pieces in the given direction
         Square next = gameboard.get(nextRow, nextColumn);
         while(next.hasPiece() && next.getSide() != side) {
-            next.setPiece(side);
+            gameboard.setPiece(side, nextRow, nextColumn);
             nextRow += rowDirection;
             nextColumn += columnDirection;
             next = gameboard.get(nextRow, nextColumn);
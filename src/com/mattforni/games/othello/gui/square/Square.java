@@ -1,14 +1,14 @@
 package com.mattforni.games.othello.gui.square;
 
-import java.awt.Graphics2D;
-
 import com.mattforni.games.othello.gui.Gameboard;
 import com.mattforni.games.othello.players.Player.Side;
-import com.mattforni.graphics.shape.Rectangle;
 
 /**
  * {@link Square} acts as a simple superclass for both {@link BorderSquare} and
  * {@link PlayableSquare} by defining sane defaults for publicly exposed methods.
+ * Squares only hold the state of the board, which the {@link Gameboard} draws.
+ * A highlighted square may also carry a hint about how good a move it is,
+ * made up of the text to show on it and its rank among the best moves.
  *
  * @author Matthew Fornaciari <mattforni@gmail.com>
  */
@@ -19,17 +19,26 @@ public abstract class Square {
 
     protected final Gameboard gameboard;
     protected final int row, column;
-    protected final Rectangle square;
 
     public Square(final Gameboard gameboard, final int row, final int column) {
         this.gameboard = gameboard;
         this.row = row;
         this.column = column;
-        this.square = new Rectangle(gameboard, column*SIZE, row*SIZE, SIZE, SIZE);
     }
 
     public final int getColumn() { return column; }
 
+    /**
+     * Returns the rank of the hint of this square among the best moves,
+     * starting at one, or zero if the move is not one of them.
+     */
+    public int getHintRank() { return 0; }
+
+    /**
+     * Returns the text of the hint shown on this square, or null if there is none.
+     */
+    public String getHintText() { return null; }
+
     public final int getRow() { return row; }
 
     public Side getSide() { return null; }
@@ -38,9 +47,11 @@ public abstract class Square {
 
     public void highlight() {}
 
+    public boolean isHighlighted() { return false; }
+
     public boolean isValidMove(final Side side) { return false; }
 
-    public void paint(final Graphics2D brush) { square.paint(brush); }
+    public void setHint(final String text, final int rank) {}
 
     public void setPiece(final Side side) {}
 
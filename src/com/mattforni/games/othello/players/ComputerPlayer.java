@@ -1,27 +1,257 @@
 package com.mattforni.games.othello.players;
 
+import static java.lang.String.format;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.mattforni.games.othello.board.Bitboard;
+import com.mattforni.games.othello.board.Mailbox;
 import com.mattforni.games.othello.gui.Gameboard;
-import com.mattforni.games.othello.players.ai.Minimax;
+import com.mattforni.games.othello.players.ai.BookStrategy;
+import com.mattforni.games.othello.players.ai.EndgameSolver;
+import com.mattforni.games.othello.players.ai.Evaluator;
+import com.mattforni.games.othello.players.ai.Negamax;
+import com.mattforni.games.othello.players.ai.SearchMonitor;
+import com.mattforni.games.othello.players.ai.SearchStatistics;
 import com.mattforni.games.othello.players.ai.Strategy;
+import com.mattforni.games.othello.players.ai.Strategy.Move;
+import com.mattforni.games.othello.players.ai.TimedNegamax;
 
 /**
  * {@link ComputerPlayer} is only slightly more complicated than it's counterpart
  * {@link HumanPlayer} is the sense that it contains and incorporates
- * {@link ComputerPlayer#intel} into the {@link #makeMove(Gameboard)} method.
+ * {@link ComputerPlayer#intel} into the {@link #makeMove(Gameboard)} method. The
+ * intel is the number of moves the {@link Negamax} strategy searches ahead.
+ * Alternatively any other {@link Strategy}, such as a {@link TimedNegamax}
+ * which thinks for a fixed amount of time, may be supplied directly, as may the
+ * {@link Evaluator} with which the {@link Negamax} strategy scores positions.
+ * When an opening book is available the players of a given intel play its
+ * moves until the game leaves the book (see {@link BookStrategy}).
+ *
+ * Once few enough squares are left empty the strategy is set aside and the
+ * position is solved by an {@link EndgameSolver}, and how long that took is
+ * reported by {@link #getReport()}. If the solver only proves that every move
+ * loses the strategy chooses the move instead, in the hope of a mistake. Boards
+ * which are not the standard size are always left to the strategy.
+ *
+ * The {@link SearchStatistics} of every move are kept for {@link #getStatistics()}
+ * and recorded by the {@link SearchMonitor} named by {@link #setMonitor(String)},
+ * which publishes them over JMX. The monitor is named after the player's side
+ * unless another name is given, and nothing is recorded if the name is null.
+ *
+ * While the opponent thinks the player may {@link #ponder(Bitboard)}, choosing
+ * its reply to each of the opponent's moves in turn, starting with the move it
+ * would make in their place. If the opponent plays one of the moves already
+ * pondered the reply is played at once, and otherwise the replies are thrown
+ * away, though the positions the search visited are still remembered by its
+ * transposition table.
  *
  * @author Matthew Fornaciari <mattforni@gmail.com>
  */
 
 public class ComputerPlayer extends Player {
+    private static final String REPORT_FORMAT = "solved: %s";
+    private static final String PONDERED = "pondered";
+    private static final String PONDERED_FORMAT = "%s, " + PONDERED;
+
     private final Strategy strategy;
+    private final EndgameSolver solver;
+    private final Map<Long, Reply> replies;
+
+    private String monitor;
+    private String report;
+    private long nodes;
+    private SearchStatistics statistics;
 
     public ComputerPlayer(final int intel, final Side side) {
+        this(BookStrategy.wrap(new Negamax(intel)), side);
+    }
+
+    public ComputerPlayer(final int intel, final Evaluator evaluator, final Side side) {
+        this(BookStrategy.wrap(new Negamax(intel, evaluator)), side);
+    }
+
+    public ComputerPlayer(final Strategy strategy, final Side side) {
+        this(strategy, new EndgameSolver(), side);
+    }
+
+    /**
+     * Creates a player which solves the endgame with the given
+     * {@link EndgameSolver}, or never does if it is null.
+     */
+    public ComputerPlayer(final Strategy strategy, final EndgameSolver solver, final Side side) {
         super(side);
-        this.strategy = new Minimax(intel);
+        this.strategy = strategy;
+        this.solver = solver;
+        this.replies = new HashMap<Long, Reply>();
+        this.monitor = side.toString();
+    }
+
+    @Override
+    public final Move getBestMove(final Bitboard board) {
+        Reply reply = replies.get(board.getHash(side));
+        if (reply != null && reply.matches(board)) {
+            report = reply.report == null ? PONDERED : format(PONDERED_FORMAT, reply.report);
+        } else {
+            reply = choose(board);
+            report = reply.report;
+        }
+        replies.clear();
+        nodes = reply.nodes;
+        return record(reply.move, reply.statistics);
+    }
+
+    @Override
+    public final Move getBestMove(final Mailbox board) {
+        report = null;
+        final Move move = strategy.getBestMove(board, side);
+        nodes = strategy.getNodes();
+        return record(move, strategy.getStatistics());
+    }
+
+    /**
+     * Returns the number of positions visited while choosing the last move.
+     */
+    public final long getNodes() { return nodes; }
+
+    /**
+     * Returns a description of how the last move was solved, or null if it
+     * was not.
+     */
+    @Override
+    public final String getReport() { return report; }
+
+    public final EndgameSolver getSolver() { return solver; }
+
+    /**
+     * Returns the {@link SearchStatistics} of the last move, or null if it was
+     * not searched, as when it came from the opening book.
+     */
+    @Override
+    public final SearchStatistics getStatistics() { return statistics; }
+
+    public final Strategy getStrategy() { return strategy; }
+
+    /**
+     * Chooses the reply to each move of the opponent on the given board, where
+     * the opponent is to move, until every move has a reply or the thread is
+     * interrupted. Any replies pondered before are forgotten.
+     */
+    @Override
+    public final void ponder(final Bitboard board) {
+        replies.clear();
+        final Side opponent = side.getOpponent();
+        long moves = board.getMoves(opponent);
+        if (moves == 0) { return; }
+
+        // The move this player would make in the opponent's place is the most likely
+        final Move guess = strategy.getBestMove(new Bitboard(board), opponent);
+        if (!guess.isPass() && (moves & (1L << guess.getPosition())) != 0) {
+            if (!ponder(board, guess.getPosition())) { return; }
+            moves &= ~(1L << guess.getPosition());
+        }
+        while (moves != 0) {
+            final int move = Long.numberOfTrailingZeros(moves);
+            moves &= moves - 1;
+            if (!ponder(board, move)) { return; }
+        }
     }
 
+    /**
+     * Records the statistics of every move with the {@link SearchMonitor} of
+     * the given name, or with none if it is null.
+     */
+    public final void setMonitor(final String monitor) { this.monitor = monitor; }
+
     @Override
     public final boolean makeMove(final Gameboard gameboard) {
-        return makeMove(gameboard, strategy.getBestMove(gameboard, side).getSquare());
+        if (gameboard.hasBitboard()) {
+            final Move move = getBestMove(new Bitboard(gameboard.getBitboard()));
+            if (move.isPass()) { return false; }
+            return makeMove(gameboard, gameboard.get(move.getRow(), move.getColumn()));
+        }
+        final Mailbox mailbox = new Mailbox(gameboard.getMailbox());
+        final Move move = getBestMove(mailbox);
+        if (move.isPass()) { return false; }
+        final int position = move.getPosition();
+        return makeMove(gameboard, gameboard.get(mailbox.row(position), mailbox.column(position)));
+    }
+
+    /* Private methods */
+    /**
+     * Chooses a move on the given board, solving it if it is close enough to
+     * the end and searching it otherwise.
+     */
+    private Reply choose(final Bitboard board) {
+        String report = null;
+        long nodes = 0;
+        if (solver != null && solver.canSolve(board)) {
+            final Move move = solver.getBestMove(board, side);
+            report = format(REPORT_FORMAT, solver.getReport());
+            nodes = solver.getNodes();
+            if (!isHopeless(move)) { return new Reply(board, move, solver.getStatistics(), report, nodes); }
+        }
+        final Move move = strategy.getBestMove(board, side);
+        nodes += strategy.getNodes();
+        return new Reply(board, move, strategy.getStatistics(), report, nodes);
+    }
+
+    private boolean isHopeless(final Move move) {
+        return solver.getMode() == EndgameSolver.Mode.WIN_LOSS_DRAW && move.getValue() < 0;
+    }
+
+    private Move record(final Move move, final SearchStatistics statistics) {
+        this.statistics = statistics;
+        if (statistics != null && monitor != null) { SearchMonitor.get(monitor).record(statistics); }
+        return move;
+    }
+
+    /**
+     * Chooses the reply to the given move of the opponent, returning whether
+     * it was chosen before the thread was interrupted.
+     */
+    private boolean ponder(final Bitboard board, final int move) {
+        if (Thread.currentThread().isInterrupted()) { return false; }
+        final Bitboard child = new Bitboard(board);
+        child.makeMove(side.getOpponent(), move);
+        final Reply reply = choose(child);
+
+        // A search which was interrupted may not have finished, so its move is not kept
+        if (Thread.currentThread().isInterrupted()) { return false; }
+        replies.put(child.getHash(side), reply);
+        return true;
+    }
+
+    /* Private static classes */
+    /**
+     * {@link Reply} is a move chosen on a given position together with what is
+     * known about how it was chosen.
+     */
+    private static final class Reply {
+        private final long black;
+        private final long white;
+        private final Move move;
+        private final SearchStatistics statistics;
+        private final String report;
+        private final long nodes;
+
+        private Reply(final Bitboard board, final Move move, final SearchStatistics statistics,
+                final String report, final long nodes) {
+            this.black = board.get(Side.BLACK);
+            this.white = board.get(Side.WHITE);
+            this.move = move;
+            this.statistics = statistics;
+            this.report = report;
+            this.nodes = nodes;
+        }
+
+        /**
+         * Returns whether the move was chosen on the given position, in case
+         * two positions share a hash.
+         */
+        private boolean matches(final Bitboard board) {
+            return board.get(Side.BLACK) == black && board.get(Side.WHITE) == white;
+        }
     }
 }
@@ -2,8 +2,12 @@ package com.mattforni.games.othello.players;
 
 import java.awt.Color;
 
+import com.mattforni.games.othello.board.Bitboard;
+import com.mattforni.games.othello.board.Mailbox;
 import com.mattforni.games.othello.gui.Gameboard;
 import com.mattforni.games.othello.gui.square.Square;
+import com.mattforni.games.othello.players.ai.SearchStatistics;
+import com.mattforni.games.othello.players.ai.Strategy.Move;
 
 /**
  * {@link Player} acts as a fairly comprehensive superclass for both
@@ -23,14 +27,48 @@ public abstract class Player {
     }
 
     public final boolean attemptMove(final Gameboard gameboard, final Square square) {
-        if (square.isValidMove(side)) {
+        if (gameboard.isValidMove(side, square.getRow(), square.getColumn())) {
             return makeMove(gameboard, square);
         }
         return false;
     }
 
+    /**
+     * Chooses a move on a snapshot of the board without touching the
+     * {@link Gameboard}, which allows it to be done off of the event thread.
+     * By default a player does not choose its own moves and null is returned.
+     */
+    public Move getBestMove(final Bitboard board) { return null; }
+
+    /**
+     * Chooses a move on a snapshot of a board which is not the standard size,
+     * where the position of the move is a square of the {@link Mailbox}. By
+     * default a player does not choose its own moves and null is returned.
+     */
+    public Move getBestMove(final Mailbox board) { return null; }
+
+    /**
+     * Thinks ahead on a snapshot of a board on which the opponent is about to
+     * move, so that the reply to the move they make may be ready by the time
+     * they make it. Pondering continues until it is done or the thread is
+     * interrupted. By default a player does not ponder.
+     */
+    public void ponder(final Bitboard board) {}
+
+    /**
+     * Returns anything worth telling about how the last move was chosen, or
+     * null if there is nothing to report.
+     */
+    public String getReport() { return null; }
+
     public final Side getSide() { return side; }
 
+    /**
+     * Returns the {@link SearchStatistics} of the search for the last move, or
+     * null if the player did not search.
+     */
+    public SearchStatistics getStatistics() { return null; }
+
     public final boolean hasMoves(final Gameboard gameboard) {
         return gameboard.numMoves(this) > 0;
     }
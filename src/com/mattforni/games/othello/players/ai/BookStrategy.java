@@ -0,0 +1,74 @@
+package com.mattforni.games.othello.players.ai;
+
+import com.mattforni.games.othello.board.Bitboard;
+import com.mattforni.games.othello.board.Mailbox;
+import com.mattforni.games.othello.gui.Gameboard;
+import com.mattforni.games.othello.players.Player.Side;
+
+/**
+ * {@link BookStrategy} plays the moves of an {@link OpeningBook} for as long
+ * as the game stays in the book, and leaves every other position, and every
+ * board which is not the standard size, to the {@link Strategy} it wraps.
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public class BookStrategy extends Strategy {
+    private final OpeningBook book;
+    private final Strategy strategy;
+
+    private boolean inBook;
+
+    public BookStrategy(final OpeningBook book, final Strategy strategy) {
+        this.book = book;
+        this.strategy = strategy;
+    }
+
+    @Override
+    public Move getBestMove(final Gameboard gameboard, final Side side) {
+        if (gameboard.hasBitboard()) {
+            final Move move = book.lookup(gameboard.getBitboard(), side);
+            inBook = move != null;
+            if (inBook) { return locate(gameboard, move); }
+        }
+        inBook = false;
+        return strategy.getBestMove(gameboard, side);
+    }
+
+    @Override
+    public Move getBestMove(final Bitboard board, final Side side) {
+        final Move move = book.lookup(board, side);
+        inBook = move != null;
+        return inBook ? move : strategy.getBestMove(board, side);
+    }
+
+    @Override
+    public Move getBestMove(final Mailbox board, final Side side) {
+        inBook = false;
+        return strategy.getBestMove(board, side);
+    }
+
+    public final OpeningBook getBook() { return book; }
+
+    @Override
+    public long getNodes() { return inBook ? 0 : strategy.getNodes(); }
+
+    @Override
+    public int getPrincipalVariation(final Bitboard board, final Side side, final int[] line) {
+        return inBook ? 0 : strategy.getPrincipalVariation(board, side, line);
+    }
+
+    @Override
+    public SearchStatistics getStatistics() { return inBook ? null : strategy.getStatistics(); }
+
+    public final Strategy getStrategy() { return strategy; }
+
+    /**
+     * Wraps the given {@link Strategy} with the default {@link OpeningBook},
+     * or returns it as it is if there is no book.
+     */
+    public static Strategy wrap(final Strategy strategy) {
+        final OpeningBook book = OpeningBook.getDefault();
+        return book == null ? strategy : new BookStrategy(book, strategy);
+    }
+}
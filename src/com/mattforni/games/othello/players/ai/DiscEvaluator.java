@@ -0,0 +1,31 @@
+package com.mattforni.games.othello.players.ai;
+
+import com.mattforni.games.othello.board.Bitboard;
+import com.mattforni.games.othello.players.Player.Side;
+
+/**
+ * {@link DiscEvaluator} scores a position by the difference in pieces alone,
+ * which is cheap but plays poorly until the very end of the game. It keeps no
+ * features, so a single instance may be shared by any number of threads.
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public class DiscEvaluator implements Evaluator {
+    @Override
+    public Evaluator copy() { return this; }
+
+    @Override
+    public int evaluate(final Bitboard board, final Side side) {
+        return board.count(side) - board.count(side.getOpponent());
+    }
+
+    @Override
+    public void play(final Side side, final int square, final long flipped) {}
+
+    @Override
+    public void reset(final Bitboard board) {}
+
+    @Override
+    public void undo(final Side side, final int square, final long flipped) {}
+}
@@ -0,0 +1,428 @@
+package com.mattforni.games.othello.players.ai;
+
+import static java.lang.String.format;
+
+import java.util.concurrent.TimeUnit;
+
+import com.mattforni.games.othello.board.Bitboard;
+import com.mattforni.games.othello.gui.Gameboard;
+import com.mattforni.games.othello.players.Player.Side;
+
+/**
+ * {@link EndgameSolver} plays the end of the game perfectly by searching every
+ * line to the last move. It may either prove only whether a position is won,
+ * lost or drawn ({@link Mode#WIN_LOSS_DRAW}), which needs just a null window
+ * around zero, or find the exact final difference in pieces
+ * ({@link Mode#EXACT}). Positions with no more than the given number of empty
+ * squares are solved exactly and those with a few more for the result alone.
+ *
+ * The search works directly on the two piece masks so that nothing is copied
+ * or allocated. Far from the end the moves which leave the opponent the fewest
+ * replies are tried first, since they are both the likeliest to be best and
+ * the quickest to search. Closer to the end that costs more than it saves and
+ * moves are instead tried in the quadrants with an odd number of empty squares
+ * first, where the side to move can hope to get the last move. The last four
+ * empty squares are solved by dedicated routines which skip move generation
+ * and simply try each remaining square in turn.
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public class EndgameSolver extends Strategy {
+    // The number of empty squares to solve may be tuned per host
+    public static final String EMPTIES_PROPERTY = "othello.endgame.empties";
+    public static final int DEFAULT_EMPTIES = 14;
+    // Positions this many squares beyond an exact solve are solved for the result alone
+    public static final int WIN_LOSS_DRAW_EXTRA = 4;
+
+    // Below this many empty squares the moves are ordered by parity alone
+    private static final int FASTEST_FIRST_EMPTIES = 7;
+    // The last few empty squares are solved without generating moves
+    private static final int LAST_EMPTIES = 4;
+    // The number of nodes searched between checks for an interruption
+    private static final int CHECK_INTERVAL = 1 << 14;
+    private static final int INFINITY = Bitboard.SQUARES + 1;
+    private static final long[] QUADRANTS = {
+        0x000000000F0F0F0FL, 0x00000000F0F0F0F0L, 0x0F0F0F0F00000000L, 0xF0F0F0F000000000L
+    };
+
+    private final int exactEmpties;
+    private final int resultEmpties;
+    // The moves and their ordering keys at each number of empty squares
+    private final int[][] moves;
+    private final int[][] keys;
+    private final int[] last;
+
+    private Mode mode;
+    private long nodes, cutoffs;
+    private long nanos;
+    private int value;
+    private SearchStatistics statistics;
+
+    public EndgameSolver() throws IllegalArgumentException {
+        this(Integer.getInteger(EMPTIES_PROPERTY, DEFAULT_EMPTIES));
+    }
+
+    public EndgameSolver(final int exactEmpties) throws IllegalArgumentException {
+        this(exactEmpties, exactEmpties + WIN_LOSS_DRAW_EXTRA);
+    }
+
+    public EndgameSolver(final int exactEmpties, final int resultEmpties)
+            throws IllegalArgumentException {
+        // If the thresholds are not in order an exception is thrown
+        if (exactEmpties < 0 || resultEmpties < exactEmpties) {
+            throw new IllegalArgumentException("The endgame thresholds must be ordered and positive");
+        }
+
+        this.exactEmpties = exactEmpties;
+        this.resultEmpties = resultEmpties;
+        this.moves = new int[Bitboard.SQUARES+1][];
+        this.keys = new int[Bitboard.SQUARES+1][];
+        this.last = new int[LAST_EMPTIES];
+    }
+
+    /**
+     * Returns whether the given position is close enough to the end to be solved.
+     */
+    public final boolean canSolve(final Bitboard board) {
+        return board.countEmpty() <= resultEmpties;
+    }
+
+    @Override
+    public Move getBestMove(final Gameboard gameboard, final Side side)
+            throws IllegalArgumentException {
+        // If there is no bitboard there is nothing to solve
+        if (!gameboard.hasBitboard()) {
+            throw new IllegalArgumentException("The endgame can only be solved on a bitboard");
+        }
+        return locate(gameboard, getBestMove(gameboard.getBitboard(), side));
+    }
+
+    /**
+     * Solves the given position, exactly if it has few enough empty squares,
+     * and returns the best move with the final difference in pieces as its
+     * value, or for a solve of the result alone with one, zero or minus one
+     * for a win, draw or loss. If the solving thread is interrupted the best
+     * move found so far is returned.
+     */
+    @Override
+    public Move getBestMove(final Bitboard board, final Side side) {
+        final long start = System.nanoTime();
+        final long player = board.get(side);
+        final long opponent = board.get(side.getOpponent());
+        final int empties = board.countEmpty();
+        mode = empties <= exactEmpties ? Mode.EXACT : Mode.WIN_LOSS_DRAW;
+        nodes = cutoffs = 0;
+
+        final long legal = Bitboard.moves(player, opponent);
+        if (legal == 0) {
+            value = -solve(opponent, player, -INFINITY, INFINITY, empties, true);
+            nanos = System.nanoTime() - start;
+            statistics = new SearchStatistics(nodes, cutoffs, 0, 0, empties, nanos);
+            return new Move(Move.PASS, result(value));
+        }
+
+        int alpha = mode == Mode.EXACT ? -INFINITY : -1;
+        final int beta = mode == Mode.EXACT ? INFINITY : 1;
+        final int count = order(player, opponent, legal, empties, true);
+        int bestMove = moves[empties][0];
+        value = -INFINITY;
+        try {
+            for (int index = 0; index < count && alpha < beta; index++) {
+                final int move = moves[empties][index];
+                final long flipped = Bitboard.flips(player, opponent, move);
+                final int score = -solve(opponent & ~flipped, player | flipped | (1L << move),
+                        -beta, -alpha, empties-1, false);
+                if (score > value) {
+                    value = score;
+                    bestMove = move;
+                    if (score > alpha) { alpha = score; }
+                }
+            }
+        } catch (final Searcher.Abort abort) {
+            // The move found so far is the best there is
+        }
+        nanos = System.nanoTime() - start;
+        statistics = new SearchStatistics(nodes, cutoffs, 0, 0, empties, nanos);
+        return new Move(bestMove, result(value));
+    }
+
+    public final int getExactEmpties() { return exactEmpties; }
+
+    /**
+     * Returns the mode of the last solve.
+     */
+    public final Mode getMode() { return mode; }
+
+    /**
+     * Returns the number of positions visited by the last solve.
+     */
+    @Override
+    public final long getNodes() { return nodes; }
+
+    /**
+     * Returns a short description of the outcome of the last solve and how
+     * long it took, such as <code>win by 6 in 340 ms</code>.
+     */
+    public final String getReport() {
+        final long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        final String outcome = value > 0 ? "win" : value < 0 ? "loss" : "draw";
+        if (mode == Mode.EXACT && value != 0) {
+            return format("%s by %d in %d ms", outcome, Math.abs(value), millis);
+        }
+        return format("%s in %d ms", outcome, millis);
+    }
+
+    public final int getResultEmpties() { return resultEmpties; }
+
+    /**
+     * Returns the {@link SearchStatistics} of the last solve, whose depth is
+     * the number of squares which were empty.
+     */
+    @Override
+    public final SearchStatistics getStatistics() { return statistics; }
+
+    /**
+     * Returns the time taken by the last solve in nanoseconds.
+     */
+    public final long getSolveNanos() { return nanos; }
+
+    /* Private methods */
+    /**
+     * Fills the moves at the given number of empty squares in the order they
+     * should be searched and returns how many there are.
+     */
+    private int order(final long player, final long opponent, long legal, final int empties,
+            final boolean fastestFirst) {
+        if (moves[empties] == null) {
+            moves[empties] = new int[Bitboard.SQUARES];
+            keys[empties] = new int[Bitboard.SQUARES];
+        }
+        final int[] moves = this.moves[empties];
+        final int[] keys = this.keys[empties];
+        final long odd = oddQuadrants(~(player | opponent));
+
+        int count = 0;
+        while (legal != 0) {
+            final int move = Long.numberOfTrailingZeros(legal);
+            final long bit = legal & -legal;
+            legal &= legal - 1;
+
+            int key = (odd & bit) != 0 ? 0 : 1;
+            if (fastestFirst) {
+                // The fewer replies the opponent has the sooner the move is tried
+                final long flipped = Bitboard.flips(player, opponent, move);
+                final int replies = Long.bitCount(Bitboard.moves(opponent & ~flipped, player | flipped | bit));
+                key += 2*replies;
+            }
+
+            int position = count++;
+            while (position > 0 && keys[position-1] > key) {
+                moves[position] = moves[position-1];
+                keys[position] = keys[position-1];
+                position--;
+            }
+            moves[position] = move;
+            keys[position] = key;
+        }
+        return count;
+    }
+
+    private int solve(final long player, final long opponent, int alpha, final int beta,
+            final int empties, final boolean passed) {
+        if ((++nodes & (CHECK_INTERVAL-1)) == 0 && Thread.currentThread().isInterrupted()) {
+            throw Searcher.ABORT;
+        }
+
+        if (empties <= LAST_EMPTIES) { return solveLast(player, opponent, alpha, beta, empties); }
+
+        final long legal = Bitboard.moves(player, opponent);
+        if (legal == 0) {
+            // If neither side can move the game is over, otherwise this side passes
+            if (passed) { return difference(player, opponent); }
+            return -solve(opponent, player, -beta, -alpha, empties, true);
+        }
+
+        final int count = order(player, opponent, legal, empties, empties > FASTEST_FIRST_EMPTIES);
+        final int[] moves = this.moves[empties];
+        int best = -INFINITY;
+        for (int index = 0; index < count; index++) {
+            final int move = moves[index];
+            final long flipped = Bitboard.flips(player, opponent, move);
+            final int score = -solve(opponent & ~flipped, player | flipped | (1L << move),
+                    -beta, -alpha, empties-1, false);
+            if (score > best) {
+                best = score;
+                if (score > alpha) {
+                    alpha = score;
+                    if (score >= beta) {
+                        cutoffs++;
+                        break;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Solves a position with at most four empty squares, trying the squares
+     * of the quadrants with an odd number of them first.
+     */
+    private int solveLast(final long player, final long opponent, final int alpha, final int beta,
+            final int empties) {
+        final long empty = ~(player | opponent);
+        final long odd = oddQuadrants(empty);
+        final int[] squares = last;
+        int count = 0;
+        for (long remaining = empty & odd; remaining != 0; remaining &= remaining - 1) {
+            squares[count++] = Long.numberOfTrailingZeros(remaining);
+        }
+        for (long remaining = empty & ~odd; remaining != 0; remaining &= remaining - 1) {
+            squares[count++] = Long.numberOfTrailingZeros(remaining);
+        }
+
+        switch (empties) {
+            case 4:
+                return solve4(player, opponent, alpha, beta, squares[0], squares[1], squares[2],
+                        squares[3], false);
+            case 3:
+                return solve3(player, opponent, alpha, beta, squares[0], squares[1], squares[2], false);
+            case 2:
+                return solve2(player, opponent, alpha, beta, squares[0], squares[1], false);
+            case 1:
+                return solve1(player, opponent, squares[0]);
+            default:
+                return difference(player, opponent);
+        }
+    }
+
+    private int solve4(final long player, final long opponent, int alpha, final int beta,
+            final int a, final int b, final int c, final int d, final boolean passed) {
+        nodes++;
+        int best = -INFINITY;
+        long flipped = Bitboard.flips(player, opponent, a);
+        if (flipped != 0) {
+            best = -solve3(opponent & ~flipped, player | flipped | (1L << a), -beta, -alpha, b, c, d, false);
+            if (best >= beta) { return best; }
+            if (best > alpha) { alpha = best; }
+        }
+        flipped = Bitboard.flips(player, opponent, b);
+        if (flipped != 0) {
+            final int score = -solve3(opponent & ~flipped, player | flipped | (1L << b), -beta, -alpha, a, c, d, false);
+            if (score >= beta) { return score; }
+            if (score > best) { best = score; if (score > alpha) { alpha = score; } }
+        }
+        flipped = Bitboard.flips(player, opponent, c);
+        if (flipped != 0) {
+            final int score = -solve3(opponent & ~flipped, player | flipped | (1L << c), -beta, -alpha, a, b, d, false);
+            if (score >= beta) { return score; }
+            if (score > best) { best = score; if (score > alpha) { alpha = score; } }
+        }
+        flipped = Bitboard.flips(player, opponent, d);
+        if (flipped != 0) {
+            final int score = -solve3(opponent & ~flipped, player | flipped | (1L << d), -beta, -alpha, a, b, c, false);
+            if (score > best) { best = score; }
+        }
+
+        if (best == -INFINITY) {
+            if (passed) { return difference(player, opponent); }
+            return -solve4(opponent, player, -beta, -alpha, a, b, c, d, true);
+        }
+        return best;
+    }
+
+    private int solve3(final long player, final long opponent, int alpha, final int beta,
+            final int a, final int b, final int c, final boolean passed) {
+        nodes++;
+        int best = -INFINITY;
+        long flipped = Bitboard.flips(player, opponent, a);
+        if (flipped != 0) {
+            best = -solve2(opponent & ~flipped, player | flipped | (1L << a), -beta, -alpha, b, c, false);
+            if (best >= beta) { return best; }
+            if (best > alpha) { alpha = best; }
+        }
+        flipped = Bitboard.flips(player, opponent, b);
+        if (flipped != 0) {
+            final int score = -solve2(opponent & ~flipped, player | flipped | (1L << b), -beta, -alpha, a, c, false);
+            if (score >= beta) { return score; }
+            if (score > best) { best = score; if (score > alpha) { alpha = score; } }
+        }
+        flipped = Bitboard.flips(player, opponent, c);
+        if (flipped != 0) {
+            final int score = -solve2(opponent & ~flipped, player | flipped | (1L << c), -beta, -alpha, a, b, false);
+            if (score > best) { best = score; }
+        }
+
+        if (best == -INFINITY) {
+            if (passed) { return difference(player, opponent); }
+            return -solve3(opponent, player, -beta, -alpha, a, b, c, true);
+        }
+        return best;
+    }
+
+    private int solve2(final long player, final long opponent, final int alpha, final int beta,
+            final int a, final int b, final boolean passed) {
+        nodes++;
+        int best = -INFINITY;
+        long flipped = Bitboard.flips(player, opponent, a);
+        if (flipped != 0) {
+            best = -solve1(opponent & ~flipped, player | flipped | (1L << a), b);
+            if (best >= beta) { return best; }
+        }
+        flipped = Bitboard.flips(player, opponent, b);
+        if (flipped != 0) {
+            final int score = -solve1(opponent & ~flipped, player | flipped | (1L << b), a);
+            if (score > best) { best = score; }
+        }
+
+        if (best == -INFINITY) {
+            if (passed) { return difference(player, opponent); }
+            return -solve2(opponent, player, -beta, -alpha, a, b, true);
+        }
+        return best;
+    }
+
+    private int solve1(final long player, final long opponent, final int square) {
+        nodes++;
+        // The last square is played by whichever side can, preferably the side to move
+        long flipped = Bitboard.flips(player, opponent, square);
+        if (flipped != 0) {
+            final int gained = Long.bitCount(flipped);
+            return difference(player, opponent) + 2*gained + 1;
+        }
+        flipped = Bitboard.flips(opponent, player, square);
+        if (flipped != 0) {
+            final int lost = Long.bitCount(flipped);
+            return difference(player, opponent) - 2*lost - 1;
+        }
+        return difference(player, opponent);
+    }
+
+    /**
+     * Translates a value of the last solve into the value reported for its move.
+     */
+    private int result(final int value) {
+        if (mode == Mode.EXACT) { return value; }
+        return value > 0 ? 1 : value < 0 ? -1 : 0;
+    }
+
+    /* Private static methods */
+    private static int difference(final long player, final long opponent) {
+        return Long.bitCount(player) - Long.bitCount(opponent);
+    }
+
+    /**
+     * Returns the empty squares of the quadrants with an odd number of them.
+     */
+    private static long oddQuadrants(final long empty) {
+        long odd = 0;
+        for (final long quadrant : QUADRANTS) {
+            if ((Long.bitCount(empty & quadrant) & 1) != 0) { odd |= quadrant; }
+        }
+        return odd & empty;
+    }
+
+    /* Public enums */
+    public enum Mode { WIN_LOSS_DRAW, EXACT }
+}
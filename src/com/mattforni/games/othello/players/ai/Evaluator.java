@@ -0,0 +1,47 @@
+package com.mattforni.games.othello.players.ai;
+
+import com.mattforni.games.othello.board.Bitboard;
+import com.mattforni.games.othello.players.Player.Side;
+
+/**
+ * {@link Evaluator} defines how {@link Negamax} scores the positions at the
+ * horizon of its search. An evaluator may keep features of the position it is
+ * following, in which case it is {@link #reset(Bitboard)} to a position before
+ * the search starts and told of every move made and taken back from then on,
+ * so that those features are updated as the moves are made rather than being
+ * recomputed at every leaf. Since such features belong to a single line of
+ * play each searching thread works with its own {@link #copy()}.
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public interface Evaluator {
+    /**
+     * Returns a new evaluator with the same weights as this one, which must be
+     * reset to a position before it is used.
+     */
+    Evaluator copy();
+
+    /**
+     * Scores the given position, which must be the one this evaluator is
+     * following, from the point of view of the given {@link Side} to move.
+     */
+    int evaluate(Bitboard board, Side side);
+
+    /**
+     * Updates the features after the given {@link Side} has played on the given
+     * square, flipping the given pieces.
+     */
+    void play(Side side, int square, long flipped);
+
+    /**
+     * Computes every feature from scratch for the given position.
+     */
+    void reset(Bitboard board);
+
+    /**
+     * Takes back the features of a move previously passed to
+     * {@link #play(Side, int, long)}.
+     */
+    void undo(Side side, int square, long flipped);
+}
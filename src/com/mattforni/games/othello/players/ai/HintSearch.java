@@ -0,0 +1,170 @@
+package com.mattforni.games.othello.players.ai;
+
+import static com.mattforni.games.othello.players.ai.Searcher.INFINITY;
+
+import com.mattforni.games.othello.board.Bitboard;
+import com.mattforni.games.othello.players.Player.Side;
+
+/**
+ * {@link HintSearch} scores every move of a position for a person deciding
+ * what to play, rather than only finding the best of them. The search deepens
+ * one move at a time, like {@link Negamax}, and after each depth its
+ * {@link Listener} is given every move ranked best first, so that the hints
+ * can be shown straight away and refined as the search goes deeper.
+ *
+ * Only the best few moves are scored exactly. Each move is searched with a
+ * window whose lower bound is the score of the last of the best moves found
+ * so far at the same depth, so a move which cannot join them is cut off as
+ * soon as that is certain and is given a bound on its score instead. The moves
+ * are searched in the order of the previous depth, which finds the best moves
+ * first and keeps that bound as high as possible.
+ *
+ * The search is carried out by a single {@link Searcher} on the calling
+ * thread, with a {@link TranspositionTable} of its own, and stops as soon as
+ * that thread is interrupted, so that it can be abandoned at any time.
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public final class HintSearch {
+    // The number of moves which are scored exactly may be tuned when launching the game
+    public static final String RANKED_PROPERTY = "othello.hints.ranked";
+    public static final int DEFAULT_RANKED = 3;
+    // As may the depth after which the hints are left as they are
+    public static final String DEPTH_PROPERTY = "othello.hints.depth";
+    public static final int DEFAULT_DEPTH = 12;
+
+    // Finished games are scored beyond this, by the difference in pieces
+    public static final int WIN = Searcher.WIN;
+
+    private final int ranked;
+    private final int depth;
+    private final Searcher searcher;
+    private final int[] best;
+
+    public HintSearch() throws IllegalArgumentException {
+        this(Integer.getInteger(RANKED_PROPERTY, DEFAULT_RANKED),
+                Integer.getInteger(DEPTH_PROPERTY, DEFAULT_DEPTH));
+    }
+
+    public HintSearch(final int ranked, final int depth) throws IllegalArgumentException {
+        // If no move is to be ranked there is nothing to search for
+        if (ranked < 1) {
+            throw new IllegalArgumentException("At least one move must be ranked");
+        }
+
+        // If the depth is not positive there is nothing to search
+        if (depth < 1) {
+            throw new IllegalArgumentException("The search depth must be positive");
+        }
+
+        this.ranked = ranked;
+        this.depth = depth;
+        this.searcher = new Searcher(new TranspositionTable(), Negamax.newEvaluator().copy());
+        this.best = new int[ranked];
+    }
+
+    public final int getDepth() { return depth; }
+
+    public final int getRanked() { return ranked; }
+
+    /**
+     * Scores every move of the given {@link Side} on the given board, telling
+     * the given {@link Listener} after each depth, until the depth of this
+     * search is reached, the game is solved or the thread is interrupted.
+     */
+    public final void search(final Bitboard board, final Side side, final Listener listener) {
+        long legal = board.getMoves(side);
+        if (legal == 0) { return; }
+
+        // The search makes and takes back its moves on a single private copy
+        final Bitboard position = new Bitboard(board);
+        searcher.table.newSearch();
+        searcher.newSearch();
+        searcher.getEvaluator().reset(position);
+        searcher.setDeadline(Searcher.NO_DEADLINE, false);
+
+        final int count = Long.bitCount(legal);
+        final int[] moves = new int[count];
+        final int[] scores = new int[count];
+        final boolean[] exact = new boolean[count];
+        for (int index = 0; index < count; index++) {
+            moves[index] = Long.numberOfTrailingZeros(legal);
+            legal &= legal - 1;
+        }
+
+        try {
+            for (int iteration = 1; iteration <= depth; iteration++) {
+                searchRoot(position, side, iteration, moves, scores, exact);
+                listener.update(iteration, moves.clone(), scores.clone(), Math.min(ranked, count));
+
+                // Once the search reaches the end of the game deeper iterations are identical
+                if (iteration >= position.countEmpty()) { break; }
+            }
+        } catch (final Searcher.Abort abort) {
+            // The hints are no longer wanted
+        } finally {
+            searcher.flush(new long[Searcher.COUNTERS]);
+        }
+    }
+
+    /* Private methods */
+    /**
+     * Searches each of the given moves to the given depth and sorts them by
+     * their scores, best first, with exact scores ahead of bounds which are
+     * no better.
+     */
+    private void searchRoot(final Bitboard board, final Side side, final int depth,
+            final int[] moves, final int[] scores, final boolean[] exact) {
+        int found = 0;
+        for (int index = 0; index < moves.length; index++) {
+            // Once enough moves are ranked a move need only be searched well enough to rule it out
+            final int alpha = found < ranked ? -INFINITY : best[ranked-1];
+            final long flipped = searcher.make(board, side, moves[index]);
+            final int value = -searcher.negamax(board, side.getOpponent(), depth-1, -INFINITY, -alpha);
+            searcher.unmake(board, side, moves[index], flipped);
+            scores[index] = value;
+            exact[index] = value > alpha;
+
+            if (exact[index]) {
+                int position = Math.min(found++, ranked-1);
+                while (position > 0 && best[position-1] < value) {
+                    best[position] = best[position-1];
+                    position--;
+                }
+                best[position] = value;
+            }
+        }
+
+        for (int index = 1; index < moves.length; index++) {
+            final int move = moves[index];
+            final int score = scores[index];
+            final boolean known = exact[index];
+            int position = index;
+            while (position > 0 && (scores[position-1] < score ||
+                    (scores[position-1] == score && known && !exact[position-1]))) {
+                moves[position] = moves[position-1];
+                scores[position] = scores[position-1];
+                exact[position] = exact[position-1];
+                position--;
+            }
+            moves[position] = move;
+            scores[position] = score;
+            exact[position] = known;
+        }
+    }
+
+    /* Static classes */
+    /**
+     * {@link Listener} is told of the moves of a {@link HintSearch} each time
+     * it completes a depth, on the thread which is searching.
+     */
+    public interface Listener {
+        /**
+         * Gives the moves searched to the given depth, best first, and their
+         * scores. The first <code>ranked</code> scores are exact, while the
+         * rest are the best each of the other moves could score.
+         */
+        void update(int depth, int[] moves, int[] scores, int ranked);
+    }
+}
@@ -0,0 +1,249 @@
+package com.mattforni.games.othello.players.ai;
+
+import static com.mattforni.games.othello.players.ai.Searcher.INFINITY;
+import static com.mattforni.games.othello.players.ai.Searcher.NO_DEADLINE;
+import static com.mattforni.games.othello.players.ai.Searcher.WIN;
+
+import com.mattforni.games.othello.board.Mailbox;
+import com.mattforni.games.othello.players.Player.Side;
+import com.mattforni.games.othello.players.ai.Strategy.Move;
+
+/**
+ * {@link MailboxSearch} is the alpha-beta search of {@link Negamax} for boards
+ * which are too large for a bitboard and are searched as a {@link Mailbox}
+ * instead. It deepens iteratively until it reaches its depth or its deadline,
+ * keeping the root moves ordered by the last iteration, and tries the moves of
+ * every other position in order of the weight of their squares.
+ *
+ * Positions are scored by the weights of the squares each side holds, which
+ * favour the corners and the edges and penalise the squares which give them
+ * away, together with the difference in the number of moves of each side. The
+ * weights are worked out once for the size of the board and their sum is kept
+ * up to date as moves are made and taken back.
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+final class MailboxSearch {
+    private static final int CORNER = 100;
+    private static final int X_SQUARE = -50;
+    private static final int C_SQUARE = -20;
+    private static final int EDGE = 10;
+    private static final int INNER_EDGE = -5;
+    private static final int INTERIOR = 1;
+    private static final int MOBILITY = 5;
+    // The number of nodes searched between checks of the deadline
+    private static final int CHECK_INTERVAL = 1 << 10;
+
+    private final Mailbox board;
+    private final int[] weights;
+    private final int[] scratch;
+
+    private int[][] moves;
+    private int balance;
+    private long deadline;
+    private boolean abortable;
+    private long nodes, cutoffs;
+    private int completedDepth;
+
+    MailboxSearch(final Mailbox board) {
+        this.board = new Mailbox(board);
+        this.weights = weights(board);
+        this.scratch = new int[board.getSquares()];
+        for (int square = 0; square < weights.length; square++) {
+            if (board.getSide(square) == Side.BLACK) { balance += weights[square]; }
+            if (board.getSide(square) == Side.WHITE) { balance -= weights[square]; }
+        }
+    }
+
+    int getCompletedDepth() { return completedDepth; }
+
+    long getCutoffs() { return cutoffs; }
+
+    long getNodes() { return nodes; }
+
+    /**
+     * Searches for the best move of the given {@link Side} until the given
+     * depth is reached or the given deadline passes, in which case the best
+     * move of the deepest completed iteration is returned. The first
+     * iteration always completes unless the thread is interrupted.
+     */
+    Move search(final Side side, final int depth, final long deadline) {
+        this.deadline = deadline;
+        final int[] rootMoves = new int[board.getMoves(side, scratch)];
+        System.arraycopy(scratch, 0, rootMoves, 0, rootMoves.length);
+        if (rootMoves.length == 0) { return new Move(Move.PASS, evaluate(side, 0)); }
+        order(rootMoves, rootMoves.length);
+
+        // A pass may follow each move, so a line holds at most two plies per move
+        final int plies = 2*Math.min(depth, board.countEmpty()) + 2;
+        moves = new int[plies][];
+        final int[] rootScores = new int[rootMoves.length];
+        int value = 0;
+        for (int iteration = 1; iteration <= depth; iteration++) {
+            abortable = iteration > 1;
+            try {
+                value = searchRoot(side, iteration, rootMoves, rootScores);
+            } catch (final Searcher.Abort abort) {
+                break;
+            }
+            completedDepth = iteration;
+
+            // Once the search reaches the end of the game deeper iterations are identical
+            if (iteration >= board.countEmpty()) { break; }
+        }
+        return new Move(rootMoves[0], value);
+    }
+
+    /* Private methods */
+    private int evaluate(final Side side, final int mobility) {
+        final int positional = side == Side.BLACK ? balance : -balance;
+        return positional + MOBILITY*(mobility - board.getMoves(side.getOpponent(), scratch));
+    }
+
+    private boolean isExpired() {
+        if (Thread.currentThread().isInterrupted()) { return true; }
+        return abortable && deadline != NO_DEADLINE && System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * Makes the given move and returns how much it changed the weights held by
+     * black over those held by white, so that the change can be taken back.
+     */
+    private int make(final Side side, final int move) {
+        final int flipped = board.makeMove(side, move);
+        int change = weights[move];
+        for (int index = 0; index < flipped; index++) { change += 2*weights[board.getFlipped(index)]; }
+        if (side == Side.WHITE) { change = -change; }
+        balance += change;
+        return change;
+    }
+
+    private int negamax(final Side side, final int depth, int alpha, final int beta, final int ply) {
+        // Periodically check whether the search has run out of time or been cancelled
+        if ((++nodes & (CHECK_INTERVAL-1)) == 0 && isExpired()) { throw Searcher.ABORT; }
+
+        if (moves[ply] == null) { moves[ply] = new int[board.getSquares()]; }
+        final int[] candidates = moves[ply];
+        final int count = board.getMoves(side, candidates);
+        final Side opponent = side.getOpponent();
+
+        if (count == 0) {
+            // If neither side can move the game is over, otherwise this side passes
+            if (!board.hasMoves(opponent)) { return score(side); }
+            return -negamax(opponent, depth, -beta, -alpha, ply+1);
+        }
+
+        if (depth == 0) { return evaluate(side, count); }
+
+        order(candidates, count);
+        int best = -INFINITY;
+        for (int index = 0; index < count; index++) {
+            final int change = make(side, candidates[index]);
+            final int value = -negamax(opponent, depth-1, -beta, -alpha, ply+1);
+            board.unmakeMove();
+            balance -= change;
+            if (value > best) {
+                best = value;
+                if (value > alpha) { alpha = value; }
+                if (alpha >= beta) {
+                    cutoffs++;
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Sorts the given number of moves by the weight of their squares, best first.
+     */
+    private void order(final int[] candidates, final int count) {
+        for (int index = 1; index < count; index++) {
+            final int move = candidates[index];
+            int position = index;
+            while (position > 0 && weights[candidates[position-1]] < weights[move]) {
+                candidates[position] = candidates[position-1];
+                position--;
+            }
+            candidates[position] = move;
+        }
+    }
+
+    /**
+     * Scores a finished game from the point of view of the given {@link Side},
+     * preferring larger wins and smaller losses.
+     */
+    private int score(final Side side) {
+        final int difference = board.count(side) - board.count(side.getOpponent());
+        if (difference > 0) { return WIN + difference; }
+        if (difference < 0) { return -WIN + difference; }
+        return 0;
+    }
+
+    private int searchRoot(final Side side, final int depth, final int[] rootMoves,
+            final int[] scores) {
+        int bestIndex = 0;
+        int alpha = -INFINITY;
+        for (int index = 0; index < rootMoves.length; index++) {
+            final int change = make(side, rootMoves[index]);
+            final int value = -negamax(side.getOpponent(), depth-1, -INFINITY, -alpha, 1);
+            board.unmakeMove();
+            balance -= change;
+            scores[index] = value;
+            if (value > alpha) {
+                alpha = value;
+                bestIndex = index;
+            }
+        }
+
+        // Order the moves for the next iteration, best first and then by score
+        final int value = scores[bestIndex];
+        scores[bestIndex] = INFINITY;
+        for (int index = 1; index < rootMoves.length; index++) {
+            final int move = rootMoves[index];
+            final int score = scores[index];
+            int position = index;
+            while (position > 0 && scores[position-1] < score) {
+                rootMoves[position] = rootMoves[position-1];
+                scores[position] = scores[position-1];
+                position--;
+            }
+            rootMoves[position] = move;
+            scores[position] = score;
+        }
+        return value;
+    }
+
+    /* Private static methods */
+    /**
+     * Returns the weight of every square of the given board. Corners can never
+     * be flipped and edges only along the edge, while the squares next to a
+     * corner or an edge tend to hand them to the opponent.
+     */
+    private static int[] weights(final Mailbox board) {
+        final int size = board.getSize();
+        final int[] weights = new int[board.getSquares()];
+        for (int row = 1; row <= size; row++) {
+            for (int column = 1; column <= size; column++) {
+                // The distance of the square from the nearest edge along each axis
+                final int rowEdge = Math.min(row-1, size-row);
+                final int columnEdge = Math.min(column-1, size-column);
+                int weight = INTERIOR;
+                if (rowEdge == 0 && columnEdge == 0) {
+                    weight = CORNER;
+                } else if (rowEdge == 1 && columnEdge == 1) {
+                    weight = X_SQUARE;
+                } else if (rowEdge <= 1 && columnEdge <= 1) {
+                    weight = C_SQUARE;
+                } else if (rowEdge == 0 || columnEdge == 0) {
+                    weight = EDGE;
+                } else if (rowEdge == 1 || columnEdge == 1) {
+                    weight = INNER_EDGE;
+                }
+                weights[board.square(row, column)] = weight;
+            }
+        }
+        return weights;
+    }
+}
@@ -1,14 +1,18 @@
 package com.mattforni.games.othello.players.ai;
 
+import com.mattforni.games.othello.board.Bitboard;
+import com.mattforni.games.othello.board.Mailbox;
 import com.mattforni.games.othello.gui.Gameboard;
-import com.mattforni.games.othello.gui.square.Square;
 import com.mattforni.games.othello.players.Player.Side;
 
 /**
  * {@link Minimax} is the most basic of AI strategies in that it uses a universal
  * weight distribution to add and subtract hypothetical moves. Though it is fairly
  * primitive it offers recursive assessment based on the {@link #intel} parameter
- * and is capable of generating decent games.
+ * and is capable of generating decent games. The hypothetical moves are made
+ * and taken back on the {@link Bitboard} of the {@link Gameboard}, or on its
+ * {@link Mailbox} when it is not the standard size, rather than on copies of
+ * the {@link Gameboard}.
  *
  * @author Matthew Fornaciari <mattforni@gmail.com>
  */
@@ -24,58 +28,116 @@ public class Minimax extends Strategy {
 
     @Override
     public final Move getBestMove(final Gameboard gameboard, final Side side) {
-        return getBestMove(gameboard, side, intel);
+        if (gameboard.hasBitboard()) {
+            // Search the bitboard and translate the result back onto the board
+            return locate(gameboard, getBestMove(new Bitboard(gameboard.getBitboard()), side));
+        }
+        final Mailbox mailbox = new Mailbox(gameboard.getMailbox());
+        return locate(gameboard, mailbox, getBestMove(mailbox, side));
+    }
+
+    @Override
+    public final Move getBestMove(final Bitboard bitboard, final Side side) {
+        final int[] best = getBestMove(bitboard, side, intel);
+        return new Move(best[0] < 0 ? Move.PASS : best[0], best[1]);
+    }
+
+    @Override
+    public final Move getBestMove(final Mailbox mailbox, final Side side) {
+        final int[] best = getBestMove(mailbox, side, intel);
+        return new Move(best[0] < 0 ? Move.PASS : best[0], best[1]);
     }
 
     /* Private methods */
-    private final Move getBestMove(final Gameboard gameboard, final Side side, final int intel) {
-        // Initialize the best move to the minimum value
-        Move bestMove = new Move(null, Integer.MIN_VALUE);
-
-        for(int row = 0; row < gameboard.numRows(); row++) {
-            for(int column = 0; column < gameboard.numColumns(); column++) {
-                if(gameboard.get(row, column).isValidMove(side)){
-                    // If a move is valid a hypothetical board is created
-                    final Gameboard hypothetical = new Gameboard(gameboard);
-                    final Square square = hypothetical.get(row, column);
-                    square.flip(side);
-
-                    // The hypothetical board is then scored and evaluated
-                    int value = this.score(hypothetical, side, intel);
-                    if (value >= bestMove.getValue()) {
-                        bestMove = new Move(square, value);
-                    }
-                }
+    private final int[] getBestMove(final Bitboard bitboard, final Side side, final int intel) {
+        // Initialize the best move to the minimum value, encoded as {square, value}
+        final int[] bestMove = { -1, Integer.MIN_VALUE };
+
+        long moves = bitboard.getMoves(side);
+        while (moves != 0) {
+            final int move = Long.numberOfTrailingZeros(moves);
+            moves &= moves - 1;
+
+            // If a move is valid it is made on the board, which is then scored
+            // and evaluated before the move is taken back
+            bitboard.makeMove(side, move);
+            final int value = this.score(bitboard, side, intel);
+            bitboard.unmakeMove();
+            if (value >= bestMove[1]) {
+                bestMove[0] = move;
+                bestMove[1] = value;
+            }
+        }
+
+        return bestMove;
+    }
+
+    private final int[] getBestMove(final Mailbox mailbox, final Side side, final int intel) {
+        // Initialize the best move to the minimum value, encoded as {square, value}
+        final int[] bestMove = { -1, Integer.MIN_VALUE };
+
+        final int[] moves = new int[mailbox.getSquares()];
+        final int count = mailbox.getMoves(side, moves);
+        for (int index = 0; index < count; index++) {
+            // Each move is made on the board, which is then scored and
+            // evaluated before the move is taken back
+            mailbox.makeMove(side, moves[index]);
+            final int value = this.score(mailbox, side, intel);
+            mailbox.unmakeMove();
+            if (value >= bestMove[1]) {
+                bestMove[0] = moves[index];
+                bestMove[1] = value;
             }
         }
 
         return bestMove;
     }
 
-    private int score(final Gameboard gameboard, final Side side, final int intel) {
-        int total = score(gameboard, side);
+    private int score(final Bitboard bitboard, final Side side, final int intel) {
+        int total = score(bitboard, side);
+        if(intel > 1) {
+            total += getBestMove(bitboard, side.getOpponent(), intel-1)[1];
+        }
+        return total;
+    }
+
+    private int score(final Bitboard bitboard, final Side side) {
+        return sum(bitboard.get(side)) - sum(bitboard.get(side.getOpponent()));
+    }
+
+    private int score(final Mailbox mailbox, final Side side, final int intel) {
+        int total = score(mailbox, side);
         if(intel > 1) {
-            total += getBestMove(gameboard, side.getOpponent(), intel-1).getValue();
+            total += getBestMove(mailbox, side.getOpponent(), intel-1)[1];
         }
         return total;
     }
 
-    private int score(final Gameboard gameboard, final Side side) {
+    private int score(final Mailbox mailbox, final Side side) {
         final Side opponent = side.getOpponent();
         int total = 0;
-        for (int row = 0; row < gameboard.numRows(); row++) {
-            for (int column = 0; column < gameboard.numColumns(); column++) {
-                final Square square = gameboard.get(row, column);
-                if (square.getSide() == side) {
-                    total += weights.getWeight(row, column);
-                } else if (square.getSide() == opponent) {
-                    total -= weights.getWeight(row, column);
-                }
+        for (int square = 0; square < mailbox.getSquares(); square++) {
+            final Side piece = mailbox.getSide(square);
+            if (piece == side) {
+                total += weights.getWeight(mailbox.row(square), mailbox.column(square));
+            } else if (piece == opponent) {
+                total -= weights.getWeight(mailbox.row(square), mailbox.column(square));
             }
         }
         return total;
     }
 
+    private int sum(long pieces) {
+        int total = 0;
+        while (pieces != 0) {
+            final int square = Long.numberOfTrailingZeros(pieces);
+            // Weights are defined in gameboard coordinates, which include the border
+            total += weights.getWeight(Bitboard.row(square)+1, Bitboard.column(square)+1);
+            pieces &= pieces - 1;
+        }
+        return total;
+    }
+
     /* Private static classes */
     private static class DefaultWeights {
         public final int getWeight(final int row, final int column) { return 1; }
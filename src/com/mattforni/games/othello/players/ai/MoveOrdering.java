@@ -0,0 +1,152 @@
+package com.mattforni.games.othello.players.ai;
+
+import java.util.Arrays;
+
+import com.mattforni.games.othello.board.Bitboard;
+import com.mattforni.games.othello.players.Player.Side;
+
+/**
+ * {@link MoveOrdering} decides the order in which a {@link Searcher} tries the
+ * moves of a position after the first, which is the move the
+ * {@link TranspositionTable} remembers from the previous iteration whenever it
+ * has one. The sooner a good move is tried the sooner the rest of its siblings
+ * can be cut off, so each move is given a key made up of
+ * <ul>
+ * <li>whether it is one of the two killer moves at the same depth, the last
+ * moves to cause a cutoff in a sibling of the position</li>
+ * <li>its history, which grows by the square of the depth each time the move
+ * is the best of a position anywhere in the tree</li>
+ * <li>the static priority of its square, so that corners come first and the
+ * squares next to them last while nothing else is known</li>
+ * </ul>
+ * Once few squares are left empty the number of replies a move leaves the
+ * opponent outweighs all of them, since forcing the opponent down to a move or
+ * two both cuts off sooner and shrinks the tree which has to be searched.
+ *
+ * All of the tables are primitive arrays owned by a single searcher, so they
+ * need no synchronization and nothing is allocated while searching. The moves
+ * are sorted into a buffer of their own at each depth, so that the position
+ * being searched below a move never disturbs the order of its siblings.
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+final class MoveOrdering {
+    // The number of empty squares from which moves leaving fewer replies are tried first
+    static final String FEWEST_REPLIES_PROPERTY = "othello.ordering.replies.empties";
+    static final int DEFAULT_FEWEST_REPLIES_EMPTIES = 20;
+
+    // Each reply the opponent is left outweighs any history or priority
+    private static final int REPLY_WEIGHT = 1 << 24;
+    // A killer outweighs any history or priority, the newer of the two slightly more
+    private static final int KILLER_WEIGHT = 1 << 22;
+    // History is halved whenever it grows beyond this, and at the start of each search
+    private static final int MAX_HISTORY = 1 << 20;
+    // Squares are ranked by their weight in the default table of a weighted evaluator
+    private static final int[] PRIORITY = WeightedEvaluator.getSquareWeights();
+
+    private final int fewestRepliesEmpties;
+    private final int[] history;
+    private final int[] killers;
+    // The sorted moves and their keys at each depth
+    private final int[][] moves;
+    private final int[][] keys;
+
+    MoveOrdering() {
+        this(Integer.getInteger(FEWEST_REPLIES_PROPERTY, DEFAULT_FEWEST_REPLIES_EMPTIES));
+    }
+
+    MoveOrdering(final int fewestRepliesEmpties) {
+        this.fewestRepliesEmpties = fewestRepliesEmpties;
+        this.history = new int[2*Bitboard.SQUARES];
+        this.killers = new int[2*(Bitboard.SQUARES+1)];
+        this.moves = new int[Bitboard.SQUARES+1][];
+        this.keys = new int[Bitboard.SQUARES+1][];
+        Arrays.fill(killers, TranspositionTable.NO_MOVE);
+    }
+
+    /**
+     * Records that the given move was the best of a position searched to the
+     * given depth, and whether it was good enough to cause a cutoff.
+     */
+    void best(final Side side, final int move, final int depth, final boolean cutoff) {
+        final int index = side.ordinal()*Bitboard.SQUARES + move;
+        history[index] += depth*depth;
+        if (history[index] > MAX_HISTORY) { age(); }
+
+        if (cutoff && depth < Bitboard.SQUARES && killers[2*depth] != move) {
+            killers[2*depth+1] = killers[2*depth];
+            killers[2*depth] = move;
+        }
+    }
+
+    /**
+     * Returns the buffer which {@link #order} fills at the given depth.
+     */
+    int[] getMoves(final int depth) { return moves[Math.min(depth, Bitboard.SQUARES)]; }
+
+    /**
+     * Forgets the killers of the last search and halves the history, so that
+     * what was learned about the previous position still counts for something
+     * without outweighing what is learned about this one.
+     */
+    void newSearch() {
+        Arrays.fill(killers, TranspositionTable.NO_MOVE);
+        age();
+    }
+
+    /**
+     * Sorts the given moves of the given {@link Side} into the buffer returned
+     * by {@link #getMoves(int)} at the same depth, best first, and returns how
+     * many there are.
+     */
+    int order(final Bitboard board, final Side side, long legal, final int depth) {
+        final int slot = Math.min(depth, Bitboard.SQUARES);
+        if (moves[slot] == null) {
+            moves[slot] = new int[Bitboard.SQUARES];
+            keys[slot] = new int[Bitboard.SQUARES];
+        }
+        final int[] moves = this.moves[slot];
+        final int[] keys = this.keys[slot];
+
+        final long player = board.get(side);
+        final long opponent = board.get(side.getOpponent());
+        // Counting the replies only pays once it saves a search of more than one move
+        final boolean fewestReplies = depth > 2 && board.countEmpty() <= fewestRepliesEmpties;
+        final int offset = side.ordinal()*Bitboard.SQUARES;
+
+        int count = 0;
+        while (legal != 0) {
+            final int move = Long.numberOfTrailingZeros(legal);
+            final long bit = legal & -legal;
+            legal &= legal - 1;
+
+            int key = history[offset + move] + PRIORITY[move];
+            if (move == killers[2*slot]) {
+                key += KILLER_WEIGHT + 1;
+            } else if (move == killers[2*slot+1]) {
+                key += KILLER_WEIGHT;
+            }
+            if (fewestReplies) {
+                final long flipped = Bitboard.flips(player, opponent, move);
+                final long replies = Bitboard.moves(opponent & ~flipped, player | flipped | bit);
+                key -= REPLY_WEIGHT*Long.bitCount(replies);
+            }
+
+            int position = count++;
+            while (position > 0 && keys[position-1] < key) {
+                moves[position] = moves[position-1];
+                keys[position] = keys[position-1];
+                position--;
+            }
+            moves[position] = move;
+            keys[position] = key;
+        }
+        return count;
+    }
+
+    /* Private methods */
+    private void age() {
+        for (int index = 0; index < history.length; index++) { history[index] >>= 1; }
+    }
+}
@@ -0,0 +1,355 @@
+package com.mattforni.games.othello.players.ai;
+
+import static com.mattforni.games.othello.players.ai.Searcher.INFINITY;
+import static com.mattforni.games.othello.players.ai.TranspositionTable.EXACT;
+import static com.mattforni.games.othello.players.ai.TranspositionTable.NO_MOVE;
+
+import java.util.concurrent.TimeUnit;
+
+import com.mattforni.games.othello.board.Bitboard;
+import com.mattforni.games.othello.board.Mailbox;
+import com.mattforni.games.othello.gui.Gameboard;
+import com.mattforni.games.othello.players.Player.Side;
+
+/**
+ * {@link Negamax} is a depth limited alpha-beta search over the {@link Bitboard}
+ * of a {@link Gameboard}. Unlike {@link Minimax} each position is scored from the
+ * point of view of the side to move and the opponent's best reply is negated
+ * rather than added, so moves are ranked by the outcome both sides are actually
+ * able to force. Branches which cannot affect the result are pruned, passes are
+ * searched as a move for the opponent and finished games are scored exactly.
+ * Results are cached in a {@link TranspositionTable} which is kept between
+ * moves, and the best move it remembers for a position is always tried first,
+ * with the rest of the moves put in order by a {@link MoveOrdering}.
+ * Following those moves from the position last searched gives its principal
+ * variation, for as long as the table still holds them.
+ *
+ * The search deepens iteratively one move at a time, so each iteration is
+ * ordered by the results of the last. Subclasses may impose a deadline (see
+ * {@link TimedNegamax}), in which case the best move of the deepest completed
+ * iteration is returned. The same happens as soon as the searching thread is
+ * interrupted, which allows a search to be cancelled.
+ *
+ * Positions at the horizon are scored by an {@link Evaluator}, which unless
+ * another is given is a {@link PatternEvaluator} once pattern weights have
+ * been learned and a {@link WeightedEvaluator} until then.
+ *
+ * When given more than one thread the search is shared between them by a
+ * {@link ParallelSearch}, otherwise it is carried out by a single
+ * {@link Searcher} on the calling thread.
+ *
+ * Boards which are not the standard size are searched as a {@link Mailbox} by
+ * a {@link MailboxSearch} on the calling thread. Since their positions have
+ * many more moves, a search without a deadline is given one of its own so
+ * that a move is never kept waiting for long.
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public class Negamax extends Strategy {
+    // The size of the transposition table may be tuned per host in megabytes
+    public static final String TABLE_PROPERTY = "othello.table.megabytes";
+    // As may the number of threads which share each search
+    public static final String THREADS_PROPERTY = "othello.search.threads";
+    // And the milliseconds per move on boards of other sizes, unless there is a deadline
+    public static final String LARGE_MILLIS_PROPERTY = "othello.large.millis";
+    public static final long DEFAULT_LARGE_MILLIS = 2000;
+
+    // Finished games are scored beyond this, by the difference in pieces
+    public static final int WIN = Searcher.WIN;
+
+    protected static final long NO_DEADLINE = Searcher.NO_DEADLINE;
+
+    private final int depth;
+    private final int megabytes;
+    private final int threads;
+    private final Evaluator evaluator;
+
+    private TranspositionTable table;
+    private Searcher searcher;
+    private ParallelSearch parallel;
+    private int completedDepth;
+    private long nodes, cutoffs, firstCutoffs;
+    private SearchStatistics statistics;
+
+    public Negamax(final int depth) throws IllegalArgumentException {
+        this(depth, newEvaluator());
+    }
+
+    public Negamax(final int depth, final Evaluator evaluator) throws IllegalArgumentException {
+        this(depth, Integer.getInteger(TABLE_PROPERTY, TranspositionTable.DEFAULT_MEGABYTES),
+                Integer.getInteger(THREADS_PROPERTY, 1), evaluator);
+    }
+
+    public Negamax(final int depth, final int megabytes) throws IllegalArgumentException {
+        this(depth, megabytes, Integer.getInteger(THREADS_PROPERTY, 1));
+    }
+
+    public Negamax(final int depth, final int megabytes, final int threads)
+            throws IllegalArgumentException {
+        this(depth, megabytes, threads, newEvaluator());
+    }
+
+    public Negamax(final int depth, final int megabytes, final int threads,
+            final Evaluator evaluator) throws IllegalArgumentException {
+        // If the depth is not positive there is nothing to search
+        if (depth < 1) {
+            throw new IllegalArgumentException("The search depth must be positive");
+        }
+
+        // If there are no threads nothing can search
+        if (threads < 1) {
+            throw new IllegalArgumentException("The search needs at least one thread");
+        }
+
+        this.depth = depth;
+        this.megabytes = megabytes;
+        this.threads = threads;
+        this.evaluator = evaluator;
+    }
+
+    @Override
+    public Move getBestMove(final Gameboard gameboard, final Side side) {
+        // Boards without a bitboard are searched as a mailbox instead
+        if (!gameboard.hasBitboard()) {
+            final Mailbox mailbox = new Mailbox(gameboard.getMailbox());
+            return locate(gameboard, mailbox, getBestMove(mailbox, side));
+        }
+
+        // Search a copy so the displayed board is never disturbed
+        return locate(gameboard, getBestMove(new Bitboard(gameboard.getBitboard()), side));
+    }
+
+    @Override
+    public Move getBestMove(final Bitboard board, final Side side) {
+        final long start = System.nanoTime();
+        final long deadline = getDeadline(start);
+        completedDepth = 0;
+        getTable().newSearch();
+        if (threads > 1) {
+            getParallel().newSearch();
+        } else {
+            getSearcher().newSearch();
+        }
+        final long probes = getTable().getProbes();
+        final long hits = getTable().getHits();
+
+        getSearcher().getEvaluator().reset(board);
+        long moves = board.getMoves(side);
+        if (moves == 0) {
+            nodes = cutoffs = firstCutoffs = 0;
+            statistics = new SearchStatistics(0, 0, 0, 0, 0, 0, System.nanoTime() - start);
+            return new Move(Move.PASS, getSearcher().evaluate(board, side));
+        }
+
+        // The search makes and takes back its moves on a single private copy
+        final Bitboard position = new Bitboard(board);
+
+        // The root moves are kept ordered by the scores of the last iteration
+        final int count = Long.bitCount(moves);
+        final int[] rootMoves = new int[count];
+        final int[] rootScores = new int[count];
+        for (int index = 0; index < count; index++) {
+            rootMoves[index] = Long.numberOfTrailingZeros(moves);
+            moves &= moves - 1;
+        }
+
+        int value = 0;
+        try {
+            for (int iteration = 1; iteration <= depth; iteration++) {
+                // Unless cancelled the first iteration always completes
+                try {
+                    value = searchRoot(position, side, iteration, deadline, rootMoves, rootScores);
+                } catch (final Searcher.Abort abort) {
+                    break;
+                }
+                completedDepth = iteration;
+
+                // Once the search reaches the end of the game deeper iterations are identical
+                if (iteration >= position.countEmpty()) { break; }
+            }
+        } finally {
+            flush();
+            statistics = new SearchStatistics(nodes, cutoffs, firstCutoffs,
+                    getTable().getProbes() - probes, getTable().getHits() - hits, completedDepth,
+                    System.nanoTime() - start);
+        }
+
+        return new Move(rootMoves[0], value);
+    }
+
+    @Override
+    public Move getBestMove(final Mailbox board, final Side side) {
+        final long start = System.nanoTime();
+        long deadline = getDeadline(start);
+        if (deadline == NO_DEADLINE) {
+            deadline = start + TimeUnit.MILLISECONDS.toNanos(
+                    Long.getLong(LARGE_MILLIS_PROPERTY, DEFAULT_LARGE_MILLIS));
+        }
+
+        final MailboxSearch search = new MailboxSearch(board);
+        try {
+            return search.search(side, depth, deadline);
+        } finally {
+            completedDepth = search.getCompletedDepth();
+            nodes = search.getNodes();
+            cutoffs = search.getCutoffs();
+            firstCutoffs = 0;
+            statistics = new SearchStatistics(nodes, cutoffs, 0, 0, completedDepth,
+                    System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Returns the depth of the deepest iteration completed by the last search.
+     */
+    public final int getCompletedDepth() { return completedDepth; }
+
+    public final int getDepth() { return depth; }
+
+    public final Evaluator getEvaluator() { return evaluator; }
+
+    /**
+     * Returns the number of positions visited by the last search.
+     */
+    @Override
+    public final long getNodes() { return nodes; }
+
+    @Override
+    public final int getPrincipalVariation(final Bitboard board, final Side side, final int[] line) {
+        final Bitboard position = new Bitboard(board);
+        Side player = side;
+        int length = 0, plies = 0;
+        // Passes do not use up a ply of the search, so only the moves are counted
+        while (plies < completedDepth && length < line.length) {
+            if (!position.hasMoves(player)) {
+                if (!position.hasMoves(player.getOpponent())) { break; }
+                line[length++] = Move.PASS;
+                player = player.getOpponent();
+                continue;
+            }
+
+            final long entry = getTable().probe(position.getHash(player));
+            final int move = entry == 0 ? NO_MOVE : TranspositionTable.move(entry);
+            if (move == NO_MOVE || !position.isValidMove(player, move)) { break; }
+            line[length++] = move;
+            position.makeMove(player, move);
+            player = player.getOpponent();
+            plies++;
+        }
+        return length;
+    }
+
+    @Override
+    public final SearchStatistics getStatistics() { return statistics; }
+
+    /**
+     * Returns the {@link TranspositionTable} used by this strategy, which is
+     * only allocated once it is first needed.
+     */
+    public final TranspositionTable getTable() {
+        if (table == null) {
+            table = new TranspositionTable(megabytes, TranspositionTable.Replacement.TWO_TIER);
+        }
+        return table;
+    }
+
+    public final int getThreads() { return threads; }
+
+    /**
+     * Releases the threads of a parallel search. The strategy may still be
+     * used afterwards, in which case new threads are started.
+     */
+    public final void shutdown() {
+        if (parallel != null) {
+            parallel.shutdown();
+            parallel = null;
+        }
+    }
+
+    /* Public static methods */
+    /**
+     * Returns the {@link Evaluator} of a search which is not given one, which
+     * is a {@link PatternEvaluator} with the default weights when they exist
+     * and a {@link WeightedEvaluator} otherwise.
+     */
+    public static Evaluator newEvaluator() {
+        final Evaluator patterns = PatternEvaluator.getDefault();
+        return patterns != null ? patterns : new WeightedEvaluator();
+    }
+
+    /* Protected methods */
+    /**
+     * Returns the {@link System#nanoTime()} by which a search started at the
+     * given time must finish, or {@link #NO_DEADLINE} if it may run to its depth.
+     */
+    protected long getDeadline(final long start) { return NO_DEADLINE; }
+
+    /* Private methods */
+    private void flush() {
+        final long[] totals = new long[Searcher.COUNTERS];
+        if (threads > 1) {
+            getParallel().flush(totals);
+        } else {
+            getSearcher().flush(totals);
+        }
+        nodes = totals[Searcher.NODES];
+        cutoffs = totals[Searcher.CUTOFFS];
+        firstCutoffs = totals[Searcher.FIRST_CUTOFFS];
+    }
+
+    private Searcher getSearcher() {
+        if (searcher == null) { searcher = new Searcher(getTable(), evaluator.copy()); }
+        return searcher;
+    }
+
+    private ParallelSearch getParallel() {
+        if (parallel == null) { parallel = new ParallelSearch(threads, getTable(), evaluator); }
+        return parallel;
+    }
+
+    private int searchRoot(final Bitboard board, final Side side, final int depth,
+            final long deadline, final int[] moves, final int[] scores) {
+        final boolean abortable = depth > 1;
+        int bestIndex = 0;
+
+        if (threads > 1) {
+            final ParallelSearch parallel = getParallel();
+            parallel.setDeadline(deadline, abortable);
+            bestIndex = parallel.searchRoot(board, side, depth, moves, scores);
+        } else {
+            final Searcher searcher = getSearcher();
+            searcher.setDeadline(deadline, abortable);
+            int alpha = -INFINITY;
+            for (int index = 0; index < moves.length; index++) {
+                final long flipped = searcher.make(board, side, moves[index]);
+                final int value = -searcher.negamax(board, side.getOpponent(), depth-1, -INFINITY, -alpha);
+                searcher.unmake(board, side, moves[index], flipped);
+                scores[index] = value;
+                if (value > alpha) {
+                    alpha = value;
+                    bestIndex = index;
+                }
+            }
+        }
+
+        // Order the moves for the next iteration, best first and then by score
+        final int value = scores[bestIndex];
+        scores[bestIndex] = INFINITY;
+        for (int index = 1; index < moves.length; index++) {
+            final int move = moves[index];
+            final int score = scores[index];
+            int position = index;
+            while (position > 0 && scores[position-1] < score) {
+                moves[position] = moves[position-1];
+                scores[position] = scores[position-1];
+                position--;
+            }
+            moves[position] = move;
+            scores[position] = score;
+        }
+
+        getTable().store(board.getHash(side), depth, EXACT, value, moves[0]);
+        return value;
+    }
+}
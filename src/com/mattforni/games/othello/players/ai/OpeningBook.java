@@ -0,0 +1,210 @@
+package com.mattforni.games.othello.players.ai;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.mattforni.games.othello.board.Bitboard;
+import com.mattforni.games.othello.board.Symmetry;
+import com.mattforni.games.othello.board.Zobrist;
+import com.mattforni.games.othello.players.Player.Side;
+import com.mattforni.games.othello.players.ai.Strategy.Move;
+
+/**
+ * {@link OpeningBook} holds the best known move of positions from the opening
+ * of the game. Positions are stored from the point of view of the side to move
+ * and under whichever of the eight {@link Symmetry symmetries} of the board
+ * gives the smallest pieces, so each position is only stored once however it
+ * is turned or reflected and whichever colour is to move. Each entry is the
+ * {@link Zobrist} hash of that canonical position together with its move and
+ * score, and the entries are kept sorted by hash in a file which is mapped
+ * into memory read only, so that a lookup is a binary search over the mapped
+ * file. Books are written by a {@link Builder}.
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public class OpeningBook {
+    // The path of the book may be given when launching the game
+    public static final String BOOK_PROPERTY = "othello.book";
+
+    private static final String DEFAULT_BOOK = "book.bin";
+    private static final int MAGIC = 0x4F544842;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 12;
+    // Each entry holds the hash followed by the move and score packed into an int
+    private static final int ENTRY_BYTES = 12;
+    private static final int MOVE_BITS = 8;
+    private static final int MOVE_MASK = (1 << MOVE_BITS) - 1;
+
+    private static OpeningBook book;
+    private static boolean loaded;
+
+    private final MappedByteBuffer buffer;
+    private final int size;
+
+    public OpeningBook(final File file) throws IOException {
+        final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            channel.close();
+        }
+
+        // If the file is not a book it cannot be used
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC ||
+                buffer.getInt(4) != VERSION ||
+                buffer.capacity() != HEADER_BYTES + (long) buffer.getInt(8) * ENTRY_BYTES) {
+            throw new IOException(file + " is not an opening book");
+        }
+        size = buffer.getInt(8);
+    }
+
+    /**
+     * Returns the book move for the given {@link Side} in the given position,
+     * or null if the position is not in the book.
+     */
+    public final Move lookup(final Bitboard board, final Side side) {
+        final long player = board.get(side);
+        final long opponent = board.get(side.getOpponent());
+        final Symmetry symmetry = canonical(player, opponent);
+        final long key = key(symmetry, player, opponent);
+
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final long found = buffer.getLong(HEADER_BYTES + middle*ENTRY_BYTES);
+            if (found < key) {
+                low = middle + 1;
+            } else if (found > key) {
+                high = middle - 1;
+            } else {
+                final int data = buffer.getInt(HEADER_BYTES + middle*ENTRY_BYTES + 8);
+                final int move = symmetry.inverse().apply(data & MOVE_MASK);
+                // Guard against the rare position which shares a hash with a book position
+                if (!board.isValidMove(side, move)) { return null; }
+                return new Move(move, data >> MOVE_BITS);
+            }
+        }
+        return null;
+    }
+
+    public final int size() { return size; }
+
+    /* Public static methods */
+    /**
+     * Returns the book named by the {@link #BOOK_PROPERTY} property, which is
+     * only loaded once, or null if there is no such book.
+     */
+    public static synchronized OpeningBook getDefault() {
+        if (!loaded) {
+            loaded = true;
+            final File file = new File(System.getProperty(BOOK_PROPERTY, DEFAULT_BOOK));
+            // Without a book the computer searches from the very first move
+            if (file.isFile()) {
+                try {
+                    book = new OpeningBook(file);
+                } catch (final IOException e) {
+                    System.err.println("Unable to load the opening book: " + e.getMessage());
+                }
+            }
+        }
+        return book;
+    }
+
+    /* Private static methods */
+    /**
+     * Returns the symmetry which carries the given position onto its
+     * canonical form, the one whose pieces make the smallest numbers.
+     */
+    private static Symmetry canonical(final long player, final long opponent) {
+        Symmetry best = Symmetry.IDENTITY;
+        long bestPlayer = player;
+        long bestOpponent = opponent;
+        for (final Symmetry symmetry : Symmetry.values()) {
+            final long turned = symmetry.apply(player);
+            if (turned < bestPlayer || (turned == bestPlayer && symmetry.apply(opponent) < bestOpponent)) {
+                best = symmetry;
+                bestPlayer = turned;
+                bestOpponent = symmetry.apply(opponent);
+            }
+        }
+        return best;
+    }
+
+    private static long key(final Symmetry symmetry, final long player, final long opponent) {
+        // The side to move is hashed as black so either colour finds the same entry
+        return Zobrist.hash(symmetry.apply(player), symmetry.apply(opponent));
+    }
+
+    /* Static classes */
+    /**
+     * {@link Builder} collects the moves of positions in memory, keeping only
+     * one entry per canonical position, and writes them out as a book.
+     */
+    public static class Builder {
+        private final Map<Long, Integer> entries;
+
+        public Builder() {
+            this.entries = new TreeMap<Long, Integer>();
+        }
+
+        /**
+         * Adds the best move of the given {@link Side} in the given position,
+         * replacing any move the position already had.
+         */
+        public final void add(final Bitboard board, final Side side, final int move, final int score) {
+            final long player = board.get(side);
+            final long opponent = board.get(side.getOpponent());
+            final Symmetry symmetry = canonical(player, opponent);
+            entries.put(key(symmetry, player, opponent), (score << MOVE_BITS) | symmetry.apply(move));
+        }
+
+        public final boolean contains(final Bitboard board, final Side side) {
+            final long player = board.get(side);
+            final long opponent = board.get(side.getOpponent());
+            return entries.containsKey(key(canonical(player, opponent), player, opponent));
+        }
+
+        /**
+         * Returns the move stored for the given position, as it is on the
+         * given board, or null if the position has not been added.
+         */
+        public final Move get(final Bitboard board, final Side side) {
+            final long player = board.get(side);
+            final long opponent = board.get(side.getOpponent());
+            final Symmetry symmetry = canonical(player, opponent);
+            final Integer data = entries.get(key(symmetry, player, opponent));
+            if (data == null) { return null; }
+            return new Move(symmetry.inverse().apply(data & MOVE_MASK), data >> MOVE_BITS);
+        }
+
+        public final int size() { return entries.size(); }
+
+        public final void write(final File file) throws IOException {
+            final DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                // The tree keeps the hashes in the order the lookups search them
+                for (final Map.Entry<Long, Integer> entry : entries.entrySet()) {
+                    out.writeLong(entry.getKey());
+                    out.writeInt(entry.getValue());
+                }
+            } finally {
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.mattforni.games.othello.players.ai;
+
+import static com.mattforni.games.othello.players.ai.TranspositionTable.NO_MOVE;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import com.mattforni.games.othello.board.Bitboard;
+import com.mattforni.games.othello.players.Player.Side;
+
+/**
+ * {@link ParallelSearch} spreads the search of {@link Negamax} over a fork-join
+ * pool using the young brothers wait concept. At every node which is at least
+ * {@link #SPLIT_DEPTH} from the horizon the first move is searched on its own,
+ * and once it has established a bound the remaining moves are forked so that
+ * idle threads may steal them. The forked moves of a node share a {@link Split}
+ * through which each picks up the best bound found so far when it starts, and
+ * which tells them all to stop as soon as one of them causes a cutoff. All of
+ * the threads share the same {@link TranspositionTable}, while each forked move
+ * is scored by its own copy of the {@link Evaluator}.
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+final class ParallelSearch {
+    // Nodes closer to the horizon than this are not worth splitting
+    static final int SPLIT_DEPTH = 3;
+
+    private final ForkJoinPool pool;
+    private final TranspositionTable table;
+    private final Evaluator evaluator;
+    private final List<ParallelSearcher> searchers;
+    private final ThreadLocal<ParallelSearcher> local;
+
+    private volatile boolean stopped;
+    private long deadline;
+    private boolean abortable;
+
+    ParallelSearch(final int threads, final TranspositionTable table, final Evaluator evaluator) {
+        this.pool = new ForkJoinPool(threads);
+        this.table = table;
+        this.evaluator = evaluator;
+        this.searchers = new ArrayList<ParallelSearcher>();
+        this.local = new ThreadLocal<ParallelSearcher>() {
+            @Override
+            protected ParallelSearcher initialValue() {
+                final ParallelSearcher searcher = new ParallelSearcher();
+                synchronized (searchers) { searchers.add(searcher); }
+                return searcher;
+            }
+        };
+    }
+
+    /**
+     * Adds the counters of every thread to the table and the nodes and
+     * cutoffs since the last flush to the given totals.
+     */
+    void flush(final long[] totals) {
+        synchronized (searchers) {
+            for (final ParallelSearcher searcher : searchers) { searcher.flush(totals); }
+        }
+    }
+
+    int getThreads() { return pool.getParallelism(); }
+
+    /**
+     * Prepares the {@link MoveOrdering} of every thread for a new position.
+     */
+    void newSearch() {
+        synchronized (searchers) {
+            for (final ParallelSearcher searcher : searchers) { searcher.newSearch(); }
+        }
+    }
+
+    /**
+     * Searches each of the root moves to the given depth, recording their
+     * scores, and returns the index of the best one.
+     */
+    int searchRoot(final Bitboard board, final Side side, final int depth,
+            final int[] moves, final int[] scores) {
+        final RootTask root = new RootTask(board, side, depth, moves, scores);
+        stopped = false;
+        try {
+            pool.submit(root).get();
+        } catch (final InterruptedException e) {
+            // Stop the workers and wait for them to unwind before giving up
+            stopped = true;
+            root.join();
+            Thread.currentThread().interrupt();
+            throw Searcher.ABORT;
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) { throw (RuntimeException) e.getCause(); }
+            throw new IllegalStateException(e.getCause());
+        }
+
+        if (stopped) { throw Searcher.ABORT; }
+        return root.bestIndex;
+    }
+
+    void setDeadline(final long deadline, final boolean abortable) {
+        this.deadline = deadline;
+        this.abortable = abortable;
+    }
+
+    void shutdown() { pool.shutdownNow(); }
+
+    /* Private classes */
+    /**
+     * {@link ParallelSearcher} is the {@link Searcher} of a single worker thread.
+     * It tracks the {@link Split} it is currently working under so that it can
+     * stop as soon as that split or any split above it is cut off.
+     */
+    private final class ParallelSearcher extends Searcher {
+        private Split split;
+
+        public ParallelSearcher() {
+            super(ParallelSearch.this.table, ParallelSearch.this.evaluator.copy());
+        }
+
+        /**
+         * Searches a board which was forked from the one this searcher may
+         * still be following, with an evaluator of its own.
+         */
+        public final int search(final Split split, final Bitboard board, final Side side,
+                final int depth) {
+            final Split previous = this.split;
+            final Evaluator evaluator = ParallelSearch.this.evaluator.copy();
+            evaluator.reset(board);
+            final Evaluator following = setEvaluator(evaluator);
+            this.split = split;
+            try {
+                return -negamax(board, side, depth, -split.beta, -split.alpha);
+            } finally {
+                this.split = previous;
+                setEvaluator(following);
+            }
+        }
+
+        @Override
+        protected boolean isExpired() {
+            if (stopped) { return true; }
+            if (abortable && deadline != NO_DEADLINE && System.nanoTime() - deadline >= 0) {
+                stopped = true;
+                return true;
+            }
+            return Split.isCutoff(split);
+        }
+
+        @Override
+        protected long searchSiblings(final Bitboard board, final Side side, final long moves,
+                final int depth, final int alpha, final int beta) {
+            // Small subtrees are cheaper to search than to share
+            if (depth < SPLIT_DEPTH || Long.bitCount(moves) < 2) {
+                return super.searchSiblings(board, side, moves, depth, alpha, beta);
+            }
+
+            // The tasks are created in order before any of them can be stolen
+            // back onto this thread, which would reorder the moves at its depth
+            final Split node = new Split(split, alpha, beta);
+            final int count = ordering.order(board, side, moves, depth);
+            final int[] ordered = ordering.getMoves(depth);
+            final List<ChildTask> tasks = new ArrayList<ChildTask>(count);
+            for (int index = 0; index < count; index++) {
+                tasks.add(new ChildTask(node, child(board, side, ordered[index]), side.getOpponent(),
+                        depth-1, ordered[index], null));
+            }
+            ForkJoinTask.invokeAll(tasks);
+
+            // If the search or a split above this one was stopped the result is useless
+            if (stopped || Split.isCutoff(split)) { throw ABORT; }
+            return pack(node.best, node.bestMove);
+        }
+    }
+
+    /**
+     * {@link ChildTask} searches one of the younger brothers of a split node,
+     * starting from the best bound its siblings have found so far.
+     */
+    @SuppressWarnings("serial")
+    private final class ChildTask extends RecursiveAction {
+        private final Split split;
+        private final Bitboard board;
+        private final Side side;
+        private final int depth;
+        private final int move;
+        private final int[] scores;
+
+        public ChildTask(final Split split, final Bitboard board, final Side side,
+                final int depth, final int move, final int[] scores) {
+            this.split = split;
+            this.board = board;
+            this.side = side;
+            this.depth = depth;
+            this.move = move;
+            this.scores = scores;
+        }
+
+        @Override
+        protected final void compute() {
+            // If a sibling has already caused a cutoff there is nothing to do
+            if (split.cutoff || stopped) { return; }
+
+            try {
+                final int value = local.get().search(split, board, side, depth);
+                if (scores != null) { scores[move] = value; }
+                split.update(value, move);
+            } catch (final Searcher.Abort abort) {
+                // The split, one above it or the whole search was stopped
+            }
+        }
+    }
+
+    /**
+     * {@link RootTask} searches the root moves, the first on its own and the
+     * rest in parallel. The moves of the {@link Split} at the root are indices
+     * into the root moves rather than squares.
+     */
+    @SuppressWarnings("serial")
+    private final class RootTask extends RecursiveAction {
+        private final Bitboard board;
+        private final Side side;
+        private final int depth;
+        private final int[] moves;
+        private final int[] scores;
+
+        private int bestIndex;
+
+        public RootTask(final Bitboard board, final Side side, final int depth,
+                final int[] moves, final int[] scores) {
+            this.board = board;
+            this.side = side;
+            this.depth = depth;
+            this.moves = moves;
+            this.scores = scores;
+        }
+
+        @Override
+        protected final void compute() {
+            final ParallelSearcher searcher = local.get();
+            final Split root = new Split(null, -Searcher.INFINITY, Searcher.INFINITY);
+            final Side opponent = side.getOpponent();
+
+            try {
+                scores[0] = searcher.search(root, Searcher.child(board, side, moves[0]), opponent,
+                        depth-1);
+                root.update(scores[0], 0);
+            } catch (final Searcher.Abort abort) {
+                stopped = true;
+                return;
+            }
+
+            final List<ChildTask> tasks = new ArrayList<ChildTask>(moves.length);
+            for (int index = 1; index < moves.length; index++) {
+                tasks.add(new ChildTask(root, Searcher.child(board, side, moves[index]), opponent,
+                        depth-1, index, scores));
+            }
+            ForkJoinTask.invokeAll(tasks);
+            bestIndex = root.bestMove;
+        }
+    }
+
+    /**
+     * {@link Split} is the state shared by the forked moves of a single node.
+     */
+    private static final class Split {
+        private final Split parent;
+        private final int beta;
+
+        private volatile int alpha;
+        private volatile boolean cutoff;
+        private int best;
+        private int bestMove;
+
+        public Split(final Split parent, final int alpha, final int beta) {
+            this.parent = parent;
+            this.alpha = alpha;
+            this.beta = beta;
+            this.best = -Searcher.INFINITY;
+            this.bestMove = NO_MOVE;
+        }
+
+        public final synchronized void update(final int value, final int move) {
+            if (value > best) {
+                best = value;
+                bestMove = move;
+                if (value > alpha) { alpha = value; }
+                if (value >= beta) { cutoff = true; }
+            }
+        }
+
+        public static boolean isCutoff(Split split) {
+            while (split != null) {
+                if (split.cutoff) { return true; }
+                split = split.parent;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package com.mattforni.games.othello.players.ai;
+
+import static com.mattforni.games.othello.board.Symmetry.ANTI_TRANSPOSE;
+import static com.mattforni.games.othello.board.Symmetry.FLIP_COLUMNS;
+import static com.mattforni.games.othello.board.Symmetry.FLIP_ROWS;
+import static com.mattforni.games.othello.board.Symmetry.IDENTITY;
+import static com.mattforni.games.othello.board.Symmetry.ROTATE_HALF;
+import static com.mattforni.games.othello.board.Symmetry.ROTATE_LEFT;
+import static com.mattforni.games.othello.board.Symmetry.ROTATE_RIGHT;
+import static com.mattforni.games.othello.board.Symmetry.TRANSPOSE;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.mattforni.games.othello.board.Bitboard;
+import com.mattforni.games.othello.board.Symmetry;
+import com.mattforni.games.othello.players.Player.Side;
+
+/**
+ * {@link PatternEvaluator} scores positions the way the strongest Othello
+ * programs do, by looking up learned weights for the exact arrangement of
+ * pieces on small groups of squares. Each pattern, an edge together with its
+ * two X squares, a three by three corner, a two by five corner or one of the
+ * diagonals, is read as a base three number with a digit per square (empty,
+ * black or white) and every symmetric placement of a pattern shares its
+ * weights. Since the value of an arrangement changes as the board fills up
+ * there is a separate set of weights for each phase of the game.
+ *
+ * The weights are read from a binary file (see {@link #write(File, short[])})
+ * which is mapped into memory read only, so loading is immediate and every
+ * evaluator of the same file shares a single copy of its weights. The index of
+ * each pattern is kept up to date as pieces are placed and flipped, so scoring
+ * a position is just one lookup per pattern. Once weights have been learned
+ * (see {@link com.mattforni.games.othello.tools.WeightTuner WeightTuner}) they
+ * are picked up by every search which is not given an evaluator of its own
+ * (see {@link #getDefault()}).
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public class PatternEvaluator implements Evaluator {
+    // The path of the weights file may be given when launching the game
+    public static final String WEIGHTS_PROPERTY = "othello.pattern.weights";
+
+    public static final int PHASES = 15;
+
+    private static final String DEFAULT_WEIGHTS = "patterns.bin";
+    // The number of moves played in each phase of the game
+    private static final int PHASE_MOVES = 4;
+    private static final int MAGIC = 0x4F544850;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+
+    // The squares of the first placement of each pattern and the symmetries giving the rest
+    private static final int[][] PATTERNS = {
+        { 0, 1, 2, 3, 4, 5, 6, 7, 9, 14 },
+        { 0, 1, 2, 8, 9, 10, 16, 17, 18 },
+        { 0, 1, 2, 3, 4, 8, 9, 10, 11, 12 },
+        { 0, 9, 18, 27, 36, 45, 54, 63 },
+        { 1, 10, 19, 28, 37, 46, 55 },
+        { 2, 11, 20, 29, 38, 47 },
+        { 3, 12, 21, 30, 39 },
+        { 4, 13, 22, 31 }
+    };
+    private static final Symmetry[][] SYMMETRIES = {
+        { IDENTITY, FLIP_ROWS, TRANSPOSE, ANTI_TRANSPOSE },
+        { IDENTITY, FLIP_COLUMNS, FLIP_ROWS, ROTATE_HALF },
+        { IDENTITY, FLIP_COLUMNS, FLIP_ROWS, ROTATE_HALF,
+            TRANSPOSE, ANTI_TRANSPOSE, ROTATE_LEFT, ROTATE_RIGHT },
+        { IDENTITY, FLIP_COLUMNS },
+        { IDENTITY, TRANSPOSE, FLIP_COLUMNS, FLIP_ROWS },
+        { IDENTITY, TRANSPOSE, FLIP_COLUMNS, FLIP_ROWS },
+        { IDENTITY, TRANSPOSE, FLIP_COLUMNS, FLIP_ROWS },
+        { IDENTITY, TRANSPOSE, FLIP_COLUMNS, FLIP_ROWS }
+    };
+
+    /**
+     * The number of weights in each phase, one for every arrangement of every pattern.
+     */
+    public static final int ENTRIES;
+    /**
+     * The number of placements of all of the patterns on the board.
+     */
+    public static final int INSTANCES;
+
+    // The offset of the weights of each placement and the squares it covers
+    private static final int[] OFFSETS;
+    private static final int[][] INSTANCE_SQUARES;
+    // The placements covering each square and the power of three of its digit in each
+    private static final int[][] SQUARE_INSTANCES;
+    private static final int[][] SQUARE_POWERS;
+
+    private static final Map<File, ShortBuffer> MAPPED = new HashMap<File, ShortBuffer>();
+
+    private static ShortBuffer defaults;
+    private static boolean loaded;
+
+    static {
+        int entries = 0;
+        int instances = 0;
+        final int[] groupOffsets = new int[PATTERNS.length];
+        for (int pattern = 0; pattern < PATTERNS.length; pattern++) {
+            groupOffsets[pattern] = entries;
+            entries += power(PATTERNS[pattern].length);
+            instances += SYMMETRIES[pattern].length;
+        }
+        ENTRIES = entries;
+        INSTANCES = instances;
+
+        OFFSETS = new int[INSTANCES];
+        INSTANCE_SQUARES = new int[INSTANCES][];
+        final int[] covering = new int[Bitboard.SQUARES];
+        int instance = 0;
+        for (int pattern = 0; pattern < PATTERNS.length; pattern++) {
+            for (final Symmetry symmetry : SYMMETRIES[pattern]) {
+                final int[] squares = new int[PATTERNS[pattern].length];
+                for (int digit = 0; digit < squares.length; digit++) {
+                    squares[digit] = symmetry.apply(PATTERNS[pattern][digit]);
+                    covering[squares[digit]]++;
+                }
+                OFFSETS[instance] = groupOffsets[pattern];
+                INSTANCE_SQUARES[instance++] = squares;
+            }
+        }
+
+        SQUARE_INSTANCES = new int[Bitboard.SQUARES][];
+        SQUARE_POWERS = new int[Bitboard.SQUARES][];
+        for (int square = 0; square < Bitboard.SQUARES; square++) {
+            SQUARE_INSTANCES[square] = new int[covering[square]];
+            SQUARE_POWERS[square] = new int[covering[square]];
+            covering[square] = 0;
+        }
+        for (instance = 0; instance < INSTANCES; instance++) {
+            final int[] squares = INSTANCE_SQUARES[instance];
+            for (int digit = 0; digit < squares.length; digit++) {
+                final int square = squares[digit];
+                SQUARE_INSTANCES[square][covering[square]] = instance;
+                SQUARE_POWERS[square][covering[square]++] = power(digit);
+            }
+        }
+    }
+
+    private final ShortBuffer weights;
+    private final int[] indices;
+
+    private int empties;
+
+    /**
+     * Creates an evaluator with the weights of the file named by the
+     * {@link #WEIGHTS_PROPERTY} property.
+     */
+    public PatternEvaluator() throws IOException {
+        this(new File(System.getProperty(WEIGHTS_PROPERTY, DEFAULT_WEIGHTS)));
+    }
+
+    public PatternEvaluator(final File file) throws IOException {
+        this(map(file));
+    }
+
+    private PatternEvaluator(final ShortBuffer weights) {
+        this.weights = weights;
+        this.indices = new int[INSTANCES];
+    }
+
+    @Override
+    public Evaluator copy() { return new PatternEvaluator(weights); }
+
+    @Override
+    public int evaluate(final Bitboard board, final Side side) {
+        final int base = phase(empties) * ENTRIES;
+        int score = 0;
+        for (int instance = 0; instance < INSTANCES; instance++) {
+            score += weights.get(base + OFFSETS[instance] + indices[instance]);
+        }
+        // The weights are learned from the point of view of black
+        return side == Side.BLACK ? score : -score;
+    }
+
+    @Override
+    public void play(final Side side, final int square, final long flipped) {
+        update(square, digit(side));
+        flip(flipped, side == Side.BLACK ? -1 : 1);
+        empties--;
+    }
+
+    @Override
+    public void reset(final Bitboard board) {
+        for (int instance = 0; instance < INSTANCES; instance++) {
+            indices[instance] = index(board.get(Side.BLACK), board.get(Side.WHITE), instance);
+        }
+        empties = board.countEmpty();
+    }
+
+    @Override
+    public void undo(final Side side, final int square, final long flipped) {
+        update(square, -digit(side));
+        flip(flipped, side == Side.BLACK ? 1 : -1);
+        empties++;
+    }
+
+    /* Private methods */
+    /**
+     * Moves the digits of the given pieces between black and white, where
+     * a change of minus one turns white pieces black and one the reverse.
+     */
+    private void flip(long pieces, final int change) {
+        while (pieces != 0) {
+            update(Long.numberOfTrailingZeros(pieces), change);
+            pieces &= pieces - 1;
+        }
+    }
+
+    private void update(final int square, final int change) {
+        final int[] instances = SQUARE_INSTANCES[square];
+        final int[] powers = SQUARE_POWERS[square];
+        for (int index = 0; index < instances.length; index++) {
+            indices[instances[index]] += change * powers[index];
+        }
+    }
+
+    /* Public static methods */
+    /**
+     * Returns the index of the weight of every pattern placement in the given
+     * position, relative to the start of its phase, filling the given array.
+     */
+    public static void features(final long black, final long white, final int[] features) {
+        for (int instance = 0; instance < INSTANCES; instance++) {
+            features[instance] = OFFSETS[instance] + index(black, white, instance);
+        }
+    }
+
+    /**
+     * Returns an evaluator with the weights of the file named by the
+     * {@link #WEIGHTS_PROPERTY} property, which is only loaded once, or null
+     * if there is no such file.
+     */
+    public static synchronized PatternEvaluator getDefault() {
+        if (!loaded) {
+            loaded = true;
+            final File file = new File(System.getProperty(WEIGHTS_PROPERTY, DEFAULT_WEIGHTS));
+            // Without the file the searches score positions with the square weights instead
+            if (file.isFile()) {
+                try {
+                    defaults = map(file);
+                } catch (final IOException e) {
+                    System.err.println("Unable to load the pattern weights: " + e.getMessage());
+                }
+            }
+        }
+        return defaults == null ? null : new PatternEvaluator(defaults);
+    }
+
+    /**
+     * Returns the phase of the game with the given number of empty squares.
+     */
+    public static int phase(final int empties) {
+        return Math.min(PHASES-1, (Bitboard.SQUARES - 4 - empties) / PHASE_MOVES);
+    }
+
+    /**
+     * Derives weights from a table of how valuable each square is to hold,
+     * which give the same score as the table itself did. This gives a
+     * reasonable set of weights to start learning from.
+     */
+    public static short[] seed(final int[] squareWeights) throws IllegalArgumentException {
+        // If there is not a weight for every square an exception is thrown
+        if (squareWeights.length != Bitboard.SQUARES) {
+            throw new IllegalArgumentException("There must be a weight for every square");
+        }
+
+        final short[] weights = new short[PHASES*ENTRIES];
+        for (int instance = 0; instance < INSTANCES; instance++) {
+            // Symmetric placements share their weights so only the first need be seeded
+            if (instance > 0 && OFFSETS[instance] == OFFSETS[instance-1]) { continue; }
+
+            final int[] squares = INSTANCE_SQUARES[instance];
+            for (int index = 0; index < power(squares.length); index++) {
+                // Each square's value is split between the placements covering it
+                double value = 0;
+                for (int digit = 0, rest = index; digit < squares.length; digit++, rest /= 3) {
+                    final int square = squares[digit];
+                    final double share = (double) squareWeights[square] / SQUARE_INSTANCES[square].length;
+                    if (rest % 3 == 1) { value += share; }
+                    if (rest % 3 == 2) { value -= share; }
+                }
+                for (int phase = 0; phase < PHASES; phase++) {
+                    weights[phase*ENTRIES + OFFSETS[instance] + index] = (short) Math.round(value);
+                }
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Returns a copy of the weights of the given file, in the order they are
+     * given to {@link #write(File, short[])}.
+     */
+    public static short[] read(final File file) throws IOException {
+        final ShortBuffer weights = map(file).duplicate();
+        final short[] copy = new short[PHASES*ENTRIES];
+        weights.position(0);
+        weights.get(copy);
+        return copy;
+    }
+
+    /**
+     * Writes the given weights, {@link #ENTRIES} for each of the {@link #PHASES}
+     * phases of the game, to a file which this evaluator can load.
+     */
+    public static void write(final File file, final short[] weights)
+            throws IllegalArgumentException, IOException {
+        // If the weights do not cover every phase an exception is thrown
+        if (weights.length != PHASES*ENTRIES) {
+            throw new IllegalArgumentException("There must be a weight for every pattern and phase");
+        }
+
+        final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(PHASES);
+            out.writeInt(ENTRIES);
+            for (final short weight : weights) { out.writeShort(weight); }
+        } finally {
+            out.close();
+        }
+    }
+
+    /* Private static methods */
+    private static int digit(final Side side) { return side == Side.BLACK ? 1 : 2; }
+
+    private static int index(final long black, final long white, final int instance) {
+        final int[] squares = INSTANCE_SQUARES[instance];
+        int index = 0;
+        for (int digit = squares.length-1; digit >= 0; digit--) {
+            final long bit = 1L << squares[digit];
+            index = 3*index + ((black & bit) != 0 ? 1 : (white & bit) != 0 ? 2 : 0);
+        }
+        return index;
+    }
+
+    /**
+     * Maps the weights of the given file into memory, or returns those already
+     * mapped if the file has been loaded before.
+     */
+    private static ShortBuffer map(final File file) throws IOException {
+        final File canonical = file.getCanonicalFile();
+        synchronized (MAPPED) {
+            final ShortBuffer mapped = MAPPED.get(canonical);
+            if (mapped != null) { return mapped; }
+        }
+
+        final FileChannel channel = FileChannel.open(canonical.toPath(), StandardOpenOption.READ);
+        final MappedByteBuffer buffer;
+        try {
+            buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            channel.close();
+        }
+
+        // If the file was not written for these patterns it cannot be used
+        if (buffer.capacity() != HEADER_BYTES + 2L*PHASES*ENTRIES ||
+                buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION ||
+                buffer.getInt(8) != PHASES || buffer.getInt(12) != ENTRIES) {
+            throw new IOException(file + " does not hold pattern weights");
+        }
+
+        ((ByteBuffer) buffer).position(HEADER_BYTES);
+        final ShortBuffer weights = buffer.slice().asShortBuffer();
+        synchronized (MAPPED) {
+            final ShortBuffer mapped = MAPPED.get(canonical);
+            if (mapped != null) { return mapped; }
+            MAPPED.put(canonical, weights);
+        }
+        return weights;
+    }
+
+    private static int power(final int exponent) {
+        int power = 1;
+        for (int index = 0; index < exponent; index++) { power *= 3; }
+        return power;
+    }
+}
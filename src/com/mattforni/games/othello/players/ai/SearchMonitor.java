@@ -0,0 +1,195 @@
+package com.mattforni.games.othello.players.ai;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * {@link SearchMonitor} collects the {@link SearchStatistics} of the moves of
+ * a computer player and publishes them as an MXBean on the platform server,
+ * where tools such as jconsole can watch them while the game is played. Each
+ * statistic is kept in a {@link RollingHistogram} of the last {@link #WINDOW}
+ * moves and is read as a {@link Summary} of its mean and percentiles.
+ *
+ * Monitors are shared by name, so every player which records under the same
+ * name feeds the same bean, named
+ * <code>com.mattforni.games.othello:type=Search,name=&lt;name&gt;</code>.
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public class SearchMonitor implements SearchMonitorMXBean {
+    public static final String DOMAIN = "com.mattforni.games.othello";
+    public static final int WINDOW = 256;
+
+    private static final Map<String, SearchMonitor> MONITORS = new HashMap<String, SearchMonitor>();
+
+    private final RollingHistogram nodes, nodesPerSecond, depth, cutoffs, firstCutoffRate, hitRate,
+            branching, millis;
+
+    private long moves;
+    private SearchStatistics last;
+
+    private SearchMonitor() {
+        this.nodes = new RollingHistogram(WINDOW);
+        this.nodesPerSecond = new RollingHistogram(WINDOW);
+        this.depth = new RollingHistogram(WINDOW);
+        this.cutoffs = new RollingHistogram(WINDOW);
+        this.firstCutoffRate = new RollingHistogram(WINDOW);
+        this.hitRate = new RollingHistogram(WINDOW);
+        this.branching = new RollingHistogram(WINDOW);
+        this.millis = new RollingHistogram(WINDOW);
+    }
+
+    @Override
+    public final synchronized Summary getBranchingFactor() { return branching.summarize(); }
+
+    @Override
+    public final synchronized Summary getCutoffs() { return cutoffs.summarize(); }
+
+    @Override
+    public final synchronized Summary getDepth() { return depth.summarize(); }
+
+    @Override
+    public final synchronized Summary getFirstCutoffRate() { return firstCutoffRate.summarize(); }
+
+    @Override
+    public final synchronized Summary getHitRate() { return hitRate.summarize(); }
+
+    @Override
+    public final synchronized String getLastSearch() { return last == null ? null : last.toString(); }
+
+    @Override
+    public final synchronized Summary getMillis() { return millis.summarize(); }
+
+    @Override
+    public final synchronized long getMoves() { return moves; }
+
+    @Override
+    public final synchronized Summary getNodes() { return nodes.summarize(); }
+
+    @Override
+    public final synchronized Summary getNodesPerSecond() { return nodesPerSecond.summarize(); }
+
+    public final synchronized void record(final SearchStatistics statistics) {
+        moves++;
+        last = statistics;
+        nodes.add(statistics.getNodes());
+        nodesPerSecond.add(statistics.getNodesPerSecond());
+        depth.add(statistics.getDepth());
+        cutoffs.add(statistics.getCutoffs());
+        firstCutoffRate.add(statistics.getFirstCutoffRate());
+        hitRate.add(statistics.getHitRate());
+        branching.add(statistics.getBranchingFactor());
+        millis.add(statistics.getMillis());
+    }
+
+    @Override
+    public final synchronized void reset() {
+        moves = 0;
+        last = null;
+        nodes.clear();
+        nodesPerSecond.clear();
+        depth.clear();
+        cutoffs.clear();
+        firstCutoffRate.clear();
+        hitRate.clear();
+        branching.clear();
+        millis.clear();
+    }
+
+    /* Public static methods */
+    /**
+     * Returns the monitor of the given name, registering it with the platform
+     * server the first time it is asked for.
+     */
+    public static synchronized SearchMonitor get(final String name) {
+        SearchMonitor monitor = MONITORS.get(name);
+        if (monitor == null) {
+            monitor = new SearchMonitor();
+            MONITORS.put(name, monitor);
+            // If the bean cannot be registered the statistics are still kept but not published
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(monitor,
+                        new ObjectName(DOMAIN + ":type=Search,name=" + ObjectName.quote(name)));
+            } catch (final JMException e) {
+                System.err.println("Unable to publish the search statistics: " + e.getMessage());
+            }
+        }
+        return monitor;
+    }
+
+    /* Static classes */
+    /**
+     * {@link RollingHistogram} keeps the last values it was given in a ring
+     * and only sorts them when it is summarized, which is rare compared with
+     * the values being added.
+     */
+    private static final class RollingHistogram {
+        private final double[] values;
+        private int next;
+        private int count;
+
+        private RollingHistogram(final int window) {
+            this.values = new double[window];
+        }
+
+        private void add(final double value) {
+            values[next] = value;
+            next = (next + 1) % values.length;
+            if (count < values.length) { count++; }
+        }
+
+        private void clear() { next = count = 0; }
+
+        private Summary summarize() {
+            final double[] sorted = Arrays.copyOf(values, count);
+            Arrays.sort(sorted);
+            double sum = 0;
+            for (final double value : sorted) { sum += value; }
+            return new Summary(count, count == 0 ? 0 : sum / count, percentile(sorted, 0.5),
+                    percentile(sorted, 0.9), percentile(sorted, 0.99),
+                    count == 0 ? 0 : sorted[count - 1]);
+        }
+
+        private static double percentile(final double[] sorted, final double fraction) {
+            if (sorted.length == 0) { return 0; }
+            return sorted[(int) Math.min(sorted.length - 1, Math.floor(fraction * sorted.length))];
+        }
+    }
+
+    /**
+     * {@link Summary} describes the recent values of one statistic, and is
+     * shown over JMX as a composite of its properties.
+     */
+    public static final class Summary {
+        private final int count;
+        private final double mean, median, percentile90, percentile99, max;
+
+        private Summary(final int count, final double mean, final double median,
+                final double percentile90, final double percentile99, final double max) {
+            this.count = count;
+            this.mean = mean;
+            this.median = median;
+            this.percentile90 = percentile90;
+            this.percentile99 = percentile99;
+            this.max = max;
+        }
+
+        public final int getCount() { return count; }
+
+        public final double getMax() { return max; }
+
+        public final double getMean() { return mean; }
+
+        public final double getMedian() { return median; }
+
+        public final double getPercentile90() { return percentile90; }
+
+        public final double getPercentile99() { return percentile99; }
+    }
+}
@@ -0,0 +1,45 @@
+package com.mattforni.games.othello.players.ai;
+
+/**
+ * {@link SearchMonitorMXBean} is the management interface through which a
+ * {@link SearchMonitor} publishes the searches of a computer player over JMX.
+ * Each summary covers the most recent moves only, so that it follows the
+ * player as the game goes on.
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public interface SearchMonitorMXBean {
+    SearchMonitor.Summary getBranchingFactor();
+
+    SearchMonitor.Summary getCutoffs();
+
+    SearchMonitor.Summary getDepth();
+
+    /**
+     * Returns the fraction of the cutoffs of each move which were caused by
+     * the first move searched.
+     */
+    SearchMonitor.Summary getFirstCutoffRate();
+
+    SearchMonitor.Summary getHitRate();
+
+    /**
+     * Returns a description of the search for the last move, or null if no
+     * move has been searched.
+     */
+    String getLastSearch();
+
+    SearchMonitor.Summary getMillis();
+
+    /**
+     * Returns the number of moves searched since the monitor was last reset.
+     */
+    long getMoves();
+
+    SearchMonitor.Summary getNodes();
+
+    SearchMonitor.Summary getNodesPerSecond();
+
+    void reset();
+}
@@ -0,0 +1,93 @@
+package com.mattforni.games.othello.players.ai;
+
+import static java.lang.String.format;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SearchStatistics} describes the search behind a single move: how many
+ * positions were visited and how quickly, how deep the search got, how often a
+ * move was good enough to cut off the rest of its siblings and how often the
+ * {@link TranspositionTable} already knew a position. The effective branching
+ * factor is the number of moves per position which would give as many nodes at
+ * the same depth, so a well ordered search keeps it low. Searches which know
+ * how many of their cutoffs came from the first move they tried also report
+ * that, since the closer it is to all of them the better the moves are ordered.
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public final class SearchStatistics {
+    private final long nodes;
+    private final long cutoffs;
+    private final long firstCutoffs;
+    private final long probes;
+    private final long hits;
+    private final int depth;
+    private final long nanos;
+
+    public SearchStatistics(final long nodes, final long cutoffs, final long probes,
+            final long hits, final int depth, final long nanos) {
+        this(nodes, cutoffs, 0, probes, hits, depth, nanos);
+    }
+
+    public SearchStatistics(final long nodes, final long cutoffs, final long firstCutoffs,
+            final long probes, final long hits, final int depth, final long nanos) {
+        this.nodes = nodes;
+        this.cutoffs = cutoffs;
+        this.firstCutoffs = firstCutoffs;
+        this.probes = probes;
+        this.hits = hits;
+        this.depth = depth;
+        this.nanos = nanos;
+    }
+
+    /**
+     * Returns the number of moves per position which would visit as many
+     * positions at the depth reached, or zero if nothing was searched.
+     */
+    public final double getBranchingFactor() {
+        if (depth == 0 || nodes == 0) { return 0; }
+        return Math.pow(nodes, 1.0 / depth);
+    }
+
+    public final long getCutoffs() { return cutoffs; }
+
+    public final int getDepth() { return depth; }
+
+    /**
+     * Returns the number of cutoffs caused by the first move searched.
+     */
+    public final long getFirstCutoffs() { return firstCutoffs; }
+
+    /**
+     * Returns the fraction of the cutoffs which were caused by the first move
+     * searched, or zero if there were none or they were not told apart.
+     */
+    public final double getFirstCutoffRate() {
+        return cutoffs == 0 ? 0 : (double) firstCutoffs / cutoffs;
+    }
+
+    public final double getHitRate() { return probes == 0 ? 0 : (double) hits / probes; }
+
+    public final long getHits() { return hits; }
+
+    public final double getMillis() { return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1); }
+
+    public final long getNanos() { return nanos; }
+
+    public final long getNodes() { return nodes; }
+
+    public final double getNodesPerSecond() {
+        return nanos == 0 ? 0 : nodes * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    public final long getProbes() { return probes; }
+
+    @Override
+    public final String toString() {
+        return format("depth %d, %d nodes at %.0f/s, %d cutoffs (%.0f%% first), %.0f%% hits, "
+                + "bf %.2f, %.0f ms", depth, nodes, getNodesPerSecond(), cutoffs,
+                100 * getFirstCutoffRate(), 100 * getHitRate(), getBranchingFactor(), getMillis());
+    }
+}
@@ -0,0 +1,266 @@
+package com.mattforni.games.othello.players.ai;
+
+import static com.mattforni.games.othello.players.ai.TranspositionTable.EXACT;
+import static com.mattforni.games.othello.players.ai.TranspositionTable.LOWER;
+import static com.mattforni.games.othello.players.ai.TranspositionTable.NO_MOVE;
+import static com.mattforni.games.othello.players.ai.TranspositionTable.UPPER;
+
+import com.mattforni.games.othello.board.Bitboard;
+import com.mattforni.games.othello.players.Player.Side;
+
+/**
+ * {@link Searcher} carries out the alpha-beta search of {@link Negamax} on a
+ * single thread. It keeps its own counters, which are only added to those of
+ * the shared {@link TranspositionTable} once the search is over, so that any
+ * number of searchers may work on the same table at once. Moves are made and
+ * taken back on the board being searched, so no positions are copied or
+ * allocated while searching, though a search which is aborted leaves the board
+ * part way through a line. The moves after the
+ * first at each node are put in order by the {@link MoveOrdering} of the
+ * searcher and searched by {@link #searchSiblings}, which parallel searches
+ * override in order to split the work between threads. Every move
+ * made and taken back is passed on to the {@link Evaluator} of the searcher so
+ * that it can follow the position incrementally.
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+class Searcher {
+    // Finished games are scored beyond any heuristic value
+    static final int WIN = 1 << 20;
+    static final int INFINITY = WIN << 1;
+    static final long NO_DEADLINE = 0;
+    static final Abort ABORT = new Abort();
+    // The positions of the counters added up by flush(long[])
+    static final int NODES = 0;
+    static final int CUTOFFS = 1;
+    static final int FIRST_CUTOFFS = 2;
+    static final int COUNTERS = 3;
+
+    // The number of nodes searched between checks of the deadline
+    private static final int CHECK_INTERVAL = 1 << 10;
+
+    protected final TranspositionTable table;
+    protected final MoveOrdering ordering;
+
+    private Evaluator evaluator;
+    private long deadline;
+    private boolean abortable;
+    private long nodes, cutoffs, firstCutoffs, probes, hits, stores, overwrites;
+
+    Searcher(final TranspositionTable table, final Evaluator evaluator) {
+        this.table = table;
+        this.evaluator = evaluator;
+        this.ordering = new MoveOrdering();
+    }
+
+    /**
+     * Scores a position which has not finished from the point of view of the
+     * given {@link Side} using the {@link Evaluator} of this searcher.
+     */
+    final int evaluate(final Bitboard board, final Side side) {
+        return evaluator.evaluate(board, side);
+    }
+
+    /**
+     * Adds the counters of this searcher to the table and the nodes and
+     * cutoffs since the last flush to the given totals, and resets them.
+     */
+    final void flush(final long[] totals) {
+        totals[NODES] += nodes;
+        totals[CUTOFFS] += cutoffs;
+        totals[FIRST_CUTOFFS] += firstCutoffs;
+        table.record(probes, hits, stores, overwrites);
+        nodes = cutoffs = firstCutoffs = probes = hits = stores = overwrites = 0;
+    }
+
+    final Evaluator getEvaluator() { return evaluator; }
+
+    /**
+     * Makes the given move on the board and tells the {@link Evaluator} of it.
+     *
+     * @return the mask of the pieces which were flipped
+     */
+    final long make(final Bitboard board, final Side side, final int move) {
+        final long flipped = board.makeMove(side, move);
+        evaluator.play(side, move, flipped);
+        return flipped;
+    }
+
+    /**
+     * Searches the given position to the given depth and returns its score
+     * from the point of view of the given {@link Side}, throwing {@link #ABORT}
+     * if the search expires before it is done.
+     */
+    final int negamax(final Bitboard board, final Side side, final int depth,
+            int alpha, final int beta) {
+        // Periodically check whether the search has run out of time or been cancelled
+        if ((++nodes & (CHECK_INTERVAL-1)) == 0 && isExpired()) { throw ABORT; }
+
+        final Side opponent = side.getOpponent();
+        long moves = board.getMoves(side);
+
+        if (moves == 0) {
+            // If neither side can move the game is over, otherwise this side passes
+            if (!board.hasMoves(opponent)) { return score(board, side); }
+            return -negamax(board, opponent, depth, -beta, -alpha);
+        }
+
+        if (depth == 0) { return evaluate(board, side); }
+
+        // Consult the table for a previous result or at least a good first move
+        final long key = board.getHash(side);
+        final long entry = table.probe(key);
+        probes++;
+        int firstMove = NO_MOVE;
+        if (entry != 0) {
+            hits++;
+            final int hashMove = TranspositionTable.move(entry);
+            if (hashMove != NO_MOVE && (moves & (1L << hashMove)) != 0) { firstMove = hashMove; }
+            if (TranspositionTable.depth(entry) >= depth) {
+                final int score = TranspositionTable.score(entry);
+                final int bound = TranspositionTable.bound(entry);
+                if (bound == EXACT ||
+                        (bound == LOWER && score >= beta) ||
+                        (bound == UPPER && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+
+        // Without a move from the table the eldest brother is the first in order
+        if (firstMove == NO_MOVE) {
+            ordering.order(board, side, moves, depth);
+            firstMove = ordering.getMoves(depth)[0];
+        }
+
+        // The eldest brother is always searched on its own
+        final int original = alpha;
+        moves &= ~(1L << firstMove);
+        final long flipped = make(board, side, firstMove);
+        int best = -negamax(board, opponent, depth-1, -beta, -alpha);
+        unmake(board, side, firstMove, flipped);
+        int bestMove = firstMove;
+
+        // If the opponent would never allow this line there is no need to continue
+        if (best >= beta) {
+            firstCutoffs++;
+        } else if (moves != 0) {
+            final long siblings = searchSiblings(board, side, moves, depth, Math.max(alpha, best), beta);
+            if (value(siblings) > best) {
+                best = value(siblings);
+                bestMove = move(siblings);
+            }
+        }
+
+        final int bound = best <= original ? UPPER : best >= beta ? LOWER : EXACT;
+        if (bound == LOWER) { cutoffs++; }
+        if (bound != UPPER) { ordering.best(side, bestMove, depth, bound == LOWER); }
+        stores++;
+        if (table.store(key, depth, bound, best, bestMove)) { overwrites++; }
+        return best;
+    }
+
+    /**
+     * Prepares the {@link MoveOrdering} of this searcher for a new position.
+     */
+    final void newSearch() { ordering.newSearch(); }
+
+    final void setDeadline(final long deadline, final boolean abortable) {
+        this.deadline = deadline;
+        this.abortable = abortable;
+    }
+
+    /**
+     * Replaces the {@link Evaluator} of this searcher, returning the previous one.
+     */
+    final Evaluator setEvaluator(final Evaluator evaluator) {
+        final Evaluator previous = this.evaluator;
+        this.evaluator = evaluator;
+        return previous;
+    }
+
+    /**
+     * Takes back the last move made with {@link #make(Bitboard, Side, int)}.
+     */
+    final void unmake(final Bitboard board, final Side side, final int move, final long flipped) {
+        board.unmakeMove();
+        evaluator.undo(side, move, flipped);
+    }
+
+    /* Protected methods */
+    /**
+     * Returns whether the search has passed its deadline or the searching
+     * thread has been interrupted.
+     */
+    protected boolean isExpired() {
+        if (Thread.currentThread().isInterrupted()) { return true; }
+        return abortable && deadline != NO_DEADLINE && System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * Searches the remaining moves of a node once its first move has been
+     * searched, in the order given by the {@link MoveOrdering} of this
+     * searcher, returning the best of them packed with {@link #pack(int, int)}.
+     */
+    protected long searchSiblings(final Bitboard board, final Side side, final long moves,
+            final int depth, int alpha, final int beta) {
+        final int count = ordering.order(board, side, moves, depth);
+        final int[] ordered = ordering.getMoves(depth);
+        int best = -INFINITY;
+        int bestMove = NO_MOVE;
+        for (int index = 0; alpha < beta && index < count; index++) {
+            final int move = ordered[index];
+
+            final long flipped = make(board, side, move);
+            final int value = -negamax(board, side.getOpponent(), depth-1, -beta, -alpha);
+            unmake(board, side, move, flipped);
+            if (value > best) {
+                best = value;
+                bestMove = move;
+                if (value > alpha) { alpha = value; }
+            }
+        }
+        return pack(best, bestMove);
+    }
+
+    /* Static methods */
+    /**
+     * Returns a copy of the board after the given move, for searches which
+     * must not share the board they were given.
+     */
+    static Bitboard child(final Bitboard board, final Side side, final int move) {
+        final Bitboard child = new Bitboard(board);
+        child.makeMove(side, move);
+        return child;
+    }
+
+    static int move(final long packed) { return (int) packed; }
+
+    static long pack(final int value, final int move) {
+        return ((long) value << 32) | (move & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Scores a finished game from the point of view of the given {@link Side},
+     * preferring larger wins and smaller losses.
+     */
+    static int score(final Bitboard board, final Side side) {
+        final int difference = board.count(side) - board.count(side.getOpponent());
+        if (difference > 0) { return WIN + difference; }
+        if (difference < 0) { return -WIN + difference; }
+        return 0;
+    }
+
+    static int value(final long packed) { return (int) (packed >> 32); }
+
+    /* Static classes */
+    /**
+     * {@link Abort} unwinds a search which has expired. A single instance
+     * without a stack trace is shared since it carries no state.
+     */
+    @SuppressWarnings("serial")
+    static final class Abort extends RuntimeException {
+        private Abort() { super(null, null, false, false); }
+    }
+}
@@ -4,11 +4,17 @@ package com.mattforni.games.othello.players.ai;
  * {@link Strategy} defines the contract to which all AI algorithms must conform.
  * As an abstract class it also defines the static class {@link Move} which
  * essentially pairs a {@link Square} with a value for determining which move
- * will be the best according to the active AI algorithm.
+ * will be the best according to the active AI algorithm. Strategies may be
+ * asked for a move on a {@link Gameboard} or on a headless {@link Bitboard},
+ * in which case the {@link Move} refers to a position on the {@link Bitboard}
+ * rather than to a {@link Square}. Boards of other sizes may be searched as a
+ * {@link Mailbox}, whose positions are squares of the {@link Mailbox}.
  *
  * @author Matthew Fornaciari <mattforni@gmail.com>
  */
 
+import com.mattforni.games.othello.board.Bitboard;
+import com.mattforni.games.othello.board.Mailbox;
 import com.mattforni.games.othello.gui.Gameboard;
 import com.mattforni.games.othello.gui.square.Square;
 import com.mattforni.games.othello.players.Player.Side;
@@ -16,23 +22,124 @@ import com.mattforni.games.othello.players.Player.Side;
 public abstract class Strategy {
     public abstract Move getBestMove(Gameboard gameboard, Side side);
 
+    /**
+     * Finds the best move for the given {@link Side} on a headless board. The
+     * board is left as it was found, and a pass is returned if there is no move.
+     */
+    public abstract Move getBestMove(Bitboard board, Side side);
+
+    /**
+     * Finds the best move for the given {@link Side} on a headless board of
+     * any size. The board is left as it was found, and a pass is returned if
+     * there is no move. By default the move which flips the most pieces is
+     * chosen, so strategies which search should override it.
+     */
+    public Move getBestMove(final Mailbox board, final Side side) {
+        final int[] moves = new int[board.getSquares()];
+        final int count = board.getMoves(side, moves);
+        int best = Move.PASS;
+        int flipped = -1;
+        for (int index = 0; index < count; index++) {
+            final int flips = board.makeMove(side, moves[index]);
+            board.unmakeMove();
+            if (flips > flipped) {
+                best = moves[index];
+                flipped = flips;
+            }
+        }
+        return new Move(best, flipped);
+    }
+
+    /**
+     * Returns the number of positions visited while choosing the last move,
+     * or zero if the strategy does not count them.
+     */
+    public long getNodes() { return 0; }
+
+    /**
+     * Returns the {@link SearchStatistics} of the search for the last move, or
+     * null if the strategy does not keep them.
+     */
+    public SearchStatistics getStatistics() { return null; }
+
+    /**
+     * Fills the given array with the principal variation of the last search,
+     * the moves both sides are expected to play from the given position,
+     * which must be the one last searched. A pass is written as
+     * {@link Move#PASS}. Returns how many moves were written, which is zero
+     * if the strategy does not know its principal variation.
+     */
+    public int getPrincipalVariation(final Bitboard board, final Side side, final int[] line) {
+        return 0;
+    }
+
+    /* Protected static methods */
+    /**
+     * Translates a {@link Move} found on the {@link Bitboard} of the given
+     * {@link Gameboard} into a {@link Move} of the corresponding {@link Square}.
+     */
+    protected static Move locate(final Gameboard gameboard, final Move move) {
+        if (move.isPass()) { return new Move(null, move.getValue()); }
+        return new Move(gameboard.get(move.getRow(), move.getColumn()), move.getValue());
+    }
+
+    /**
+     * Translates a {@link Move} found on the given {@link Mailbox} into a
+     * {@link Move} of the corresponding {@link Square} of the {@link Gameboard}.
+     */
+    protected static Move locate(final Gameboard gameboard, final Mailbox board, final Move move) {
+        if (move.isPass()) { return new Move(null, move.getValue()); }
+        final int position = move.getPosition();
+        return new Move(gameboard.get(board.row(position), board.column(position)), move.getValue());
+    }
+
     public static class Move {
+        public static final int PASS = -1;
+
         private final Square square;
+        private final int position;
         private final int value;
 
         public Move(final Square square, final int value){
             this.square = square;
+            this.position = PASS;
             this.value = value;
         }
 
         public Move(final Square square){ this(square, -1); }
 
-        public final int getColumn() { return square.getColumn(); }
+        public Move(final int position, final int value) {
+            this.square = null;
+            this.position = position;
+            this.value = value;
+        }
+
+        /**
+         * Returns the column of the move on the {@link Gameboard}, which includes
+         * the border surrounding the playable area of the {@link Bitboard}.
+         */
+        public final int getColumn() {
+            return square != null ? square.getColumn() : Bitboard.column(position)+1;
+        }
 
-        public final int getRow() { return square.getRow(); }
+        /**
+         * Returns the position of the move on the {@link Bitboard}, or
+         * {@link #PASS} if the move was not found on one.
+         */
+        public final int getPosition() { return position; }
+
+        /**
+         * Returns the row of the move on the {@link Gameboard}, which includes
+         * the border surrounding the playable area of the {@link Bitboard}.
+         */
+        public final int getRow() {
+            return square != null ? square.getRow() : Bitboard.row(position)+1;
+        }
 
         public final Square getSquare() { return square; }
 
         public final int getValue() { return value; }
+
+        public final boolean isPass() { return square == null && position == PASS; }
     }
 }
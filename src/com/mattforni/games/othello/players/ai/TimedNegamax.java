@@ -0,0 +1,46 @@
+package com.mattforni.games.othello.players.ai;
+
+import java.util.concurrent.TimeUnit;
+
+import com.mattforni.games.othello.board.Bitboard;
+
+/**
+ * {@link TimedNegamax} is a {@link Negamax} search which is bounded by time
+ * rather than depth. It keeps deepening until the per move budget is spent and
+ * then plays the best move of the deepest iteration it completed, which keeps
+ * the time taken by each move predictable from the opening to the endgame.
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public class TimedNegamax extends Negamax {
+    private final long millis;
+
+    public TimedNegamax(final long millis) throws IllegalArgumentException {
+        this(millis, newEvaluator());
+    }
+
+    public TimedNegamax(final long millis, final Evaluator evaluator)
+            throws IllegalArgumentException {
+        this(millis, Integer.getInteger(TABLE_PROPERTY, TranspositionTable.DEFAULT_MEGABYTES),
+                Integer.getInteger(THREADS_PROPERTY, 1), evaluator);
+    }
+
+    public TimedNegamax(final long millis, final int megabytes, final int threads,
+            final Evaluator evaluator) throws IllegalArgumentException {
+        super(Bitboard.SQUARES, megabytes, threads, evaluator);
+
+        // If there is no time to think an exception is thrown
+        if (millis < 1) {
+            throw new IllegalArgumentException("The time budget must be positive");
+        }
+        this.millis = millis;
+    }
+
+    public final long getMillis() { return millis; }
+
+    @Override
+    protected final long getDeadline(final long start) {
+        return start + TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
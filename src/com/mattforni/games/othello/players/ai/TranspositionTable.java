@@ -0,0 +1,235 @@
+package com.mattforni.games.othello.players.ai;
+
+import static java.lang.String.format;
+
+/**
+ * {@link TranspositionTable} is a fixed size cache of search results keyed by
+ * the {@link com.mattforni.games.othello.board.Zobrist} hash of a position, so
+ * that positions reached through different move orders are only searched once.
+ * Entries are packed into two parallel primitive arrays, one holding the full
+ * 64-bit key and the other the packed depth, bound, score, best move and the
+ * generation of the search which stored it. How colliding entries are resolved
+ * is governed by the {@link Replacement} policy.
+ *
+ * The table may be shared by several searching threads without locking. Each
+ * key is stored exclusive or'ed with its data, so an entry which is torn by a
+ * concurrent write simply fails to match on the next probe. For the same
+ * reason the table does not count its own probes; searches keep their own
+ * counts and {@link #record(long, long, long, long)} them once they finish so
+ * that hit rates and memory use can be reported.
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public class TranspositionTable {
+    public static final int DEFAULT_MEGABYTES = 8;
+
+    // Bound types, zero is reserved for empty entries
+    public static final int EXACT = 1;
+    public static final int LOWER = 2;
+    public static final int UPPER = 3;
+    public static final int NO_MOVE = -1;
+
+    private static final int BYTES_PER_ENTRY = 16;
+    private static final String REPORT_FORMAT =
+            "%d entries (%.1f MB, %s), %.1f%% full, %d probes, %.1f%% hits, %d stores, %d overwrites";
+
+    // Layout of the packed data word
+    private static final int DEPTH_SHIFT = 32;
+    private static final int BOUND_SHIFT = 40;
+    private static final int MOVE_SHIFT = 42;
+    private static final int GENERATION_SHIFT = 49;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int mask;
+    private final Replacement replacement;
+
+    private volatile int generation;
+    private long probes, hits, stores, overwrites;
+
+    public TranspositionTable() {
+        this(DEFAULT_MEGABYTES, Replacement.TWO_TIER);
+    }
+
+    public TranspositionTable(final int megabytes, final Replacement replacement)
+            throws IllegalArgumentException {
+        // If the table would not hold a single bucket an exception is thrown
+        if (megabytes < 1) {
+            throw new IllegalArgumentException("The table size must be at least one megabyte");
+        }
+
+        // The number of entries is rounded down to a power of two
+        final long requested = ((long) megabytes << 20) / BYTES_PER_ENTRY;
+        final int entries = (int) Long.highestOneBit(Math.min(requested, 1 << 30));
+
+        this.keys = new long[entries];
+        this.data = new long[entries];
+        this.mask = entries - 1;
+        this.replacement = replacement;
+    }
+
+    public final synchronized void clear() {
+        for (int index = 0; index < keys.length; index++) {
+            keys[index] = 0;
+            data[index] = 0;
+        }
+        generation = 0;
+        probes = hits = stores = overwrites = 0;
+    }
+
+    public final int capacity() { return keys.length; }
+
+    public final synchronized double getHitRate() { return probes == 0 ? 0 : (double) hits / probes; }
+
+    public final synchronized long getHits() { return hits; }
+
+    public final long getMemoryUsage() { return (long) keys.length * BYTES_PER_ENTRY; }
+
+    public final synchronized long getProbes() { return probes; }
+
+    public final Replacement getReplacement() { return replacement; }
+
+    /**
+     * Returns the fraction of a sample of the table which holds entries from
+     * the current search.
+     */
+    public final double getUsage() {
+        final int sample = Math.min(keys.length, 1 << 12);
+        int used = 0;
+        for (int index = 0; index < sample; index++) {
+            if (bound(data[index]) != 0 && generation(data[index]) == generation) { used++; }
+        }
+        return (double) used / sample;
+    }
+
+    /**
+     * Marks the start of a new search so that entries from previous searches
+     * are preferred for replacement.
+     */
+    public final void newSearch() { generation = (generation + 1) & 0xFF; }
+
+    /**
+     * Looks up the given key and returns its packed data, or zero if the key
+     * is not in the table. The fields of the data may be read with
+     * {@link #bound(long)}, {@link #depth(long)}, {@link #move(long)} and
+     * {@link #score(long)}.
+     */
+    public final long probe(final long key) {
+        final int index = (int) key & mask;
+        final long found = data[index];
+        if (found != 0 && (keys[index] ^ found) == key) { return found; }
+        if (replacement == Replacement.TWO_TIER) {
+            final int other = index ^ 1;
+            final long second = data[other];
+            if (second != 0 && (keys[other] ^ second) == key) { return second; }
+        }
+        return 0;
+    }
+
+    /**
+     * Adds the counts of a finished search to the totals of this table.
+     */
+    public final synchronized void record(final long probes, final long hits,
+            final long stores, final long overwrites) {
+        this.probes += probes;
+        this.hits += hits;
+        this.stores += stores;
+        this.overwrites += overwrites;
+    }
+
+    public final synchronized String report() {
+        return format(REPORT_FORMAT, capacity(), getMemoryUsage() / (double) (1 << 20),
+                replacement, getUsage()*100, probes, getHitRate()*100, stores, overwrites);
+    }
+
+    /**
+     * Stores the result of searching the given key, subject to the
+     * {@link Replacement} policy of the table.
+     *
+     * @return whether the entry of a different position was overwritten
+     */
+    public final boolean store(final long key, final int depth, final int bound,
+            final int score, final int move) {
+        final long packed = pack(depth, bound, score, move);
+        final int index = (int) key & mask;
+
+        switch (replacement) {
+            case ALWAYS:
+                return write(index, key, packed);
+            case DEPTH:
+                return replaceable(index, key, depth) && write(index, key, packed);
+            case TWO_TIER:
+                // The first slot of the bucket keeps the deepest entry and the
+                // second always takes whatever does not belong in the first
+                final int first = index & ~1;
+                final int second = first | 1;
+                if (keyAt(second) == key && !replaceable(first, key, depth)) {
+                    return write(second, key, packed);
+                } else if (replaceable(first, key, depth)) {
+                    if (keyAt(first) != key && data[first] != 0) {
+                        keys[second] = keys[first];
+                        data[second] = data[first];
+                    } else if (keyAt(second) == key) {
+                        data[second] = 0;
+                    }
+                    return write(first, key, packed);
+                }
+                return write(second, key, packed);
+        }
+        return false;
+    }
+
+    @Override
+    public final String toString() { return report(); }
+
+    /* Public static methods */
+    public static int bound(final long data) { return (int) (data >>> BOUND_SHIFT) & 0x3; }
+
+    public static int depth(final long data) { return (int) (data >>> DEPTH_SHIFT) & 0xFF; }
+
+    public static int move(final long data) { return ((int) (data >>> MOVE_SHIFT) & 0x7F) - 1; }
+
+    public static int score(final long data) { return (int) data; }
+
+    /* Private methods */
+    private long keyAt(final int index) { return keys[index] ^ data[index]; }
+
+    private boolean replaceable(final int index, final long key, final int depth) {
+        final long existing = data[index];
+        return existing == 0 || keyAt(index) == key ||
+                generation(existing) != generation || depth >= depth(existing);
+    }
+
+    private boolean write(final int index, final long key, final long packed) {
+        final boolean overwrite = data[index] != 0 && keyAt(index) != key;
+        keys[index] = key ^ packed;
+        data[index] = packed;
+        return overwrite;
+    }
+
+    private long pack(final int depth, final int bound, final int score, final int move) {
+        return (score & 0xFFFFFFFFL) |
+                ((long) Math.min(depth, 0xFF) << DEPTH_SHIFT) |
+                ((long) bound << BOUND_SHIFT) |
+                ((long) (move + 1) << MOVE_SHIFT) |
+                ((long) generation << GENERATION_SHIFT);
+    }
+
+    /* Private static methods */
+    private static int generation(final long data) { return (int) (data >>> GENERATION_SHIFT) & 0xFF; }
+
+    /* Public enums */
+    /**
+     * {@link Replacement} defines which entry survives when two positions map
+     * to the same slot of the table.
+     */
+    public enum Replacement {
+        /** The newest entry always replaces the existing one. */
+        ALWAYS,
+        /** Entries from the current search are only replaced by deeper ones. */
+        DEPTH,
+        /** Each bucket holds a depth preferred entry and an always replaced entry. */
+        TWO_TIER
+    }
+}
@@ -0,0 +1,152 @@
+package com.mattforni.games.othello.players.ai;
+
+import com.mattforni.games.othello.board.Bitboard;
+import com.mattforni.games.othello.players.Player.Side;
+
+/**
+ * {@link WeightedEvaluator} is the default {@link Evaluator} of
+ * {@link Negamax} until pattern weights have been learned. It combines the classic
+ * features of Othello programs, each with its own weight: a table of how
+ * valuable each square is to hold, the difference in mobility, the potential
+ * mobility given by the frontier of empty squares next to each side's pieces,
+ * the pieces anchored to a corner along an edge, which can never be flipped,
+ * and the parity of the empty squares. The square table and the number of
+ * empty squares are updated as moves are made, while the remaining features
+ * depend on the whole board and are computed with a handful of bit operations
+ * at each leaf.
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public class WeightedEvaluator implements Evaluator {
+    // Corners are the most valuable squares and those which give them away the least
+    private static final int[] SQUARE_WEIGHTS = {
+        100, -20,  10,   5,   5,  10, -20, 100,
+        -20, -50,  -2,  -2,  -2,  -2, -50, -20,
+         10,  -2,   1,   1,   1,   1,  -2,  10,
+          5,  -2,   1,   0,   0,   1,  -2,   5,
+          5,  -2,   1,   0,   0,   1,  -2,   5,
+         10,  -2,   1,   1,   1,   1,  -2,  10,
+        -20, -50,  -2,  -2,  -2,  -2, -50, -20,
+        100, -20,  10,   5,   5,  10, -20, 100
+    };
+    private static final int MOBILITY_WEIGHT = 8;
+    private static final int FRONTIER_WEIGHT = 4;
+    private static final int STABILITY_WEIGHT = 20;
+    private static final int PARITY_WEIGHT = 10;
+
+    // Each corner and the two directions along the edges which meet there
+    private static final int[] CORNERS = { 0, 7, 56, 63 };
+    private static final int[][] EDGES = { { 1, 8 }, { -1, 8 }, { 1, -8 }, { -1, -8 } };
+
+    private final int[] squares;
+    private final int mobility;
+    private final int frontier;
+    private final int stability;
+    private final int parity;
+
+    // The square table summed over the black pieces less that over the white
+    private int positional;
+    private int empties;
+
+    public WeightedEvaluator() {
+        this(SQUARE_WEIGHTS, MOBILITY_WEIGHT, FRONTIER_WEIGHT, STABILITY_WEIGHT, PARITY_WEIGHT);
+    }
+
+    public WeightedEvaluator(final int[] squares, final int mobility, final int frontier,
+            final int stability, final int parity) throws IllegalArgumentException {
+        // If there is not a weight for every square an exception is thrown
+        if (squares.length != Bitboard.SQUARES) {
+            throw new IllegalArgumentException("There must be a weight for every square");
+        }
+
+        this.squares = squares.clone();
+        this.mobility = mobility;
+        this.frontier = frontier;
+        this.stability = stability;
+        this.parity = parity;
+    }
+
+    private WeightedEvaluator(final WeightedEvaluator evaluator) {
+        this.squares = evaluator.squares;
+        this.mobility = evaluator.mobility;
+        this.frontier = evaluator.frontier;
+        this.stability = evaluator.stability;
+        this.parity = evaluator.parity;
+    }
+
+    @Override
+    public Evaluator copy() { return new WeightedEvaluator(this); }
+
+    @Override
+    public int evaluate(final Bitboard board, final Side side) {
+        final long player = board.get(side);
+        final long opponent = board.get(side.getOpponent());
+        final long empty = board.getEmpty();
+
+        int score = side == Side.BLACK ? positional : -positional;
+        score += mobility * (Long.bitCount(Bitboard.moves(player, opponent)) -
+                Long.bitCount(Bitboard.moves(opponent, player)));
+        // Empty squares next to the opponent's pieces are moves this side may have later
+        score += frontier * (Long.bitCount(Bitboard.neighbours(opponent) & empty) -
+                Long.bitCount(Bitboard.neighbours(player) & empty));
+        score += stability * (Long.bitCount(stable(player)) - Long.bitCount(stable(opponent)));
+        // With an odd number of empty squares the side to move expects the last move
+        score += (empties & 1) == 1 ? parity : -parity;
+        return score;
+    }
+
+    @Override
+    public void play(final Side side, final int square, final long flipped) {
+        final int change = squares[square] + 2*sum(flipped);
+        positional += side == Side.BLACK ? change : -change;
+        empties--;
+    }
+
+    @Override
+    public void reset(final Bitboard board) {
+        positional = sum(board.get(Side.BLACK)) - sum(board.get(Side.WHITE));
+        empties = board.countEmpty();
+    }
+
+    @Override
+    public void undo(final Side side, final int square, final long flipped) {
+        final int change = squares[square] + 2*sum(flipped);
+        positional -= side == Side.BLACK ? change : -change;
+        empties++;
+    }
+
+    /**
+     * Returns a copy of the default table of how valuable each square is to hold.
+     */
+    public static int[] getSquareWeights() { return SQUARE_WEIGHTS.clone(); }
+
+    /* Private methods */
+    private int sum(long pieces) {
+        int total = 0;
+        while (pieces != 0) {
+            total += squares[Long.numberOfTrailingZeros(pieces)];
+            pieces &= pieces - 1;
+        }
+        return total;
+    }
+
+    /* Private static methods */
+    /**
+     * Returns the pieces which run unbroken along an edge from a held corner.
+     */
+    private static long stable(final long pieces) {
+        long stable = 0;
+        for (int corner = 0; corner < CORNERS.length; corner++) {
+            if ((pieces & (1L << CORNERS[corner])) == 0) { continue; }
+            for (final int direction : EDGES[corner]) {
+                int square = CORNERS[corner];
+                for (int step = 0; step < Bitboard.SIZE && (pieces & (1L << square)) != 0; step++) {
+                    stable |= 1L << square;
+                    square += direction;
+                }
+            }
+        }
+        return stable;
+    }
+}
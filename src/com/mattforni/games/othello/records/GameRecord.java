@@ -0,0 +1,117 @@
+package com.mattforni.games.othello.records;
+
+import static java.lang.String.format;
+
+import java.util.Arrays;
+
+import com.mattforni.games.othello.players.Player.Side;
+
+/**
+ * {@link GameRecord} holds a single game as it is written to and read from a
+ * file of records: the size of the board, the players, the number of pieces
+ * each held at the end and every move in the order it was played. White moves
+ * first and the sides alternate, with a {@link #PASS} recorded whenever a side
+ * could not move, so the side of each move never needs to be stored. Squares
+ * are numbered <code>row*size + column</code> across the playable area from
+ * zero, which on the standard board is the square of the {@link
+ * com.mattforni.games.othello.board.Bitboard Bitboard}.
+ *
+ * A record may be cleared and filled again, so that a reader can replay any
+ * number of games through the same record without allocating for each.
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public final class GameRecord {
+    public static final int PASS = -1;
+    // The largest board whose moves and pieces can be counted in two bytes
+    public static final int MAX_SIZE = 128;
+
+    private int size;
+    private String white;
+    private String black;
+    private int whitePieces;
+    private int blackPieces;
+    private int[] moves;
+    private int length;
+
+    public GameRecord() { this(8); }
+
+    public GameRecord(final int size) throws IllegalArgumentException {
+        this.moves = new int[64];
+        clear(size);
+    }
+
+    public final void addMove(final int square) throws IllegalArgumentException {
+        // If the square is not on the board an exception is thrown
+        if (square != PASS && (square < 0 || square >= size*size)) {
+            throw new IllegalArgumentException(square + " is not a square of the board");
+        }
+        if (length == moves.length) { moves = Arrays.copyOf(moves, 2*length); }
+        moves[length++] = square;
+    }
+
+    /**
+     * Empties the record for a new game on a board with the given number of
+     * rows and columns.
+     *
+     * @throws IllegalArgumentException if the size is not even, positive and
+     *     at most {@link #MAX_SIZE}
+     */
+    public final void clear(final int size) throws IllegalArgumentException {
+        // If the board cannot hold the starting pieces or be recorded an exception is thrown
+        if (size < 2 || size % 2 != 0 || size > MAX_SIZE) {
+            throw new IllegalArgumentException(format("The board size must be even and at most %d", MAX_SIZE));
+        }
+        this.size = size;
+        this.white = "";
+        this.black = "";
+        this.whitePieces = 0;
+        this.blackPieces = 0;
+        this.length = 0;
+    }
+
+    public final int getMove(final int index) { return moves[index]; }
+
+    public final int getMoveCount() { return length; }
+
+    public final int getPieces(final Side side) { return side == Side.BLACK ? blackPieces : whitePieces; }
+
+    public final String getPlayer(final Side side) { return side == Side.BLACK ? black : white; }
+
+    /**
+     * Returns the number of rows and columns of the playable area.
+     */
+    public final int getSize() { return size; }
+
+    /**
+     * Returns the winner of the game, or null if it was drawn.
+     */
+    public final Side getWinner() {
+        if (whitePieces == blackPieces) { return null; }
+        return whitePieces > blackPieces ? Side.WHITE : Side.BLACK;
+    }
+
+    public final void setPieces(final int white, final int black) {
+        this.whitePieces = white;
+        this.blackPieces = black;
+    }
+
+    /**
+     * Names the player of the given {@link Side}, such as <code>human</code>
+     * or <code>level:3</code>.
+     */
+    public final void setPlayer(final Side side, final String name) {
+        if (side == Side.BLACK) {
+            this.black = name;
+        } else {
+            this.white = name;
+        }
+    }
+
+    /**
+     * Returns the square of this record at the given row and column of the
+     * playable area, both counted from zero.
+     */
+    public final int square(final int row, final int column) { return row*size + column; }
+}
@@ -0,0 +1,107 @@
+package com.mattforni.games.othello.records;
+
+import static com.mattforni.games.othello.records.GameRecordWriter.MAGIC;
+import static com.mattforni.games.othello.records.GameRecordWriter.MAX_NAME;
+import static com.mattforni.games.othello.records.GameRecordWriter.VERSION;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import com.mattforni.games.othello.players.Player.Side;
+
+/**
+ * {@link GameRecordReader} reads back the {@link GameRecord}s written by a
+ * {@link GameRecordWriter} one at a time, filling the same record each time,
+ * so that a file of any number of games can be replayed as quickly as it can
+ * be read. The moves of each record are read in a single block, and the names
+ * of the players are only turned into new strings when they differ from those
+ * of the previous record, which in a file of self-play they rarely do.
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public final class GameRecordReader implements Closeable {
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final DataInputStream in;
+    private byte[] buffer;
+
+    /**
+     * Creates a reader of the records on the given stream.
+     *
+     * @throws IOException if the stream does not start with a file of records
+     */
+    public GameRecordReader(final InputStream in) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(in, BUFFER_BYTES));
+        this.buffer = new byte[MAX_NAME];
+        try {
+            // If the stream is not a file of records it cannot be read
+            if (this.in.readInt() != MAGIC || this.in.readInt() != VERSION) {
+                throw new IOException("The stream does not hold game records");
+            }
+        } catch (final EOFException e) {
+            throw new IOException("The stream does not hold game records");
+        }
+    }
+
+    @Override
+    public final void close() throws IOException { in.close(); }
+
+    /**
+     * Fills the given record with the next game of the stream.
+     *
+     * @return false if there are no more games
+     * @throws IOException if the stream ends part of the way through a game
+     */
+    public final boolean read(final GameRecord record) throws IOException {
+        final int size = in.read();
+        if (size < 0) { return false; }
+
+        try {
+            final String white = readName(record.getPlayer(Side.WHITE));
+            final String black = readName(record.getPlayer(Side.BLACK));
+            record.clear(size);
+            record.setPlayer(Side.WHITE, white);
+            record.setPlayer(Side.BLACK, black);
+            final int whitePieces = in.readUnsignedShort();
+            record.setPieces(whitePieces, in.readUnsignedShort());
+
+            final int count = in.readUnsignedShort();
+            final int bytes = GameRecordWriter.bytesPerMove(size);
+            if (buffer.length < bytes*count) { buffer = new byte[Math.max(2*buffer.length, bytes*count)]; }
+            in.readFully(buffer, 0, bytes*count);
+            int position = 0;
+            for (int index = 0; index < count; index++) {
+                int move = buffer[position++] & 0xFF;
+                if (bytes == 2) { move = move << 8 | buffer[position++] & 0xFF; }
+                record.addMove(move == (1 << 8*bytes) - 1 ? GameRecord.PASS : move);
+            }
+        } catch (final EOFException e) {
+            throw new IOException("The stream ends part of the way through a game");
+        } catch (final IllegalArgumentException e) {
+            throw new IOException("The record is corrupt: " + e.getMessage());
+        }
+        return true;
+    }
+
+    /* Private methods */
+    /**
+     * Reads the name of a player, returning the given previous name instead of
+     * a new string when the two are the same.
+     */
+    private String readName(final String previous) throws IOException {
+        final int length = in.readUnsignedByte();
+        in.readFully(buffer, 0, length);
+        if (previous.length() == length) {
+            int index = 0;
+            while (index < length && previous.charAt(index) == buffer[index]) { index++; }
+            if (index == length) { return previous; }
+        }
+        return new String(buffer, 0, length, StandardCharsets.US_ASCII);
+    }
+}
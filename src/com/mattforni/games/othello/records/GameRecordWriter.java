@@ -0,0 +1,128 @@
+package com.mattforni.games.othello.records;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import com.mattforni.games.othello.players.Player.Side;
+
+/**
+ * {@link GameRecordWriter} writes {@link GameRecord}s one after another to a
+ * stream, so that any number of games may be recorded as they finish without
+ * holding more than one of them in memory. A file of records starts with a
+ * magic number and a version, followed by the records themselves, each made up
+ * of
+ * <ul>
+ * <li>the size of the board in one byte</li>
+ * <li>the names of the white and black players, each as its length in one
+ * byte followed by that many ASCII characters</li>
+ * <li>the pieces held by white and by black at the end and the number of
+ * moves, each in two bytes</li>
+ * <li>the moves, each one byte on boards of up to 15 squares a side, where
+ * <code>0xFF</code> is a pass, or two bytes on larger boards, where
+ * <code>0xFFFF</code> is a pass</li>
+ * </ul>
+ * so that a game on the standard board takes around 70 bytes. All numbers are
+ * written most significant byte first. Records are read back by a
+ * {@link GameRecordReader}.
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public final class GameRecordWriter implements Closeable, Flushable {
+    static final int MAGIC = 0x4F544752;
+    static final int VERSION = 1;
+    static final int MAX_NAME = 0xFF;
+
+    private final DataOutputStream out;
+    private byte[] buffer;
+
+    /**
+     * Creates a writer which starts a new file of records on the given stream.
+     */
+    public GameRecordWriter(final OutputStream out) throws IOException {
+        this(out, true);
+    }
+
+    private GameRecordWriter(final OutputStream out, final boolean header) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.buffer = new byte[MAX_NAME];
+        if (header) {
+            this.out.writeInt(MAGIC);
+            this.out.writeInt(VERSION);
+        }
+    }
+
+    @Override
+    public final void close() throws IOException { out.close(); }
+
+    @Override
+    public final void flush() throws IOException { out.flush(); }
+
+    public final void write(final GameRecord record) throws IOException {
+        final int size = record.getSize();
+        out.writeByte(size);
+        writeName(record.getPlayer(Side.WHITE));
+        writeName(record.getPlayer(Side.BLACK));
+        out.writeShort(record.getPieces(Side.WHITE));
+        out.writeShort(record.getPieces(Side.BLACK));
+
+        final int count = record.getMoveCount();
+        out.writeShort(count);
+        final int bytes = bytesPerMove(size);
+        if (buffer.length < bytes*count) { buffer = new byte[Math.max(2*buffer.length, bytes*count)]; }
+        int position = 0;
+        for (int index = 0; index < count; index++) {
+            final int move = record.getMove(index);
+            if (bytes == 2) { buffer[position++] = (byte) (move >>> 8); }
+            buffer[position++] = (byte) move;
+        }
+        out.write(buffer, 0, position);
+    }
+
+    /* Public static methods */
+    /**
+     * Returns a writer which adds records to the end of the given file,
+     * starting the file if it is empty or does not exist yet.
+     *
+     * @throws IOException if the file already holds something other than records
+     */
+    public static GameRecordWriter append(final File file) throws IOException {
+        final boolean empty = !file.exists() || file.length() == 0;
+        if (!empty) {
+            final DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                // If the file is not a file of records it must not be added to
+                if (file.length() < 8 || in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException(file + " does not hold game records");
+                }
+            } finally {
+                in.close();
+            }
+        }
+        return new GameRecordWriter(new FileOutputStream(file, true), empty);
+    }
+
+    /* Static methods */
+    /**
+     * Returns the number of bytes taken by each move on a board of the given
+     * size, which is a single byte whenever every square and a pass fit in one.
+     */
+    static int bytesPerMove(final int size) { return size*size < 0xFF ? 1 : 2; }
+
+    /* Private methods */
+    private void writeName(final String name) throws IOException {
+        final byte[] bytes = name.getBytes(StandardCharsets.US_ASCII);
+        final int length = Math.min(bytes.length, MAX_NAME);
+        out.writeByte(length);
+        out.write(bytes, 0, length);
+    }
+}
@@ -0,0 +1,274 @@
+package com.mattforni.games.othello.tools;
+
+import static java.lang.String.format;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.mattforni.games.othello.board.Bitboard;
+import com.mattforni.games.othello.players.Player.Side;
+import com.mattforni.games.othello.players.ai.Negamax;
+import com.mattforni.games.othello.players.ai.Strategy;
+import com.mattforni.games.othello.players.ai.Strategy.Move;
+
+/**
+ * {@link BatchAnalyzer} annotates a stream of positions with the best move of
+ * each, its score and its principal variation. Positions are read one per line
+ * as 64 squares from a1 to h8, row by row, each <code>-</code> or
+ * <code>.</code> when empty, <code>B</code> or <code>X</code> for black and
+ * <code>W</code> or <code>O</code> for white, followed by <code>B</code> or
+ * <code>W</code> for the side to move. The same line is written back followed
+ * by the move, such as <code>f5</code> or <code>pass</code>, the score from the
+ * point of view of the side to move, written as <code>win+N</code> or
+ * <code>loss-N</code> once the outcome is known, and the principal variation.
+ * When the side to move has to pass the opponent's reply is searched instead,
+ * so the pass is followed by the negation of its score and by its principal
+ * variation, and a finished game is written as a pass with its final score.
+ * Blank lines and lines which start with <code>#</code> are copied as they
+ * are, and a line which cannot be read is written back followed by
+ * <code>error</code> and the reason.
+ *
+ * Each position is searched by a {@link Negamax} strategy of its own thread
+ * through {@link Strategy#getBestMove(Bitboard, Side)}, with its table cleared
+ * beforehand so that the result does not depend on which thread took it. The
+ * positions are handed to the threads as they are read and the results are
+ * written in the order of the input as soon as they are ready, with only a
+ * few positions per thread in flight at once, so a file of any length is
+ * analysed without ever being held in memory.
+ *
+ * Usage: <code>BatchAnalyzer &lt;input|-&gt; &lt;output|-&gt; [depth] [threads]</code>
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public final class BatchAnalyzer {
+    // The transposition table of each thread in megabytes, which is cleared for every position
+    public static final String TABLE_PROPERTY = "othello.analysis.table.megabytes";
+
+    private static final int DEFAULT_TABLE_MEGABYTES = 2;
+    // The number of positions per thread which may be read ahead of the output
+    private static final int POSITIONS_PER_THREAD = 16;
+    private static final int PROGRESS_INTERVAL = 10000;
+    private static final String USAGE = "Usage: BatchAnalyzer <input|-> <output|-> [depth] [threads]";
+
+    private final int depth;
+    private final int megabytes;
+    private final ThreadLocal<Negamax> strategies;
+
+    private BatchAnalyzer(final int depth, final int megabytes) {
+        this.depth = depth;
+        this.megabytes = megabytes;
+        this.strategies = new ThreadLocal<Negamax>() {
+            @Override
+            protected Negamax initialValue() {
+                // The positions already spread over the cores so no search is shared
+                return new Negamax(BatchAnalyzer.this.depth, BatchAnalyzer.this.megabytes, 1);
+            }
+        };
+    }
+
+    public static void main(final String[] argv) throws IOException, InterruptedException {
+        // If the input and output are not named there is nothing to analyse
+        if (argv.length < 2) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        final int depth = argv.length > 2 ? Integer.parseInt(argv[2]) : 8;
+        final int threads = argv.length > 3 ? Integer.parseInt(argv[3]) :
+            Runtime.getRuntime().availableProcessors();
+        final BatchAnalyzer analyzer = new BatchAnalyzer(depth,
+                Integer.getInteger(TABLE_PROPERTY, DEFAULT_TABLE_MEGABYTES));
+
+        final InputStream input = argv[0].equals("-") ? System.in : new FileInputStream(argv[0]);
+        final OutputStream output = argv[1].equals("-") ? System.out : new FileOutputStream(argv[1]);
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.US_ASCII));
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.US_ASCII));
+        try {
+            analyzer.analyze(reader, writer, threads);
+        } finally {
+            writer.close();
+            reader.close();
+        }
+    }
+
+    /* Private methods */
+    /**
+     * Returns the annotated form of the given line of input.
+     */
+    private String analyze(final String line) {
+        final String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) { return line; }
+
+        final String[] fields = trimmed.split("\\s+");
+        final Bitboard board;
+        final Side side;
+        try {
+            board = parseBoard(fields[0]);
+            side = parseSide(fields.length > 1 ? fields[1] : "");
+        } catch (final IllegalArgumentException e) {
+            return format("%s error %s", trimmed, e.getMessage());
+        }
+
+        final Negamax negamax = strategies.get();
+        negamax.getTable().clear();
+        final StringBuilder builder = new StringBuilder(fields[0]).append(' ').append(fields[1]);
+        if (board.hasMoves(side)) {
+            final Move move = negamax.getBestMove(board, side);
+            builder.append(' ').append(Positions.name(move.getPosition()));
+            builder.append(' ').append(score(move.getValue()));
+            return appendVariation(builder, negamax, board, side).toString();
+        }
+
+        builder.append(" pass");
+        final Side opponent = side.getOpponent();
+        // If neither side can move the game is over and its score is known exactly
+        if (!board.hasMoves(opponent)) {
+            final int difference = board.count(side) - board.count(opponent);
+            return builder.append(' ').append(score(difference == 0 ? 0 :
+                difference + (difference > 0 ? Negamax.WIN : -Negamax.WIN))).toString();
+        }
+        // Otherwise the opponent moves again, and its best reply is the worst for this side
+        final Move reply = negamax.getBestMove(board, opponent);
+        builder.append(' ').append(score(-reply.getValue()));
+        return appendVariation(builder, negamax, board, opponent).toString();
+    }
+
+    /**
+     * Appends the principal variation of the last search of the given board
+     * by the given {@link Side} to the given builder, returning the builder.
+     */
+    private StringBuilder appendVariation(final StringBuilder builder, final Negamax negamax,
+            final Bitboard board, final Side side) {
+        final int[] variation = new int[depth];
+        final int length = negamax.getPrincipalVariation(board, side, variation);
+        for (int index = 0; index < length; index++) {
+            builder.append(' ').append(variation[index] == Move.PASS ? "pass" : Positions.name(variation[index]));
+        }
+        return builder;
+    }
+
+    /**
+     * Reads every line of the given input and writes its annotation to the
+     * given output in the same order, analysing the positions on the given
+     * number of threads.
+     */
+    private void analyze(final BufferedReader reader, final Writer writer, final int threads)
+            throws IOException, InterruptedException {
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final Deque<Future<String>> pending = new ArrayDeque<Future<String>>();
+        final long start = System.nanoTime();
+        long count = 0;
+        try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                // Once enough positions are in flight the oldest is written before reading on
+                if (pending.size() >= threads * POSITIONS_PER_THREAD) { write(pending.removeFirst(), writer); }
+                pending.addLast(pool.submit(new Analysis(line)));
+                if (++count % PROGRESS_INTERVAL == 0) {
+                    final double seconds = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+                    System.err.println(format("%d lines in %.0f s, %.0f lines/s", count, seconds, count / seconds));
+                }
+            }
+            while (!pending.isEmpty()) { write(pending.removeFirst(), writer); }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /* Private static methods */
+    /**
+     * Returns the board written as 64 squares from a1 to h8.
+     *
+     * @throws IllegalArgumentException if the board cannot be read
+     */
+    private static Bitboard parseBoard(final String squares) throws IllegalArgumentException {
+        // If there is not one character per square an exception is thrown
+        if (squares.length() != Bitboard.SQUARES) {
+            throw new IllegalArgumentException(format("the board has %d squares", squares.length()));
+        }
+
+        long black = 0, white = 0;
+        for (int square = 0; square < Bitboard.SQUARES; square++) {
+            switch (Character.toUpperCase(squares.charAt(square))) {
+                case 'B':
+                case 'X':
+                    black |= 1L << square;
+                    break;
+                case 'W':
+                case 'O':
+                    white |= 1L << square;
+                    break;
+                case '-':
+                case '.':
+                    break;
+                default:
+                    // If the square is not known an exception is thrown
+                    throw new IllegalArgumentException(format("%c is not a square", squares.charAt(square)));
+            }
+        }
+        return new Bitboard(black, white);
+    }
+
+    /**
+     * Returns the side to move written as <code>B</code> or <code>W</code>.
+     *
+     * @throws IllegalArgumentException if the side cannot be read
+     */
+    private static Side parseSide(final String side) throws IllegalArgumentException {
+        if (side.equalsIgnoreCase("B") || side.equalsIgnoreCase(Side.BLACK.toString())) { return Side.BLACK; }
+        if (side.equalsIgnoreCase("W") || side.equalsIgnoreCase(Side.WHITE.toString())) { return Side.WHITE; }
+        // If the side is missing or not known an exception is thrown
+        if (side.isEmpty()) { throw new IllegalArgumentException("the side to move is missing"); }
+        throw new IllegalArgumentException(format("%s is not a known side", side));
+    }
+
+    /**
+     * Returns the given score, writing the outcome of a finished game as a win
+     * or loss by a number of pieces.
+     */
+    private static String score(final int value) {
+        if (value >= Negamax.WIN) { return format("win+%d", value - Negamax.WIN); }
+        if (value <= -Negamax.WIN) { return format("loss%d", value + Negamax.WIN); }
+        return Integer.toString(value);
+    }
+
+    private static void write(final Future<String> result, final Writer writer)
+            throws IOException, InterruptedException {
+        try {
+            writer.write(result.get());
+            writer.write('\n');
+        } catch (final ExecutionException e) {
+            throw new IllegalStateException("The analysis failed", e.getCause());
+        }
+    }
+
+    /* Private classes */
+    /**
+     * {@link Analysis} annotates a single line of the input.
+     */
+    private final class Analysis implements Callable<String> {
+        private final String line;
+
+        private Analysis(final String line) { this.line = line; }
+
+        @Override
+        public String call() { return analyze(line); }
+    }
+}
@@ -0,0 +1,325 @@
+package com.mattforni.games.othello.tools;
+
+import static java.lang.String.format;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.mattforni.games.othello.board.Bitboard;
+import com.mattforni.games.othello.gui.Gameboard;
+import com.mattforni.games.othello.gui.square.Square;
+import com.mattforni.games.othello.players.HumanPlayer;
+import com.mattforni.games.othello.players.Player;
+import com.mattforni.games.othello.players.Player.Side;
+import com.mattforni.games.othello.players.ai.Minimax;
+
+/**
+ * {@link BenchmarkSuite} measures the cost of the core operations of the game
+ * so that changes to them can be compared before and after. Each operation is
+ * run on a fixed corpus of opening, midgame and endgame positions: checking
+ * every square of a board with {@link Square#isValidMove(Side)}, playing a
+ * move with {@link Square#flip(Side)}, counting the moves of a board whose
+ * pieces have just changed with {@link Gameboard#numMoves(Player)}, copying a
+ * {@link Gameboard} and choosing a move with {@link Minimax}.
+ *
+ * Every benchmark is first run for a while to let the compiler settle, and is
+ * then measured over a number of iterations of roughly equal length. For each
+ * the operations per second and their spread over the iterations are printed,
+ * along with the bytes allocated per operation by the measuring thread and the
+ * collections which happened while it was measured. Any preparation an
+ * operation needs, such as resetting the boards it plays on, is done between
+ * batches of operations and is not measured.
+ *
+ * Usage: <code>BenchmarkSuite [filter] [iterations] [milliseconds]</code>
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public final class BenchmarkSuite {
+    private static final long SEED = 42;
+    private static final int POSITIONS = 16;
+    private static final int POOL = POSITIONS * 64;
+    private static final int MAX_OPERATIONS = 1 << 24;
+    private static final int MINIMAX_DEPTH = 3;
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final String[] PHASES = {"opening", "midgame", "endgame"};
+    private static final int[] EMPTIES = {52, 36, 14};
+    private static final String HEADER_FORMAT = "%-8s %-12s %14s %9s %12s %10s %5s";
+    private static final String ROW_FORMAT = "%-8s %-12s %14.0f %8.1f%% %12.1f %10.1f %5d";
+
+    private final Gameboard[] boards;
+    private final Side[] sides;
+    private final Player[] players;
+    private final int[][] moves;
+    private final long millis;
+    private int sink;
+
+    private BenchmarkSuite(final int empties, final long millis) {
+        final Bitboard[] bitboards = new Bitboard[POSITIONS];
+        this.sides = new Side[POSITIONS];
+        Positions.generate(SEED + empties, empties, bitboards, sides);
+
+        this.boards = new Gameboard[POSITIONS];
+        this.players = new Player[POSITIONS];
+        this.moves = new int[POSITIONS][];
+        this.millis = millis;
+        for (int index = 0; index < POSITIONS; index++) {
+            boards[index] = Positions.toGameboard(bitboards[index]);
+            players[index] = new HumanPlayer(sides[index]);
+            long legal = bitboards[index].getMoves(sides[index]);
+            moves[index] = new int[Long.bitCount(legal)];
+            for (int move = 0; legal != 0; move++) {
+                moves[index][move] = Long.numberOfTrailingZeros(legal);
+                legal &= legal - 1;
+            }
+        }
+    }
+
+    public static void main(final String[] argv) {
+        final String filter = argv.length > 0 ? argv[0] : "";
+        final int iterations = argv.length > 1 ? Integer.parseInt(argv[1]) : 10;
+        final long millis = argv.length > 2 ? Long.parseLong(argv[2]) : 200;
+
+        System.out.println(format("%d positions per phase, %d iterations of %d ms after %d of warmup",
+                POSITIONS, iterations, millis, WARMUP_ITERATIONS));
+        System.out.println(format(HEADER_FORMAT,
+                "phase", "benchmark", "ops/sec", "error", "ns/op", "bytes/op", "gcs"));
+        for (int phase = 0; phase < PHASES.length; phase++) {
+            final BenchmarkSuite suite = new BenchmarkSuite(EMPTIES[phase], millis);
+            for (final Benchmark benchmark : suite.getBenchmarks()) {
+                if (!benchmark.name.contains(filter)) { continue; }
+                final Result result = suite.measure(benchmark, iterations);
+                System.out.println(format(ROW_FORMAT, PHASES[phase], benchmark.name,
+                        result.opsPerSecond, result.error, result.nanosPerOp,
+                        result.bytesPerOp, result.collections));
+            }
+        }
+    }
+
+    /* Private methods */
+    private List<Benchmark> getBenchmarks() {
+        final List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+
+        benchmarks.add(new Benchmark("isValidMove") {
+            @Override
+            int run(final int operation) {
+                final Gameboard board = boards[operation % POSITIONS];
+                final Side side = sides[operation % POSITIONS];
+                int valid = 0;
+                for (int row = 1; row <= Bitboard.SIZE; row++) {
+                    for (int column = 1; column <= Bitboard.SIZE; column++) {
+                        if (board.get(row, column).isValidMove(side)) { valid++; }
+                    }
+                }
+                return valid;
+            }
+        });
+
+        benchmarks.add(new Benchmark("flip") {
+            @Override
+            int run(final int operation) {
+                final int index = operation % POSITIONS;
+                final int move = moves[index][(operation / POSITIONS) % moves[index].length];
+                final Square square = copies[operation].get(Bitboard.row(move)+1, Bitboard.column(move)+1);
+                square.flip(sides[index]);
+                return square.getRow();
+            }
+
+            @Override
+            void setUp(final int operations) { copy(operations); }
+        });
+
+        benchmarks.add(new Benchmark("numMoves") {
+            @Override
+            int run(final int operation) {
+                return copies[operation].numMoves(players[operation % POSITIONS]);
+            }
+
+            @Override
+            void setUp(final int operations) { copy(operations); }
+        });
+
+        benchmarks.add(new Benchmark("copy") {
+            @Override
+            int run(final int operation) {
+                return new Gameboard(boards[operation % POSITIONS]).numRows();
+            }
+        });
+
+        benchmarks.add(new Benchmark("minimax") {
+            private final Minimax minimax = new Minimax(MINIMAX_DEPTH);
+
+            @Override
+            int run(final int operation) {
+                final int index = operation % POSITIONS;
+                return minimax.getBestMove(boards[index], sides[index]).getValue();
+            }
+        });
+
+        return benchmarks;
+    }
+
+    /**
+     * Warms the given benchmark up, sizing its iterations to take roughly the
+     * configured time, and then measures the given number of iterations.
+     */
+    private Result measure(final Benchmark benchmark, final int iterations) {
+        // Double the operations per iteration until one takes long enough to time
+        final long target = TimeUnit.MILLISECONDS.toNanos(millis);
+        int operations = 1;
+        long elapsed = iterate(benchmark, operations);
+        while (elapsed < target / 4 && operations < MAX_OPERATIONS) {
+            operations *= 2;
+            elapsed = iterate(benchmark, operations);
+        }
+        operations = (int) Math.max(1, Math.min(MAX_OPERATIONS,
+                operations * target / Math.max(1, elapsed)));
+        for (int iteration = 0; iteration < WARMUP_ITERATIONS; iteration++) {
+            iterate(benchmark, operations);
+        }
+
+        final double[] rates = new double[iterations];
+        benchmark.preparedBytes = 0;
+        final long allocated = Memory.allocated();
+        final long collections = Memory.collections();
+        long nanos = 0;
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            elapsed = iterate(benchmark, operations);
+            nanos += elapsed;
+            rates[iteration] = operations * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+        }
+        // Any allocation made while preparing the iterations is subtracted again
+        final long bytes = Memory.allocated() - allocated - benchmark.preparedBytes;
+
+        final long total = (long) operations * iterations;
+        return new Result(rates, (double) nanos / total,
+                bytes < 0 ? Double.NaN : (double) bytes / total,
+                Memory.collections() - collections);
+    }
+
+    /**
+     * Prepares and runs one iteration of the given number of operations in
+     * batches of at most {@link #POOL}, returning the nanoseconds the
+     * operations took.
+     */
+    private long iterate(final Benchmark benchmark, final int operations) {
+        int result = 0;
+        long elapsed = 0;
+        for (int first = 0; first < operations; first += POOL) {
+            final int batch = Math.min(POOL, operations - first);
+            final long before = Memory.allocated();
+            benchmark.setUp(batch);
+            benchmark.preparedBytes += Memory.allocated() - before;
+
+            final long start = System.nanoTime();
+            for (int operation = 0; operation < batch; operation++) {
+                result += benchmark.run(operation);
+            }
+            elapsed += System.nanoTime() - start;
+        }
+        // Keep the results alive so the compiler cannot discard the operations
+        sink += result;
+        return elapsed;
+    }
+
+    /* Private classes */
+    /**
+     * {@link Benchmark} is a single operation to be measured. Operations which
+     * change a board play on a fixed pool of {@link #copies}, one for each
+     * operation of a batch, which are reset to their positions before each
+     * batch.
+     */
+    private abstract class Benchmark {
+        protected final String name;
+        protected Gameboard[] copies;
+        private long preparedBytes;
+
+        private Benchmark(final String name) { this.name = name; }
+
+        abstract int run(int operation);
+
+        void setUp(final int operations) {}
+
+        protected final void copy(final int operations) {
+            if (copies == null) {
+                copies = new Gameboard[POOL];
+                for (int operation = 0; operation < POOL; operation++) {
+                    copies[operation] = new Gameboard(boards[operation % POSITIONS]);
+                }
+                return;
+            }
+            // Only the copies the last batch played on have to be reset
+            for (int operation = 0; operation < operations; operation++) {
+                reset(copies[operation], boards[operation % POSITIONS]);
+            }
+        }
+
+        /**
+         * Sets the pieces of the given copy back to those of the given board,
+         * which like every position still has the four starting squares taken.
+         */
+        private void reset(final Gameboard copy, final Gameboard board) {
+            copy.newGame();
+            for (int row = 1; row <= Bitboard.SIZE; row++) {
+                for (int column = 1; column <= Bitboard.SIZE; column++) {
+                    final Square square = board.get(row, column);
+                    if (square.hasPiece()) { copy.setPiece(square.getSide(), row, column); }
+                }
+            }
+        }
+    }
+
+    /* Static classes */
+    /**
+     * {@link Memory} reads the bytes allocated by the current thread and the
+     * number of collections so far, where the virtual machine provides them.
+     */
+    private static final class Memory {
+        private static final java.lang.management.ThreadMXBean THREADS =
+                ManagementFactory.getThreadMXBean();
+
+        private Memory() {}
+
+        private static long allocated() {
+            if (!(THREADS instanceof com.sun.management.ThreadMXBean)) { return 0; }
+            return ((com.sun.management.ThreadMXBean) THREADS)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        private static long collections() {
+            long count = 0;
+            for (final GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, collector.getCollectionCount());
+            }
+            return count;
+        }
+    }
+
+    /**
+     * {@link Result} holds the measurements of one benchmark, with the error
+     * being the relative half width of the 99% interval of the rate.
+     */
+    private static final class Result {
+        private final double opsPerSecond, error, nanosPerOp, bytesPerOp;
+        private final long collections;
+
+        private Result(final double[] rates, final double nanosPerOp, final double bytesPerOp,
+                final long collections) {
+            double sum = 0;
+            for (final double rate : rates) { sum += rate; }
+            final double mean = sum / rates.length;
+            double squares = 0;
+            for (final double rate : rates) { squares += (rate - mean) * (rate - mean); }
+            final double deviation = rates.length > 1 ? Math.sqrt(squares / (rates.length - 1)) : 0;
+
+            this.opsPerSecond = mean;
+            this.error = 100 * 2.576 * deviation / Math.sqrt(rates.length) / mean;
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+            this.collections = collections;
+        }
+    }
+}
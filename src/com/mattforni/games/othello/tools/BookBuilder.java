@@ -0,0 +1,137 @@
+package com.mattforni.games.othello.tools;
+
+import static java.lang.String.format;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Random;
+
+import com.mattforni.games.othello.board.Bitboard;
+import com.mattforni.games.othello.players.Player.Side;
+import com.mattforni.games.othello.players.ai.Negamax;
+import com.mattforni.games.othello.players.ai.OpeningBook;
+import com.mattforni.games.othello.players.ai.Strategy.Move;
+
+/**
+ * {@link BookBuilder} writes an {@link OpeningBook} offline. The positions of
+ * the book are either those of the opening plies of self-play games, in which
+ * each side plays the book move or, half of the time, a random move so that
+ * the games spread out, or those of a list of games. Each distinct position is
+ * searched once to the given depth and its best move is stored in the book.
+ *
+ * Game lists hold one game per line as a run of coordinates such as
+ * <code>f5d6c3d3c4</code>, where the letter is the column and the digit the
+ * row. As in the gui white moves first, and passes are implied. Lines which
+ * start with <code>#</code> are ignored, as is the rest of any line from the
+ * first move which cannot be played.
+ *
+ * Usage: <code>BookBuilder selfplay &lt;book&gt; [games] [plies] [depth]</code>
+ * or <code>BookBuilder import &lt;book&gt; &lt;games&gt; [plies] [depth]</code>
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public final class BookBuilder {
+    private static final long SEED = 42;
+    private static final String USAGE = "Usage: BookBuilder selfplay <book> [games] [plies] [depth]\n" +
+            "       BookBuilder import <book> <games> [plies] [depth]";
+
+    private final OpeningBook.Builder builder;
+    private final Negamax negamax;
+    private final int plies;
+
+    private BookBuilder(final int plies, final int depth) {
+        this.builder = new OpeningBook.Builder();
+        this.negamax = new Negamax(depth);
+        this.plies = plies;
+    }
+
+    public static void main(final String[] argv) throws IOException {
+        // If the arguments do not name a mode and a book there is nothing to build
+        if (argv.length < 2 || (argv[0].equals("import") && argv.length < 3)) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        final int plies = argv.length > 3 ? Integer.parseInt(argv[3]) : 12;
+        final int depth = argv.length > 4 ? Integer.parseInt(argv[4]) : 10;
+        final BookBuilder book = new BookBuilder(plies, depth);
+
+        final long start = System.currentTimeMillis();
+        if (argv[0].equals("selfplay")) {
+            book.selfPlay(argv.length > 2 ? Integer.parseInt(argv[2]) : 1000);
+        } else if (argv[0].equals("import")) {
+            book.read(new File(argv[2]));
+        } else {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        book.builder.write(new File(argv[1]));
+        book.negamax.shutdown();
+        System.out.println(format("Wrote %d positions to %s in %d s", book.builder.size(), argv[1],
+                (System.currentTimeMillis() - start) / 1000));
+    }
+
+    /* Private methods */
+    /**
+     * Adds the given position to the book unless it is already there, and
+     * returns its book move.
+     */
+    private Move add(final Bitboard board, final Side side) {
+        Move move = builder.get(board, side);
+        if (move == null) {
+            move = negamax.getBestMove(board, side);
+            builder.add(board, side, move.getPosition(), move.getValue());
+        }
+        return move;
+    }
+
+    private void read(final File file) throws IOException {
+        final BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            int games = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim().toLowerCase();
+                if (line.isEmpty() || line.startsWith("#")) { continue; }
+
+                final Bitboard board = new Bitboard();
+                Side side = Side.WHITE;
+                for (int index = 0; index + 1 < line.length(); index += 2) {
+                    // Passes are not written down, so the opponent moves again
+                    if (!board.hasMoves(side)) { side = side.getOpponent(); }
+                    final int move = Positions.parse(line.charAt(index), line.charAt(index+1));
+                    if (move < 0 || !board.isValidMove(side, move)) { break; }
+
+                    if (index / 2 < plies) { add(board, side); }
+                    board.makeMove(side, move);
+                    side = side.getOpponent();
+                }
+                games++;
+            }
+            System.out.println(format("Read %d games", games));
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void selfPlay(final int games) {
+        final Random random = new Random(SEED);
+        for (int game = 0; game < games; game++) {
+            final Bitboard board = new Bitboard();
+            Side side = Side.WHITE;
+            for (int ply = 0; ply < plies && !board.isGameOver(); ply++) {
+                final long moves = board.getMoves(side);
+                if (moves != 0) {
+                    final Move best = add(board, side);
+                    board.makeMove(side, random.nextBoolean() ?
+                            best.getPosition() : Positions.pick(moves, random));
+                }
+                side = side.getOpponent();
+            }
+        }
+    }
+}
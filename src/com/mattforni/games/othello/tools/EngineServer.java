@@ -0,0 +1,533 @@
+package com.mattforni.games.othello.tools;
+
+import static java.lang.String.format;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.mattforni.games.othello.board.Bitboard;
+import com.mattforni.games.othello.players.ComputerPlayer;
+import com.mattforni.games.othello.players.Player.Side;
+import com.mattforni.games.othello.players.ai.BookStrategy;
+import com.mattforni.games.othello.players.ai.EndgameSolver;
+import com.mattforni.games.othello.players.ai.Negamax;
+import com.mattforni.games.othello.players.ai.Strategy;
+import com.mattforni.games.othello.players.ai.Strategy.Move;
+import com.mattforni.games.othello.players.ai.TimedNegamax;
+
+/**
+ * {@link EngineServer} hosts any number of games at once without the gui,
+ * each driven by a client over a line based protocol on a local socket. Every
+ * connection is a session which follows the same turns as the
+ * {@link com.mattforni.games.othello.Referee}, passing for a side without a
+ * move and ending the game once neither side has one, but it waits on its
+ * client rather than on a timer. Each session runs on a virtual thread where
+ * the virtual machine has them and on a thread of its own otherwise. The
+ * searches of the computer players of every session share a fixed pool of
+ * workers, so however many games are in progress no more searches run at once
+ * than there are workers. The sessions opened and the moves played per second
+ * are printed at a regular interval while the server is busy.
+ *
+ * A session understands the following commands, and answers each with any
+ * number of lines followed by a line starting with <code>OK</code>,
+ * <code>TURN</code>, <code>OVER</code>, <code>ERROR</code> or <code>BYE</code>.
+ * <ul>
+ * <li><code>NEW &lt;white&gt; &lt;black&gt;</code> starts a game between
+ * players which are <code>human</code>, <code>level:N</code> or
+ * <code>timed:MS</code>, and plays until a human is to move</li>
+ * <li><code>MOVE &lt;square&gt;</code> plays a move such as <code>f5</code>
+ * for the human to move, and the replies until a human is to move again</li>
+ * <li><code>MOVES</code> lists the moves of the side to move</li>
+ * <li><code>BOARD</code> prints the board from the first row to the last</li>
+ * <li><code>STATS</code> prints the sessions and moves of the server</li>
+ * <li><code>QUIT</code> ends the session</li>
+ * </ul>
+ * Moves played by the computer are sent as <code>PLAY &lt;side&gt; &lt;square&gt;</code>,
+ * passes as <code>PASS &lt;side&gt;</code>, a human to move as
+ * <code>TURN &lt;side&gt;</code> and the end of the game as
+ * <code>OVER &lt;white&gt; &lt;black&gt;</code> with the pieces of each side.
+ *
+ * The server also carries a client which puts it under load, opening a number
+ * of sessions at once in which a human plays random moves against the given
+ * computer player, and prints the games and moves played per second.
+ *
+ * Usage: <code>EngineServer [port] [workers]</code> or
+ * <code>EngineServer load &lt;port&gt; [sessions] [games] [player]</code>
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public final class EngineServer {
+    // The transposition table of each computer player in megabytes, kept small since there are many
+    public static final String TABLE_PROPERTY = "othello.server.table.megabytes";
+    // And the seconds between reports of how busy the server is
+    public static final String REPORT_PROPERTY = "othello.server.report.seconds";
+
+    private static final int DEFAULT_PORT = 7777;
+    private static final int DEFAULT_TABLE_MEGABYTES = 1;
+    private static final int DEFAULT_REPORT_SECONDS = 10;
+    private static final String USAGE =
+            "Usage: EngineServer [port] [workers]\n" +
+            "       EngineServer load <port> [sessions] [games] [player]\n" +
+            "       where a player is human, level:N or timed:MS";
+    private static final String STATS_FORMAT =
+            "%d active sessions, %d opened at %.1f/s, %d moves at %.1f/s";
+
+    private final int threads;
+    private final ExecutorService sessions;
+    private final ExecutorService workers;
+    private final AtomicInteger active;
+    private final AtomicLong opened;
+    private final AtomicLong moves;
+    private final long start;
+
+    private EngineServer(final int workers) {
+        this.threads = workers;
+        this.sessions = newSessionExecutor();
+        this.workers = Executors.newFixedThreadPool(workers, new NamedThreadFactory("othello-worker"));
+        this.active = new AtomicInteger();
+        this.opened = new AtomicLong();
+        this.moves = new AtomicLong();
+        this.start = System.nanoTime();
+    }
+
+    public static void main(final String[] argv) throws IOException, InterruptedException {
+        try {
+            if (argv.length > 0 && argv[0].equals("load")) {
+                // If the port of the server is not given there is nothing to load
+                if (argv.length < 2) { throw new IllegalArgumentException("The port is missing"); }
+                new LoadClient(Integer.parseInt(argv[1]),
+                        argv.length > 2 ? Integer.parseInt(argv[2]) : 100,
+                        argv.length > 3 ? Integer.parseInt(argv[3]) : 1,
+                        argv.length > 4 ? argv[4] : "level:2").run();
+                return;
+            }
+
+            final int port = argv.length > 0 ? Integer.parseInt(argv[0]) : DEFAULT_PORT;
+            final int workers = argv.length > 1 ? Integer.parseInt(argv[1]) :
+                Runtime.getRuntime().availableProcessors();
+            new EngineServer(workers).serve(port);
+        } catch (final IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+    }
+
+    /* Private methods */
+    private String getStats() {
+        final double seconds = Math.max(1, System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+        return format(STATS_FORMAT, active.get(), opened.get(), opened.get() / seconds,
+                moves.get(), moves.get() / seconds);
+    }
+
+    /**
+     * Accepts connections on the given port of the local host for as long as
+     * the server runs, starting a session for each.
+     */
+    private void serve(final int port) throws IOException {
+        final ServerSocket server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+        System.out.println(format("Serving on port %d with %d workers, sessions on %s threads",
+                server.getLocalPort(), threads, hasVirtualThreads() ? "virtual" : "platform"));
+        startReports();
+        try {
+            while (true) {
+                final Socket socket = server.accept();
+                opened.incrementAndGet();
+                sessions.execute(new Session(socket));
+            }
+        } finally {
+            server.close();
+            sessions.shutdownNow();
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Prints how busy the server has been at a regular interval, skipping
+     * the intervals in which nothing happened.
+     */
+    private void startReports() {
+        final long interval = Integer.getInteger(REPORT_PROPERTY, DEFAULT_REPORT_SECONDS);
+        final Thread reporter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long lastOpened = 0, lastMoves = 0;
+                try {
+                    while (true) {
+                        TimeUnit.SECONDS.sleep(interval);
+                        final long opened = EngineServer.this.opened.get();
+                        final long moves = EngineServer.this.moves.get();
+                        if (opened == lastOpened && moves == lastMoves && active.get() == 0) { continue; }
+                        System.out.println(format(STATS_FORMAT, active.get(), opened - lastOpened,
+                                (double) (opened - lastOpened) / interval, moves - lastMoves,
+                                (double) (moves - lastMoves) / interval));
+                        lastOpened = opened;
+                        lastMoves = moves;
+                    }
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "othello-reporter");
+        reporter.setDaemon(true);
+        reporter.start();
+    }
+
+    /* Private static methods */
+    private static boolean hasVirtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (final NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns an executor which starts a virtual thread for each session, or
+     * a platform thread where the virtual machine has no virtual threads.
+     */
+    private static ExecutorService newSessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (final ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(new NamedThreadFactory("othello-session"));
+        }
+    }
+
+    /**
+     * Returns the computer player described by the given name for the given
+     * {@link Side}, or null for a human.
+     *
+     * @throws IllegalArgumentException if the player is not known
+     */
+    private static ComputerPlayer newPlayer(final String name, final Side side)
+            throws IllegalArgumentException {
+        if (name.equals("human")) { return null; }
+
+        final int colon = name.indexOf(':');
+        final int strength;
+        try {
+            strength = colon < 0 ? 0 : Integer.parseInt(name.substring(colon + 1));
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException(format("%s does not name a strength", name));
+        }
+        // If the player has no strength an exception is thrown
+        if (strength < 1) { throw new IllegalArgumentException(format("%s does not name a strength", name)); }
+
+        final int megabytes = Integer.getInteger(TABLE_PROPERTY, DEFAULT_TABLE_MEGABYTES);
+        final Strategy strategy;
+        if (name.startsWith("level:")) {
+            // The workers already bound how many searches run at once, so none is shared
+            strategy = new Negamax(strength, megabytes, 1);
+        } else if (name.startsWith("timed:")) {
+            strategy = new TimedNegamax(strength, megabytes, 1, Negamax.newEvaluator());
+        } else {
+            // If the player is not known an exception is thrown
+            throw new IllegalArgumentException(format("%s is not a known player", name));
+        }
+        final ComputerPlayer player = new ComputerPlayer(BookStrategy.wrap(strategy),
+                new EndgameSolver(), side);
+        player.setMonitor(name);
+        return player;
+    }
+
+    /* Private classes */
+    /**
+     * {@link Session} plays the games of a single client, reading its commands
+     * and answering them until it quits or disconnects.
+     */
+    private final class Session implements Runnable {
+        private final Socket socket;
+        private final Bitboard board;
+        private final Map<Side, ComputerPlayer> players;
+
+        private PrintWriter out;
+        private Side current;
+
+        private Session(final Socket socket) {
+            this.socket = socket;
+            this.board = new Bitboard();
+            this.players = new EnumMap<Side, ComputerPlayer>(Side.class);
+        }
+
+        @Override
+        public void run() {
+            active.incrementAndGet();
+            try {
+                final BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII));
+                for (String line = in.readLine(); line != null; line = in.readLine()) {
+                    final String[] words = line.trim().split("\\s+");
+                    final boolean quit = words[0].equalsIgnoreCase("QUIT");
+                    try {
+                        handle(words);
+                    } catch (final IllegalArgumentException e) {
+                        out.println("ERROR " + e.getMessage());
+                    }
+                    out.flush();
+                    if (quit) { break; }
+                }
+            } catch (final IOException e) {
+                // The client has gone away, which ends the session
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                active.decrementAndGet();
+                try {
+                    socket.close();
+                } catch (final IOException e) {
+                    // There is nothing left to do with the socket
+                }
+            }
+        }
+
+        /* Private methods */
+        /**
+         * Plays until a human is to move or the game is over, searching for
+         * the moves of the computer players on the shared workers.
+         */
+        private void advance() throws InterruptedException {
+            while (true) {
+                if (board.isGameOver()) {
+                    out.println(format("OVER %d %d", board.count(Side.WHITE), board.count(Side.BLACK)));
+                    current = null;
+                    return;
+                }
+                if (!board.hasMoves(current)) {
+                    out.println("PASS " + current);
+                } else {
+                    final ComputerPlayer player = players.get(current);
+                    if (player == null) {
+                        out.println("TURN " + current);
+                        return;
+                    }
+                    final Move move = search(player);
+                    board.makeMove(current, move.getPosition());
+                    moves.incrementAndGet();
+                    out.println(format("PLAY %s %s", current, Positions.name(move.getPosition())));
+                }
+                current = current.getOpponent();
+            }
+        }
+
+        private void handle(final String[] words) throws InterruptedException {
+            final String command = words[0].toUpperCase();
+            if (command.equals("NEW")) {
+                // If both players are not named an exception is thrown
+                if (words.length < 3) { throw new IllegalArgumentException("NEW needs two players"); }
+                final ComputerPlayer white = newPlayer(words[1], Side.WHITE);
+                final ComputerPlayer black = newPlayer(words[2], Side.BLACK);
+                players.clear();
+                if (white != null) { players.put(Side.WHITE, white); }
+                if (black != null) { players.put(Side.BLACK, black); }
+                board.newGame();
+                current = Side.WHITE;
+                advance();
+            } else if (command.equals("MOVE")) {
+                // If it is not a human's turn or the move cannot be played an exception is thrown
+                if (current == null) { throw new IllegalArgumentException("There is no game in progress"); }
+                if (words.length < 2 || words[1].length() != 2) {
+                    throw new IllegalArgumentException("MOVE needs a square such as f5");
+                }
+                final String name = words[1].toLowerCase();
+                final int move = Positions.parse(name.charAt(0), name.charAt(1));
+                if (move < 0 || !board.isValidMove(current, move)) {
+                    throw new IllegalArgumentException(format("%s is not a legal move", name));
+                }
+                board.makeMove(current, move);
+                moves.incrementAndGet();
+                current = current.getOpponent();
+                advance();
+            } else if (command.equals("MOVES")) {
+                final StringBuilder builder = new StringBuilder("OK");
+                long legal = current == null ? 0 : board.getMoves(current);
+                while (legal != 0) {
+                    builder.append(' ').append(Positions.name(Long.numberOfTrailingZeros(legal)));
+                    legal &= legal - 1;
+                }
+                out.println(builder);
+            } else if (command.equals("BOARD")) {
+                for (int row = 0; row < Bitboard.SIZE; row++) {
+                    final char[] squares = new char[Bitboard.SIZE];
+                    for (int column = 0; column < Bitboard.SIZE; column++) {
+                        final Side side = board.getSide(Bitboard.square(row, column));
+                        squares[column] = side == null ? '-' : side.toString().charAt(0);
+                    }
+                    out.println(squares);
+                }
+                out.println("OK");
+            } else if (command.equals("STATS")) {
+                out.println("OK " + getStats());
+            } else if (command.equals("QUIT")) {
+                out.println("BYE");
+            } else {
+                // If the command is not known an exception is thrown
+                throw new IllegalArgumentException(format("%s is not a known command", words[0]));
+            }
+        }
+
+        /**
+         * Waits for the given player to choose its move on one of the shared
+         * workers.
+         */
+        private Move search(final ComputerPlayer player) throws InterruptedException {
+            final Bitboard snapshot = new Bitboard(board);
+            try {
+                return workers.submit(new Callable<Move>() {
+                    @Override
+                    public Move call() { return player.getBestMove(snapshot); }
+                }).get();
+            } catch (final ExecutionException e) {
+                throw new IllegalStateException("The search failed", e.getCause());
+            }
+        }
+    }
+
+    /* Static classes */
+    /**
+     * {@link LoadClient} opens a number of sessions at once, in each of which
+     * a human makes random moves against a computer player, and prints how
+     * many games and moves were played per second.
+     */
+    private static final class LoadClient {
+        private final int port;
+        private final int sessions;
+        private final int games;
+        private final String player;
+        private final AtomicLong played;
+        private final AtomicLong moves;
+        private final AtomicInteger failed;
+
+        private LoadClient(final int port, final int sessions, final int games, final String player) {
+            this.port = port;
+            this.sessions = sessions;
+            this.games = games;
+            this.player = player;
+            this.played = new AtomicLong();
+            this.moves = new AtomicLong();
+            this.failed = new AtomicInteger();
+        }
+
+        private void run() throws InterruptedException {
+            final List<Thread> threads = new ArrayList<Thread>();
+            final long start = System.nanoTime();
+            for (int session = 0; session < sessions; session++) {
+                final long seed = session;
+                final Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() { play(new Random(seed)); }
+                }, "othello-client-" + session);
+                threads.add(thread);
+                thread.start();
+            }
+            for (final Thread thread : threads) { thread.join(); }
+
+            final double seconds = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+            System.out.println(format("%d sessions played %d games and %d moves in %.1f s, " +
+                    "%.1f sessions/s, %.1f games/s, %.1f moves/s, %d failed",
+                    sessions, played.get(), moves.get(), seconds, sessions / seconds,
+                    played.get() / seconds, moves.get() / seconds, failed.get()));
+        }
+
+        /**
+         * Plays the games of one session, with the human taking white in even
+         * games and black in odd ones.
+         */
+        private void play(final Random random) {
+            try {
+                final Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+                try {
+                    final BufferedReader in = new BufferedReader(
+                            new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                    final PrintWriter out = new PrintWriter(
+                            new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII), true);
+                    for (int game = 0; game < games; game++) {
+                        String status = send(in, out, game % 2 == 0 ? "NEW human " + player : "NEW " + player + " human");
+                        while (status.startsWith("TURN")) {
+                            final String[] legal = send(in, out, "MOVES").split(" ");
+                            status = send(in, out, "MOVE " + legal[1 + random.nextInt(legal.length - 1)]);
+                            // If the move was refused the session has failed
+                            if (status.startsWith("ERROR")) { throw new IOException(status); }
+                            moves.incrementAndGet();
+                        }
+                        // If the game did not end properly the session has failed
+                        if (!status.startsWith("OVER")) { throw new IOException(status); }
+                        played.incrementAndGet();
+                    }
+                    send(in, out, "QUIT");
+                } finally {
+                    socket.close();
+                }
+            } catch (final IOException e) {
+                failed.incrementAndGet();
+                System.err.println(format("%s: %s", Thread.currentThread().getName(), e.getMessage()));
+            }
+        }
+
+        /**
+         * Sends the given command and returns the line which ends its answer,
+         * counting the moves played along the way.
+         */
+        private String send(final BufferedReader in, final PrintWriter out, final String command)
+                throws IOException {
+            out.println(command);
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                if (line.startsWith("PLAY")) {
+                    moves.incrementAndGet();
+                } else if (isFinal(line)) {
+                    return line;
+                }
+            }
+            throw new IOException("The server closed the session");
+        }
+
+        private static boolean isFinal(final String line) {
+            return line.startsWith("OK") || line.startsWith("TURN") || line.startsWith("OVER") ||
+                line.startsWith("ERROR") || line.startsWith("BYE");
+        }
+    }
+
+    /**
+     * {@link NamedThreadFactory} names the threads it makes after what they
+     * do and marks them as daemons so that they never keep the server alive.
+     */
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count;
+
+        private NamedThreadFactory(final String name) {
+            this.name = name;
+            this.count = new AtomicInteger();
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, name + "-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.mattforni.games.othello.tools;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.mattforni.games.othello.players.ai.PatternEvaluator;
+import com.mattforni.games.othello.players.ai.WeightedEvaluator;
+
+/**
+ * {@link PatternWeights} writes a starting set of weights for the
+ * {@link PatternEvaluator}, derived from the square table of the
+ * {@link WeightedEvaluator}, so that the evaluator may be used before any
+ * weights have been learned.
+ *
+ * Usage: <code>PatternWeights [file]</code>
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public final class PatternWeights {
+    private PatternWeights() {}
+
+    public static void main(final String[] argv) throws IOException {
+        final File file = new File(argv.length > 0 ? argv[0] :
+            System.getProperty(PatternEvaluator.WEIGHTS_PROPERTY, "patterns.bin"));
+        PatternEvaluator.write(file, PatternEvaluator.seed(WeightedEvaluator.getSquareWeights()));
+        System.out.println(String.format("Wrote %d weights in %d phases to %s",
+                PatternEvaluator.ENTRIES, PatternEvaluator.PHASES, file));
+    }
+}
@@ -0,0 +1,162 @@
+package com.mattforni.games.othello.tools;
+
+import static java.lang.String.format;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.mattforni.games.othello.board.Bitboard;
+import com.mattforni.games.othello.gui.Gameboard;
+import com.mattforni.games.othello.gui.square.Square;
+import com.mattforni.games.othello.players.Player.Side;
+
+/**
+ * {@link Perft} counts every sequence of legal moves to a given depth, which
+ * checks the rules of the game against the published counts and measures how
+ * quickly moves are generated and played. A pass uses up a ply like any other
+ * move, and a finished game counts as a single leaf however many plies were
+ * left, which is the convention of the published counts for the eight by eight
+ * board.
+ *
+ * The moves are counted on a {@link Bitboard} or, with <code>gameboard</code>,
+ * on copies of a {@link Gameboard} whose moves are found with
+ * {@link Square#isValidMove(Side)} and played with {@link Square#flip(Side)}.
+ * The squares walk the lines of pieces themselves rather than asking the
+ * {@link Bitboard} the board keeps, so the two implementations of the rules
+ * can be compared.
+ * Counting starts from the start of the game or after a run of moves such as
+ * <code>f5d6c3</code>, written as in the {@link BookBuilder}, and the counts of
+ * the start of the game are checked against the published ones.
+ *
+ * Usage: <code>Perft [depth] [moves] [bitboard|gameboard]</code>
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public final class Perft {
+    private static final long[] EXPECTED = {
+        1L, 4L, 12L, 56L, 244L, 1396L, 8200L, 55092L, 390216L, 3005288L, 24571284L,
+        212258800L, 1939886636L, 18429641748L, 184042084512L
+    };
+    private static final String USAGE = "Usage: Perft [depth] [moves] [bitboard|gameboard]";
+    private static final String HEADER_FORMAT = "%5s %16s %10s %14s %8s";
+    private static final String ROW_FORMAT = "%5d %16d %10d %14.0f %8s";
+
+    private Perft() {}
+
+    public static void main(final String[] argv) {
+        final int depth = argv.length > 0 ? Integer.parseInt(argv[0]) : 9;
+        final String moves = argv.length > 1 && !argv[1].equals("-") ? argv[1].toLowerCase() : "";
+        final boolean squares = argv.length > 2 && argv[2].equals("gameboard");
+        // If the board is not one which can be counted there is nothing to do
+        if (argv.length > 2 && !squares && !argv[2].equals("bitboard")) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        final Bitboard bitboard = new Bitboard();
+        Side side = Side.WHITE;
+        for (int index = 0; index + 1 < moves.length(); index += 2) {
+            // Passes are not written down, so the opponent moves again
+            if (!bitboard.hasMoves(side)) { side = side.getOpponent(); }
+            final int move = Positions.parse(moves.charAt(index), moves.charAt(index+1));
+            // If a move cannot be played the position is unknown
+            if (move < 0 || !bitboard.isValidMove(side, move)) {
+                System.err.println(format("%s is not a legal move", moves.substring(index, index+2)));
+                System.exit(1);
+            }
+            bitboard.makeMove(side, move);
+            side = side.getOpponent();
+        }
+
+        final Gameboard gameboard = squares ? Positions.toGameboard(bitboard) : null;
+        final boolean checked = moves.isEmpty();
+        System.out.println(format("Counting %s to depth %d on the %s", checked ? "the start" : moves,
+                depth, squares ? "gameboard" : "bitboard"));
+        System.out.println(format(HEADER_FORMAT, "depth", "leaves", "ms", "leaves/sec", "check"));
+
+        boolean failed = false;
+        for (int ply = 1; ply <= depth; ply++) {
+            final long start = System.nanoTime();
+            final long leaves = squares ? perft(gameboard, side, ply) :
+                perft(bitboard.get(side), bitboard.get(side.getOpponent()), ply);
+            final long elapsed = Math.max(1, System.nanoTime() - start);
+
+            String check = "";
+            if (checked && ply < EXPECTED.length) {
+                check = leaves == EXPECTED[ply] ? "ok" : format("expected %d", EXPECTED[ply]);
+                failed |= leaves != EXPECTED[ply];
+            }
+            System.out.println(format(ROW_FORMAT, ply, leaves, TimeUnit.NANOSECONDS.toMillis(elapsed),
+                    leaves * (double) TimeUnit.SECONDS.toNanos(1) / elapsed, check));
+        }
+        if (failed) { System.exit(1); }
+    }
+
+    /* Private static methods */
+    /**
+     * Counts the leaves below the given position of the given player, where
+     * the opponent has the other pieces.
+     */
+    private static long perft(final long player, final long opponent, final int depth) {
+        long moves = Bitboard.moves(player, opponent);
+        // The last ply is only counted, whether it is a pass, a finished game or a move
+        if (depth == 1) { return moves == 0 ? 1 : Long.bitCount(moves); }
+
+        if (moves == 0) {
+            // If neither side can move the game is over, otherwise this side passes
+            if (Bitboard.moves(opponent, player) == 0) { return 1; }
+            return perft(opponent, player, depth-1);
+        }
+
+        long leaves = 0;
+        while (moves != 0) {
+            final int move = Long.numberOfTrailingZeros(moves);
+            moves &= moves - 1;
+            final long flipped = Bitboard.flips(player, opponent, move);
+            leaves += perft(opponent ^ flipped, player | flipped | (1L << move), depth-1);
+        }
+        return leaves;
+    }
+
+    /**
+     * Counts the leaves below the given position of the given {@link Side},
+     * playing each move on a copy of the board with {@link Square#flip(Side)}.
+     */
+    private static long perft(final Gameboard board, final Side side, final int depth) {
+        if (depth == 0) { return 1; }
+
+        final Side opponent = side.getOpponent();
+        final List<Square> moves = findMoves(board, side);
+        if (moves.isEmpty()) {
+            // If neither side can move the game is over, otherwise this side passes
+            if (findMoves(board, opponent).isEmpty()) { return 1; }
+            return perft(board, opponent, depth-1);
+        }
+
+        long leaves = 0;
+        for (final Square square : moves) {
+            final Gameboard child = new Gameboard(board);
+            child.get(square.getRow(), square.getColumn()).flip(side);
+            leaves += perft(child, opponent, depth-1);
+        }
+        return leaves;
+    }
+
+    /**
+     * Returns the squares of the given board which are valid moves for the
+     * given {@link Side}, as found by each square with
+     * {@link Square#isValidMove(Side)}.
+     */
+    private static List<Square> findMoves(final Gameboard board, final Side side) {
+        final List<Square> moves = new ArrayList<Square>();
+        for (int row = 1; row < board.numRows()-1; row++) {
+            for (int column = 1; column < board.numColumns()-1; column++) {
+                final Square square = board.get(row, column);
+                if (square.isValidMove(side)) { moves.add(square); }
+            }
+        }
+        return moves;
+    }
+}
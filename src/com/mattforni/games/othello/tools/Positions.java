@@ -0,0 +1,98 @@
+package com.mattforni.games.othello.tools;
+
+import java.util.Random;
+
+import com.mattforni.games.othello.board.Bitboard;
+import com.mattforni.games.othello.gui.Gameboard;
+import com.mattforni.games.othello.players.Player.Side;
+
+/**
+ * {@link Positions} generates reproducible positions for the command line tools
+ * by playing random moves from the start of the game. A position is only
+ * returned once the requested number of empty squares is reached with the side
+ * to move having at least one move. It also translates between the positions
+ * of the tools and those of the {@link Gameboard} and of written games.
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+final class Positions {
+    private Positions() {}
+
+    /**
+     * Plays random moves until the board has the given number of empty squares
+     * and returns the side to move, or null if the game ended first. White
+     * moves first, as it does in the gui.
+     */
+    static Side play(final Bitboard board, final Random random, final int empties) {
+        board.newGame();
+        Side side = Side.WHITE;
+        while (board.countEmpty() > empties) {
+            final long moves = board.getMoves(side);
+            if (moves == 0) {
+                // If neither side can move the game is over
+                if (!board.hasMoves(side.getOpponent())) { return null; }
+            } else {
+                board.makeMove(side, pick(moves, random));
+            }
+            side = side.getOpponent();
+        }
+        if (!board.hasMoves(side)) { side = side.getOpponent(); }
+        return board.hasMoves(side) ? side : null;
+    }
+
+    /**
+     * Fills the given arrays with reproducible positions with the given number
+     * of empty squares and their sides to move.
+     */
+    static void generate(final long seed, final int empties, final Bitboard[] boards, final Side[] sides) {
+        final Random random = new Random(seed);
+        for (int index = 0; index < boards.length; index++) {
+            final Bitboard board = new Bitboard();
+            Side side = play(board, random, empties);
+            while (side == null) { side = play(board, random, empties); }
+            boards[index] = board;
+            sides[index] = side;
+        }
+    }
+
+    static int pick(long moves, final Random random) {
+        for (int skip = random.nextInt(Long.bitCount(moves)); skip > 0; skip--) {
+            moves &= moves - 1;
+        }
+        return Long.numberOfTrailingZeros(moves);
+    }
+
+    /**
+     * Returns the bitboard square of the given written coordinates, where the
+     * letter is the column and the digit the row, or -1 if they are off the board.
+     */
+    static int parse(final char column, final char row) {
+        if (column < 'a' || column > 'h' || row < '1' || row > '8') { return -1; }
+        return Bitboard.square(row - '1', column - 'a');
+    }
+
+    /**
+     * Returns the written coordinates of the given bitboard square, such as
+     * <code>f5</code>, which {@link #parse(char, char)} reads back.
+     */
+    static String name(final int square) {
+        return new String(new char[] {
+            (char) ('a' + Bitboard.column(square)), (char) ('1' + Bitboard.row(square))
+        });
+    }
+
+    /**
+     * Returns a {@link Gameboard} holding the same pieces as the given board.
+     */
+    static Gameboard toGameboard(final Bitboard bitboard) {
+        final Gameboard gameboard = new Gameboard();
+        for (int square = 0; square < Bitboard.SQUARES; square++) {
+            final Side side = bitboard.getSide(square);
+            if (side != null) {
+                gameboard.setPiece(side, Bitboard.row(square)+1, Bitboard.column(square)+1);
+            }
+        }
+        return gameboard;
+    }
+}
@@ -0,0 +1,156 @@
+package com.mattforni.games.othello.tools;
+
+import static java.lang.String.format;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import com.mattforni.games.othello.board.Bitboard;
+import com.mattforni.games.othello.board.Mailbox;
+import com.mattforni.games.othello.players.Player.Side;
+import com.mattforni.games.othello.records.GameRecord;
+import com.mattforni.games.othello.records.GameRecordReader;
+
+/**
+ * {@link Replay} streams a file of {@link GameRecord}s through the rules of
+ * the game, checking that every move was legal, that a side only passed when
+ * it had no move, that the game really was over and that the pieces match the
+ * recorded result. Games on the standard board are replayed on the pieces of a
+ * {@link Bitboard} directly and games on other boards on a {@link Mailbox}, so
+ * the records are replayed about as quickly as they can be read. The number of
+ * games and moves, the results and how quickly they were replayed are printed
+ * at the end, along with the first few games which broke the rules.
+ *
+ * Usage: <code>Replay &lt;records|-&gt;</code>
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public final class Replay {
+    private static final String USAGE = "Usage: Replay <records|->";
+    // The number of games which broke the rules that are described in full
+    private static final int REPORTED = 10;
+    private static final Bitboard START = new Bitboard();
+
+    private Replay() {}
+
+    public static void main(final String[] argv) throws IOException {
+        // If the records are not named there is nothing to replay
+        if (argv.length < 1) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        final InputStream input = argv[0].equals("-") ? System.in : new FileInputStream(argv[0]);
+        final GameRecordReader reader = new GameRecordReader(input);
+        final GameRecord record = new GameRecord();
+        Mailbox mailbox = null;
+        long games = 0, moves = 0, broken = 0, white = 0, black = 0;
+        final long start = System.nanoTime();
+        try {
+            while (reader.read(record)) {
+                games++;
+                moves += record.getMoveCount();
+
+                final String error;
+                if (record.getSize() == Bitboard.SIZE) {
+                    error = replay(record);
+                } else {
+                    if (mailbox == null || mailbox.getSize() != record.getSize()) {
+                        mailbox = new Mailbox(record.getSize());
+                    }
+                    error = replay(record, mailbox);
+                }
+
+                if (error != null) {
+                    if (broken++ < REPORTED) { System.out.println(format("Game %d: %s", games, error)); }
+                } else if (record.getWinner() == Side.WHITE) {
+                    white++;
+                } else if (record.getWinner() == Side.BLACK) {
+                    black++;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        final double seconds = Math.max(1, System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+        System.out.println(format("%d games, %d moves in %.2f s, %.0f games/s, %.0f moves/s",
+                games, moves, seconds, games / seconds, moves / seconds));
+        System.out.println(format("White won %d, black won %d, drawn %d, broken %d",
+                white, black, games - broken - white - black, broken));
+        if (broken > 0) { System.exit(1); }
+    }
+
+    /* Private static methods */
+    /**
+     * Replays the given game of the standard board, returning what was wrong
+     * with it or null if it was played by the rules.
+     */
+    private static String replay(final GameRecord record) {
+        long player = START.get(Side.WHITE);
+        long opponent = START.get(Side.BLACK);
+        for (int index = 0; index < record.getMoveCount(); index++) {
+            final int move = record.getMove(index);
+            final long legal = Bitboard.moves(player, opponent);
+            if (move == GameRecord.PASS) {
+                // If the side had a move it was not allowed to pass
+                if (legal != 0) { return format("move %d passed with moves to play", index+1); }
+            } else {
+                // If the square was not a move the game broke the rules
+                if ((legal & (1L << move)) == 0) { return format("move %d is illegal", index+1); }
+                final long flipped = Bitboard.flips(player, opponent, move);
+                player |= flipped | (1L << move);
+                opponent ^= flipped;
+            }
+            final long swap = player;
+            player = opponent;
+            opponent = swap;
+        }
+
+        // After an even number of moves white is back to move
+        final boolean whiteToMove = record.getMoveCount() % 2 == 0;
+        final long whites = whiteToMove ? player : opponent;
+        final long blacks = whiteToMove ? opponent : player;
+        if (Bitboard.moves(player, opponent) != 0 || Bitboard.moves(opponent, player) != 0) {
+            return "the game is not over";
+        }
+        return check(record, Long.bitCount(whites), Long.bitCount(blacks));
+    }
+
+    /**
+     * Replays the given game on the given {@link Mailbox} of the same size,
+     * returning what was wrong with it or null if it was played by the rules.
+     */
+    private static String replay(final GameRecord record, final Mailbox board) {
+        final int size = record.getSize();
+        board.newGame();
+        Side side = Side.WHITE;
+        for (int index = 0; index < record.getMoveCount(); index++) {
+            final int move = record.getMove(index);
+            if (move == GameRecord.PASS) {
+                // If the side had a move it was not allowed to pass
+                if (board.hasMoves(side)) { return format("move %d passed with moves to play", index+1); }
+            } else {
+                final int square = board.square(move / size + 1, move % size + 1);
+                // If the square was not a move the game broke the rules
+                if (!board.isValidMove(side, square)) { return format("move %d is illegal", index+1); }
+                board.makeMove(side, square);
+            }
+            side = side.getOpponent();
+        }
+
+        if (!board.isGameOver()) { return "the game is not over"; }
+        return check(record, board.count(Side.WHITE), board.count(Side.BLACK));
+    }
+
+    private static String check(final GameRecord record, final int white, final int black) {
+        if (white != record.getPieces(Side.WHITE) || black != record.getPieces(Side.BLACK)) {
+            return format("the game ended %d-%d but was recorded as %d-%d", white, black,
+                    record.getPieces(Side.WHITE), record.getPieces(Side.BLACK));
+        }
+        return null;
+    }
+}
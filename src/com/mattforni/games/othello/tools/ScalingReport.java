@@ -0,0 +1,68 @@
+package com.mattforni.games.othello.tools;
+
+import static java.lang.String.format;
+
+import java.util.concurrent.TimeUnit;
+
+import com.mattforni.games.othello.board.Bitboard;
+import com.mattforni.games.othello.players.Player.Side;
+import com.mattforni.games.othello.players.ai.Negamax;
+
+/**
+ * {@link ScalingReport} measures how the parallel {@link Negamax} search scales
+ * with the number of threads. A fixed set of midgame positions is searched to
+ * a fixed depth with one thread, then two and so on, and for each the time to
+ * depth, the nodes per second and the speedup over a single thread are printed.
+ * Each search starts with an empty table so that the runs are comparable.
+ *
+ * Usage: <code>ScalingReport [threads] [depth] [positions] [empties]</code>
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public final class ScalingReport {
+    private static final long SEED = 42;
+    private static final int TABLE_MEGABYTES = 64;
+    private static final String HEADER_FORMAT = "%7s %12s %14s %12s %8s %10s";
+    private static final String ROW_FORMAT = "%7d %12.1f %14d %12.0f %8.2f %9.0f%%";
+
+    private ScalingReport() {}
+
+    public static void main(final String[] argv) {
+        final int threads = argv.length > 0 ? Integer.parseInt(argv[0]) :
+            Runtime.getRuntime().availableProcessors();
+        final int depth = argv.length > 1 ? Integer.parseInt(argv[1]) : 9;
+        final int count = argv.length > 2 ? Integer.parseInt(argv[2]) : 8;
+        final int empties = argv.length > 3 ? Integer.parseInt(argv[3]) : 40;
+
+        final Bitboard[] boards = new Bitboard[count];
+        final Side[] sides = new Side[count];
+        Positions.generate(SEED, empties, boards, sides);
+
+        System.out.println(format("Searching %d positions with %d empties to depth %d",
+                count, empties, depth));
+        System.out.println(format(HEADER_FORMAT,
+                "threads", "ms/position", "nodes", "nodes/sec", "speedup", "efficiency"));
+
+        double baseline = 0;
+        for (int used = 1; used <= threads; used++) {
+            long elapsed = 0;
+            long nodes = 0;
+            for (int index = 0; index < count; index++) {
+                final Negamax negamax = new Negamax(depth, TABLE_MEGABYTES, used);
+                final long start = System.nanoTime();
+                negamax.getBestMove(new Bitboard(boards[index]), sides[index]);
+                elapsed += System.nanoTime() - start;
+                nodes += negamax.getNodes();
+                negamax.shutdown();
+            }
+
+            final double millis = (double) elapsed / TimeUnit.MILLISECONDS.toNanos(1) / count;
+            if (used == 1) { baseline = millis; }
+            final double speedup = baseline / millis;
+            System.out.println(format(ROW_FORMAT, used, millis, nodes,
+                    nodes / (elapsed / (double) TimeUnit.SECONDS.toNanos(1)),
+                    speedup, 100 * speedup / used));
+        }
+    }
+}
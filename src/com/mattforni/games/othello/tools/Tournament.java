@@ -0,0 +1,374 @@
+package com.mattforni.games.othello.tools;
+
+import static java.lang.String.format;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.mattforni.games.othello.board.Bitboard;
+import com.mattforni.games.othello.players.ComputerPlayer;
+import com.mattforni.games.othello.players.Player.Side;
+import com.mattforni.games.othello.players.ai.BookStrategy;
+import com.mattforni.games.othello.players.ai.DiscEvaluator;
+import com.mattforni.games.othello.players.ai.EndgameSolver;
+import com.mattforni.games.othello.players.ai.Evaluator;
+import com.mattforni.games.othello.players.ai.Minimax;
+import com.mattforni.games.othello.players.ai.Negamax;
+import com.mattforni.games.othello.players.ai.PatternEvaluator;
+import com.mattforni.games.othello.players.ai.Strategy;
+import com.mattforni.games.othello.players.ai.Strategy.Move;
+import com.mattforni.games.othello.players.ai.TimedNegamax;
+import com.mattforni.games.othello.players.ai.TranspositionTable;
+import com.mattforni.games.othello.players.ai.WeightedEvaluator;
+
+/**
+ * {@link Tournament} plays a match between two computer players without the
+ * gui, spreading the games over every core. Each game starts from a position
+ * reached by a few random plies, and every such opening is played twice with
+ * the players swapping colours, so that neither player gains from a lucky
+ * opening. Each thread has players of its own, which it keeps from game to game.
+ * Once the match is over the score of the first player is printed with its 95%
+ * confidence interval, both as a fraction of the points and as a difference in
+ * Elo, together with the average nodes searched and time taken by each player
+ * per move.
+ *
+ * Players are given as a strategy and its strength, <code>level:N</code> for a
+ * {@link Negamax} search N plies deep, <code>timed:MS</code> for a
+ * {@link TimedNegamax} search of MS milliseconds or <code>minimax:N</code> for
+ * a {@link Minimax} search, optionally followed by <code>,disc</code>,
+ * <code>,weighted</code> or <code>,pattern[=file]</code> to choose the
+ * {@link Evaluator}, <code>,nobook</code> to ignore the opening book and
+ * <code>,nosolve</code> to never solve the endgame.
+ *
+ * Usage: <code>Tournament &lt;player&gt; &lt;player&gt; [games] [threads] [plies] [seed]</code>
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public final class Tournament {
+    private static final long SEED = 42;
+    private static final double Z = 1.96;
+    private static final int REPORTS = 10;
+    private static final String USAGE =
+            "Usage: Tournament <player> <player> [games] [threads] [plies] [seed]\n" +
+            "       where a player is level:N, timed:MS or minimax:N, optionally followed by\n" +
+            "       ,disc ,weighted ,pattern[=file] ,nobook or ,nosolve";
+    private static final String HEADER_FORMAT = "%-28s %10s %14s %10s";
+    private static final String ROW_FORMAT = "%-28s %10d %14.0f %10.2f";
+
+    private final Engine[] engines;
+    private final int games;
+    private final int plies;
+    private final long seed;
+    private final AtomicInteger next;
+    private final List<Strategy> strategies;
+    private final long[] moves, nodes, nanos;
+
+    private int wins, draws, losses, played;
+
+    private Tournament(final Engine first, final Engine second, final int games,
+            final int plies, final long seed) {
+        this.engines = new Engine[] {first, second};
+        this.games = games;
+        this.plies = plies;
+        this.seed = seed;
+        this.next = new AtomicInteger();
+        this.strategies = new ArrayList<Strategy>();
+        this.moves = new long[2];
+        this.nodes = new long[2];
+        this.nanos = new long[2];
+    }
+
+    public static void main(final String[] argv) throws InterruptedException {
+        // If the arguments do not name two players there is no match to play
+        if (argv.length < 2) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        final Engine first, second;
+        try {
+            first = new Engine(argv[0]);
+            second = new Engine(argv[1]);
+        } catch (final IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+            return;
+        }
+
+        final int games = argv.length > 2 ? Integer.parseInt(argv[2]) : 1000;
+        final int threads = argv.length > 3 ? Integer.parseInt(argv[3]) :
+            Runtime.getRuntime().availableProcessors();
+        final int plies = argv.length > 4 ? Integer.parseInt(argv[4]) : 8;
+        final long seed = argv.length > 5 ? Long.parseLong(argv[5]) : SEED;
+
+        System.out.println(format("%s vs %s, %d games from %d openings of %d plies on %d threads",
+                first, second, games, (games + 1) / 2, plies, threads));
+        final Tournament tournament = new Tournament(first, second, games, plies, seed);
+        final long start = System.nanoTime();
+        tournament.play(threads);
+        tournament.print(System.nanoTime() - start);
+    }
+
+    /* Private methods */
+    /**
+     * Plays the given game of the match between the given players, returning
+     * the number of pieces by which the first player won.
+     */
+    private int play(final int game, final Bitboard board, final ComputerPlayer[] players,
+            final long[] moves, final long[] nodes, final long[] nanos) {
+        // Both games of an opening start from the same position
+        final Random random = new Random(seed + game / 2);
+        Side side = Positions.play(board, random, Bitboard.SQUARES - 4 - plies);
+        while (side == null) { side = Positions.play(board, random, Bitboard.SQUARES - 4 - plies); }
+
+        // The first player is white in the first game of each opening and black in the second
+        final Side first = game % 2 == 0 ? Side.WHITE : Side.BLACK;
+        while (!board.isGameOver()) {
+            if (board.hasMoves(side)) {
+                final int player = side == first ? 0 : 1;
+                final long start = System.nanoTime();
+                final Move move = players[player].getBestMove(board);
+                nanos[player] += System.nanoTime() - start;
+                nodes[player] += players[player].getNodes();
+                moves[player]++;
+                board.makeMove(side, move.getPosition());
+            }
+            side = side.getOpponent();
+        }
+        return board.count(first) - board.count(first.getOpponent());
+    }
+
+    private void play(final int threads) throws InterruptedException {
+        final Thread[] workers = new Thread[threads];
+        for (int index = 0; index < threads; index++) {
+            workers[index] = new Thread(new Worker(), "tournament-" + index);
+            workers[index].start();
+        }
+        for (final Thread worker : workers) { worker.join(); }
+
+        // Parallel searches keep threads of their own which must be released
+        for (final Strategy strategy : strategies) {
+            final Strategy inner = strategy instanceof BookStrategy ?
+                    ((BookStrategy) strategy).getStrategy() : strategy;
+            if (inner instanceof Negamax) { ((Negamax) inner).shutdown(); }
+        }
+    }
+
+    private synchronized void print(final long elapsed) {
+        final double score = score();
+        final double error = error(score);
+        System.out.println(format("%s: +%d =%d -%d, score %.1f%% +/- %.1f%%, Elo %+.0f [%+.0f, %+.0f]",
+                engines[0], wins, draws, losses, 100 * score, 100 * error,
+                elo(score), elo(score - error), elo(score + error)));
+
+        System.out.println(format(HEADER_FORMAT, "player", "moves", "nodes/move", "ms/move"));
+        for (int player = 0; player < engines.length; player++) {
+            final long count = Math.max(1, moves[player]);
+            System.out.println(format(ROW_FORMAT, engines[player], moves[player],
+                    (double) nodes[player] / count,
+                    (double) nanos[player] / count / TimeUnit.MILLISECONDS.toNanos(1)));
+        }
+        System.out.println(format("Played %d games in %d s", played, TimeUnit.NANOSECONDS.toSeconds(elapsed)));
+    }
+
+    private synchronized void record(final int margin, final long[] moves, final long[] nodes,
+            final long[] nanos) {
+        if (margin > 0) {
+            wins++;
+        } else if (margin < 0) {
+            losses++;
+        } else {
+            draws++;
+        }
+        for (int player = 0; player < engines.length; player++) {
+            this.moves[player] += moves[player];
+            this.nodes[player] += nodes[player];
+            this.nanos[player] += nanos[player];
+        }
+
+        played++;
+        if (games >= REPORTS && played % (games / REPORTS) == 0 && played < games) {
+            final double score = score();
+            System.out.println(format("%d/%d games: +%d =%d -%d, score %.1f%% +/- %.1f%%",
+                    played, games, wins, draws, losses, 100 * score, 100 * error(score)));
+        }
+    }
+
+    private synchronized void register(final Strategy strategy) {
+        strategies.add(strategy);
+    }
+
+    /**
+     * Returns the half width of the confidence interval of the given score,
+     * using the variance of the points won in each game.
+     */
+    private double error(final double score) {
+        final int count = wins + draws + losses;
+        if (count == 0) { return 0; }
+        final double variance = (wins * (1 - score) * (1 - score) +
+                draws * (0.5 - score) * (0.5 - score) + losses * score * score) / count;
+        return Z * Math.sqrt(variance / count);
+    }
+
+    /**
+     * Returns the fraction of the points won by the first player, counting
+     * draws as half a point.
+     */
+    private double score() {
+        final int count = wins + draws + losses;
+        return count == 0 ? 0.5 : (wins + 0.5 * draws) / count;
+    }
+
+    /* Private static methods */
+    /**
+     * Returns the difference in Elo which gives the expected score, which is
+     * unbounded once the score reaches a whole win or loss.
+     */
+    private static double elo(final double score) {
+        if (score <= 0) { return Double.NEGATIVE_INFINITY; }
+        if (score >= 1) { return Double.POSITIVE_INFINITY; }
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    /* Private classes */
+    /**
+     * {@link Worker} plays games of the match until there are none left, with
+     * players which belong to its thread alone.
+     */
+    private final class Worker implements Runnable {
+        @Override
+        public void run() {
+            final Strategy[] contestants = new Strategy[engines.length];
+            final EndgameSolver[] solvers = new EndgameSolver[engines.length];
+            for (int player = 0; player < engines.length; player++) {
+                contestants[player] = engines[player].newStrategy();
+                solvers[player] = engines[player].newSolver();
+                register(contestants[player]);
+            }
+
+            final Bitboard board = new Bitboard();
+            final ComputerPlayer[] players = new ComputerPlayer[engines.length];
+            for (int game = next.getAndIncrement(); game < games; game = next.getAndIncrement()) {
+                final Side first = game % 2 == 0 ? Side.WHITE : Side.BLACK;
+                players[0] = new ComputerPlayer(contestants[0], solvers[0], first);
+                players[1] = new ComputerPlayer(contestants[1], solvers[1], first.getOpponent());
+                // Every game of an engine feeds the same monitor, whichever side it plays
+                for (int player = 0; player < engines.length; player++) {
+                    players[player].setMonitor(engines[player].spec);
+                }
+
+                final long[] moves = new long[engines.length];
+                final long[] nodes = new long[engines.length];
+                final long[] nanos = new long[engines.length];
+                final int margin = play(game, board, players, moves, nodes, nanos);
+                record(margin, moves, nodes, nanos);
+            }
+        }
+    }
+
+    /* Static classes */
+    /**
+     * {@link Engine} describes one of the players of a match, and makes a
+     * fresh strategy and solver for each thread which plays it.
+     */
+    private static final class Engine {
+        private final String spec;
+        private final String kind;
+        private final int strength;
+        private final Evaluator evaluator;
+        private final boolean book;
+        private final boolean solve;
+
+        private Engine(final String spec) throws IllegalArgumentException {
+            final String[] parts = spec.split(",");
+            final int colon = parts[0].indexOf(':');
+            // If the strategy has no strength an exception is thrown
+            if (colon < 0) {
+                throw new IllegalArgumentException(format("%s does not name a strength", spec));
+            }
+
+            this.spec = spec;
+            this.kind = parts[0].substring(0, colon);
+            try {
+                this.strength = Integer.parseInt(parts[0].substring(colon + 1));
+            } catch (final NumberFormatException e) {
+                throw new IllegalArgumentException(format("%s does not name a strength", spec));
+            }
+
+            // If the strategy is not known an exception is thrown
+            if (!kind.equals("level") && !kind.equals("timed") && !kind.equals("minimax")) {
+                throw new IllegalArgumentException(format("%s is not a known strategy", kind));
+            }
+
+            Evaluator evaluator = null;
+            boolean book = true;
+            boolean solve = true;
+            for (int index = 1; index < parts.length; index++) {
+                final String option = parts[index];
+                if (option.equals("nobook")) {
+                    book = false;
+                } else if (option.equals("nosolve")) {
+                    solve = false;
+                } else if (option.equals("disc")) {
+                    evaluator = new DiscEvaluator();
+                } else if (option.equals("weighted")) {
+                    evaluator = new WeightedEvaluator();
+                } else if (option.equals("pattern") || option.startsWith("pattern=")) {
+                    evaluator = loadPatterns(option);
+                } else {
+                    // If the option is not known an exception is thrown
+                    throw new IllegalArgumentException(format("%s is not a known option", option));
+                }
+            }
+
+            // If the evaluator is given to a strategy which cannot use it an exception is thrown
+            if (evaluator != null && kind.equals("minimax")) {
+                throw new IllegalArgumentException("Minimax does not take an evaluator");
+            }
+
+            this.evaluator = evaluator != null ? evaluator : new WeightedEvaluator();
+            this.book = book;
+            this.solve = solve;
+        }
+
+        @Override
+        public String toString() { return spec; }
+
+        /* Private methods */
+        private EndgameSolver newSolver() { return solve ? new EndgameSolver() : null; }
+
+        private Strategy newStrategy() {
+            // Each game already has a core of its own so the search is not shared
+            final int megabytes = Integer.getInteger(Negamax.TABLE_PROPERTY,
+                    TranspositionTable.DEFAULT_MEGABYTES);
+            final Strategy strategy;
+            if (kind.equals("level")) {
+                strategy = new Negamax(strength, megabytes, 1, evaluator.copy());
+            } else if (kind.equals("timed")) {
+                strategy = new TimedNegamax(strength, megabytes, 1, evaluator.copy());
+            } else {
+                strategy = new Minimax(strength);
+            }
+            return book ? BookStrategy.wrap(strategy) : strategy;
+        }
+
+        /* Private static methods */
+        private static Evaluator loadPatterns(final String option) throws IllegalArgumentException {
+            final int equals = option.indexOf('=');
+            try {
+                return equals < 0 ? new PatternEvaluator() :
+                    new PatternEvaluator(new File(option.substring(equals + 1)));
+            } catch (final IOException e) {
+                throw new IllegalArgumentException(
+                        format("Unable to load the pattern weights: %s", e.getMessage()));
+            }
+        }
+    }
+}
@@ -0,0 +1,420 @@
+package com.mattforni.games.othello.tools;
+
+import static java.lang.String.format;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.mattforni.games.othello.board.Bitboard;
+import com.mattforni.games.othello.players.ComputerPlayer;
+import com.mattforni.games.othello.players.Player.Side;
+import com.mattforni.games.othello.players.ai.EndgameSolver;
+import com.mattforni.games.othello.players.ai.Evaluator;
+import com.mattforni.games.othello.players.ai.Negamax;
+import com.mattforni.games.othello.players.ai.PatternEvaluator;
+import com.mattforni.games.othello.players.ai.Strategy.Move;
+import com.mattforni.games.othello.players.ai.WeightedEvaluator;
+import com.mattforni.games.othello.records.GameRecord;
+import com.mattforni.games.othello.records.GameRecordWriter;
+
+/**
+ * {@link WeightTuner} learns the weights of the {@link PatternEvaluator} from
+ * games the computer plays against itself, so that the evaluation improves
+ * without being tuned by hand. Each game starts with a few random plies so
+ * that the games differ, is played out by a {@link Negamax} search of the
+ * given depth and solved exactly once the end is near, with the games spread
+ * over every core. Every position from which the side to move has a move is
+ * kept as a pair of bitboards, labelled from the point of view of black
+ * either with the final result of its game, in pieces scaled to the units of
+ * the evaluation, or with the score of a deeper search.
+ *
+ * The weights are then fitted to the labels by least squares. Each epoch the
+ * positions are split between the threads, which each add up the error of
+ * every weight over their share into an array of their own, and every weight
+ * then moves by the average error of the positions it appears in. One position
+ * in ten is held back, and the weights of the epoch which scored those
+ * positions best are the ones kept, so the fit stops short of learning the
+ * noise of the games it was given. The weights start from those already in the
+ * file, or from the square table of the {@link WeightedEvaluator} when there
+ * are none yet, so running the tuner again carries on learning, with games
+ * played by the weights of the last run. The file is replaced once the fit is
+ * done, and is loaded by every search which is not given an evaluator of its
+ * own.
+ *
+ * Usage: <code>WeightTuner &lt;weights&gt; [games] [depth] [result|search:D] [epochs] [records]</code>,
+ * where the games played may also be added to a file of {@link GameRecord}s.
+ *
+ * @author Matthew Fornaciari <mattforni@gmail.com>
+ */
+
+public final class WeightTuner {
+    private static final String USAGE =
+            "Usage: WeightTuner <weights> [games] [depth] [result|search:D] [epochs] [records]";
+    private static final long SEED = 42;
+    // The random plies which open each game
+    private static final int OPENING_PLIES = 8;
+    // Each piece of a final result is worth about as much as a move of mobility
+    private static final int RESULT_SCALE = 8;
+    // Every tenth position is held back to measure the fit
+    private static final int HOLDOUT = 10;
+    // The fraction of the average error each weight moves by, shared by the patterns of a position
+    private static final double RATE = 2.0 / PatternEvaluator.INSTANCES;
+    // Weights seen in only a few positions move less than those seen in many
+    private static final int SMOOTHING = 4;
+    private static final int REPORTS = 10;
+    private static final int TABLE_MEGABYTES = 4;
+
+    private final int games;
+    private final int depth;
+    private final int labelDepth;
+    private final int threads;
+    private final Evaluator evaluator;
+    private final GameRecordWriter records;
+    private final AtomicInteger next;
+
+    private long[] black, white;
+    private float[] labels;
+    private int size;
+    private int played;
+
+    private WeightTuner(final int games, final int depth, final int labelDepth, final int threads,
+            final Evaluator evaluator, final GameRecordWriter records) {
+        this.games = games;
+        this.depth = depth;
+        this.labelDepth = labelDepth;
+        this.threads = threads;
+        this.evaluator = evaluator;
+        this.records = records;
+        this.next = new AtomicInteger();
+        this.black = new long[1 << 10];
+        this.white = new long[1 << 10];
+        this.labels = new float[1 << 10];
+    }
+
+    public static void main(final String[] argv) throws InterruptedException, IOException {
+        // If the weights are not named there is nowhere to write them
+        if (argv.length < 1) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        final File file = new File(argv[0]);
+        final int games = argv.length > 1 ? Integer.parseInt(argv[1]) : 2000;
+        final int depth = argv.length > 2 ? Integer.parseInt(argv[2]) : 2;
+        final String label = argv.length > 3 ? argv[3] : "result";
+        final int epochs = argv.length > 4 ? Integer.parseInt(argv[4]) : 100;
+        final int threads = Runtime.getRuntime().availableProcessors();
+
+        // If the positions cannot be labelled there is nothing to learn from
+        final int labelDepth = label.equals("result") ? 0 :
+            label.startsWith("search:") ? Integer.parseInt(label.substring(7)) : -1;
+        if (labelDepth < 0) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        // The games are played with the weights learned so far, if there are any
+        final Evaluator evaluator = file.isFile() ? new PatternEvaluator(file) : new WeightedEvaluator();
+        final GameRecordWriter records = argv.length > 5 ? GameRecordWriter.append(new File(argv[5])) : null;
+        final WeightTuner tuner = new WeightTuner(games, depth, labelDepth, threads, evaluator, records);
+        final long start = System.nanoTime();
+        System.out.println(format("Playing %d games at depth %d on %d threads, labelled by %s",
+                games, depth, threads, label));
+        try {
+            tuner.play();
+        } finally {
+            if (records != null) { records.close(); }
+        }
+        System.out.println(format("Kept %d positions in %d s", tuner.size,
+                TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start)));
+
+        final short[] initial = file.isFile() ? PatternEvaluator.read(file) :
+            PatternEvaluator.seed(WeightedEvaluator.getSquareWeights());
+        final short[] weights = tuner.fit(initial, epochs);
+
+        // The new weights replace the old in one step, so a search never reads half of them
+        final File partial = new File(file.getPath() + ".tmp");
+        PatternEvaluator.write(partial, weights);
+        Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        System.out.println(format("Wrote %d weights in %d phases to %s in %d s", PatternEvaluator.ENTRIES,
+                PatternEvaluator.PHASES, file, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start)));
+    }
+
+    /* Private methods */
+    /**
+     * Adds the given positions of a finished game and its record.
+     */
+    private synchronized void add(final long[] blacks, final long[] whites, final float[] scores,
+            final int count, final GameRecord record) throws IOException {
+        if (size + count > labels.length) {
+            final int capacity = Math.max(2*labels.length, size + count);
+            black = Arrays.copyOf(black, capacity);
+            white = Arrays.copyOf(white, capacity);
+            labels = Arrays.copyOf(labels, capacity);
+        }
+        System.arraycopy(blacks, 0, black, size, count);
+        System.arraycopy(whites, 0, white, size, count);
+        System.arraycopy(scores, 0, labels, size, count);
+        size += count;
+
+        if (records != null) { records.write(record); }
+        played++;
+        if (games >= REPORTS && played % (games / REPORTS) == 0 && played < games) {
+            System.out.println(format("%d/%d games, %d positions", played, games, size));
+        }
+    }
+
+    /**
+     * Fits the weights to the labelled positions, starting from the given
+     * weights, and returns those which did best on the positions held back,
+     * rounded to the precision of the file.
+     */
+    private short[] fit(final short[] initial, final int epochs)
+            throws InterruptedException {
+        final double[] weights = new double[initial.length];
+        for (int index = 0; index < weights.length; index++) { weights[index] = initial[index]; }
+        final double[] best = weights.clone();
+        double bestError = Double.POSITIVE_INFINITY;
+        int bestEpoch = 0;
+
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            // The number of training positions in which each weight appears never changes
+            final double[] counts = new double[weights.length];
+            for (final Pass pass : run(pool, weights, true)) {
+                for (int index = 0; index < counts.length; index++) { counts[index] += pass.gradient[index]; }
+            }
+
+            for (int epoch = 1; epoch <= epochs; epoch++) {
+                final List<Pass> passes = run(pool, weights, false);
+                final double[] gradient = passes.get(0).gradient;
+                double trained = 0, held = 0;
+                long trainedCount = 0, heldCount = 0;
+                for (int part = 0; part < passes.size(); part++) {
+                    final Pass pass = passes.get(part);
+                    if (part > 0) {
+                        for (int index = 0; index < gradient.length; index++) { gradient[index] += pass.gradient[index]; }
+                    }
+                    trained += pass.trainedError;
+                    trainedCount += pass.trainedCount;
+                    held += pass.heldError;
+                    heldCount += pass.heldCount;
+                }
+
+                // The errors were measured before this epoch moved the weights
+                if (held < bestError) {
+                    System.arraycopy(weights, 0, best, 0, weights.length);
+                    bestError = held;
+                    bestEpoch = epoch - 1;
+                }
+                for (int index = 0; index < weights.length; index++) {
+                    weights[index] += RATE * gradient[index] / (counts[index] + SMOOTHING);
+                }
+
+                if (epoch == 1 || epoch == epochs || epochs >= REPORTS && epoch % (epochs / REPORTS) == 0) {
+                    System.out.println(format("Epoch %d: error %.1f, held back %.1f", epoch,
+                            Math.sqrt(trained / Math.max(1, trainedCount)),
+                            Math.sqrt(held / Math.max(1, heldCount))));
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        System.out.println(format("Keeping the weights after %d epochs", bestEpoch));
+
+        final short[] rounded = new short[best.length];
+        for (int index = 0; index < best.length; index++) {
+            rounded[index] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(best[index])));
+        }
+        return rounded;
+    }
+
+    /**
+     * Returns the label of the given position, from the point of view of
+     * black, according to a search of the given strategy.
+     */
+    private int label(final Negamax labeller, final Bitboard board, final Side side) {
+        labeller.getTable().clear();
+        int value = labeller.getBestMove(board, side).getValue();
+        // Games which were searched to the end are scored in pieces like the results
+        if (value >= Negamax.WIN) { value = (value - Negamax.WIN) * RESULT_SCALE; }
+        if (value <= -Negamax.WIN) { value = (value + Negamax.WIN) * RESULT_SCALE; }
+        return side == Side.BLACK ? value : -value;
+    }
+
+    private void play() throws InterruptedException {
+        final Thread[] workers = new Thread[threads];
+        final SelfPlay[] players = new SelfPlay[threads];
+        for (int index = 0; index < threads; index++) {
+            players[index] = new SelfPlay();
+            workers[index] = new Thread(players[index], "tuner-" + index);
+            workers[index].start();
+        }
+        for (final Thread worker : workers) { worker.join(); }
+        for (final SelfPlay player : players) {
+            // If a game could not be recorded the positions are incomplete
+            if (player.failure != null) { throw new IllegalStateException("Self-play failed", player.failure); }
+        }
+    }
+
+    /**
+     * Splits the positions between the threads of the given pool, which
+     * either count the positions each weight appears in or add up the error
+     * of each weight with the given weights.
+     */
+    private List<Pass> run(final ExecutorService pool, final double[] weights, final boolean count)
+            throws InterruptedException {
+        final List<Future<Pass>> futures = new ArrayList<Future<Pass>>();
+        final int share = (size + threads - 1) / threads;
+        for (int from = 0; from < size; from += share) {
+            futures.add(pool.submit(new Pass(weights, from, Math.min(size, from + share), count)));
+        }
+
+        final List<Pass> passes = new ArrayList<Pass>();
+        try {
+            for (final Future<Pass> future : futures) { passes.add(future.get()); }
+        } catch (final ExecutionException e) {
+            throw new IllegalStateException("The fit failed", e.getCause());
+        }
+        return passes;
+    }
+
+    /* Private classes */
+    /**
+     * {@link Pass} goes over a share of the positions once, adding up its
+     * results into arrays of its own.
+     */
+    private final class Pass implements Callable<Pass> {
+        private final double[] weights;
+        private final int from, to;
+        private final boolean count;
+        private final double[] gradient;
+
+        private double trainedError, heldError;
+        private long trainedCount, heldCount;
+
+        private Pass(final double[] weights, final int from, final int to, final boolean count) {
+            this.weights = weights;
+            this.from = from;
+            this.to = to;
+            this.count = count;
+            this.gradient = new double[weights.length];
+        }
+
+        @Override
+        public Pass call() {
+            final int[] features = new int[PatternEvaluator.INSTANCES];
+            for (int position = from; position < to; position++) {
+                final boolean held = position % HOLDOUT == 0;
+                if (count && held) { continue; }
+
+                final long blacks = black[position], whites = white[position];
+                final int base = PatternEvaluator.phase(Long.bitCount(~(blacks | whites))) * PatternEvaluator.ENTRIES;
+                PatternEvaluator.features(blacks, whites, features);
+                if (count) {
+                    for (final int feature : features) { gradient[base + feature]++; }
+                    continue;
+                }
+
+                double predicted = 0;
+                for (final int feature : features) { predicted += weights[base + feature]; }
+                final double error = labels[position] - predicted;
+                if (held) {
+                    heldError += error*error;
+                    heldCount++;
+                } else {
+                    trainedError += error*error;
+                    trainedCount++;
+                    for (final int feature : features) { gradient[base + feature] += error; }
+                }
+            }
+            return this;
+        }
+    }
+
+    /**
+     * {@link SelfPlay} plays games against itself until there are none left,
+     * with a search and solver which belong to its thread alone.
+     */
+    private final class SelfPlay implements Runnable {
+        private Exception failure;
+
+        @Override
+        public void run() {
+            final Negamax strategy = new Negamax(depth, TABLE_MEGABYTES, 1, evaluator.copy());
+            final Negamax labeller = labelDepth > 0 ?
+                new Negamax(labelDepth, TABLE_MEGABYTES, 1, evaluator.copy()) : null;
+            final EndgameSolver solver = new EndgameSolver();
+            final ComputerPlayer[] players = {
+                new ComputerPlayer(strategy, solver, Side.WHITE),
+                new ComputerPlayer(strategy, solver, Side.BLACK)
+            };
+            // Nobody watches the self-play games, so their statistics are not recorded
+            for (final ComputerPlayer player : players) { player.setMonitor(null); }
+
+            final Bitboard board = new Bitboard();
+            final GameRecord record = new GameRecord();
+            final long[] blacks = new long[2*Bitboard.SQUARES];
+            final long[] whites = new long[2*Bitboard.SQUARES];
+            final Side[] sides = new Side[2*Bitboard.SQUARES];
+            final float[] scores = new float[2*Bitboard.SQUARES];
+            try {
+                for (int game = next.getAndIncrement(); game < games; game = next.getAndIncrement()) {
+                    final Random random = new Random(SEED + game);
+                    board.newGame();
+                    record.clear(Bitboard.SIZE);
+                    for (final Side side : Side.values()) { record.setPlayer(side, "level:" + depth); }
+
+                    int count = 0;
+                    Side side = Side.WHITE;
+                    while (!board.isGameOver()) {
+                        final long moves = board.getMoves(side);
+                        if (moves == 0) {
+                            record.addMove(GameRecord.PASS);
+                            side = side.getOpponent();
+                            continue;
+                        }
+
+                        final int move;
+                        if (record.getMoveCount() < OPENING_PLIES) {
+                            move = Positions.pick(moves, random);
+                        } else {
+                            blacks[count] = board.get(Side.BLACK);
+                            whites[count] = board.get(Side.WHITE);
+                            sides[count++] = side;
+                            final Move best = players[side == Side.WHITE ? 0 : 1].getBestMove(board);
+                            move = best.getPosition();
+                        }
+                        board.makeMove(side, move);
+                        record.addMove(move);
+                        side = side.getOpponent();
+                    }
+
+                    final int result = board.count(Side.BLACK) - board.count(Side.WHITE);
+                    record.setPieces(board.count(Side.WHITE), board.count(Side.BLACK));
+                    for (int index = 0; index < count; index++) {
+                        scores[index] = labeller == null ? result * RESULT_SCALE :
+                            label(labeller, new Bitboard(blacks[index], whites[index]), sides[index]);
+                    }
+                    add(blacks, whites, scores, count, record);
+                }
+            } catch (final IOException e) {
+                failure = e;
+            }
+        }
+    }
+}